@@ -0,0 +1,383 @@
+package hashmap;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  A thread-safe hash table-backed Map, which many threads can read and write at once.
+ *
+ *  Writes use lock striping. The table is guarded by a fixed number of locks, and bin i
+ *  by lock i % STRIPES, so writers to different stripes never wait for each other.
+ *  The table always has a multiple of STRIPES bins.
+ *
+ *  Reads take no lock at all. Each bin is a chain of nodes whose next and value fields
+ *  are volatile, read through an AtomicReferenceArray. A writer prepends a new node,
+ *  or unlinks one by pointing its predecessor past it, so a reader walking the chain
+ *  always sees a well-formed list, with or without the change.
+ *
+ *  The table doubles in a cooperative, concurrent resize, as in java.util.concurrent's
+ *  ConcurrentHashMap. The new table is shared in a Resize, and every thread which writes
+ *  while it is in progress claims a range of old bins and moves them. To move a bin,
+ *  a thread takes its stripe lock, copies the chain into bins i and i + n of the new
+ *  table, and leaves a Forward node in the old bin. Readers and writers which meet
+ *  a Forward go on in the new table, and the last thread done publishes the new table.
+ *  Only the bins being moved are locked, and reads never wait.
+ *
+ *  Like MyHashMap, null keys and values are never inserted. keySet and iterator are
+ *  weakly consistent, they return the keys of a snapshot taken bin by bin without
+ *  locking, and clear removes the keys of such a snapshot one by one.
+ *
+ *  @author LMS
+ */
+public class ConcurrentMyHashMap<K, V> implements Map61B<K, V> {
+
+    private static final int STRIPES = 64;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    /* the number of old bins a thread claims at once when helping a resize */
+    private static final int TRANSFER_STRIDE = 64;
+
+    private static class Node<K, V> {
+        final int hash;
+
+        final K key;
+
+        volatile V value;
+
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /* left in a bin of an old table once it has been moved to TABLE */
+    private static final class Forward<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> table;
+
+        Forward(AtomicReferenceArray<Node<K, V>> table) {
+            super(-1, null, null, null);
+            this.table = table;
+        }
+    }
+
+    /* a resize in progress, from FROM to TO */
+    private static final class Resize<K, V> {
+        final AtomicReferenceArray<Node<K, V>> from;
+
+        final AtomicReferenceArray<Node<K, V>> to;
+
+        /* the next old bin to claim */
+        final AtomicInteger nextBin = new AtomicInteger();
+
+        /* the number of old bins moved */
+        final AtomicInteger moved = new AtomicInteger();
+
+        Resize(AtomicReferenceArray<Node<K, V>> from) {
+            this.from = from;
+            this.to = new AtomicReferenceArray<>(from.length() * 2);
+        }
+    }
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+
+    private final AtomicReference<Resize<K, V>> resize = new AtomicReference<>();
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    private final LongAdder count = new LongAdder();
+
+    public ConcurrentMyHashMap() {
+        this(STRIPES);
+    }
+
+    /**
+     * ConcurrentMyHashMap constructor that creates a backing array of at least
+     * initialSize bins, and at least one per lock.
+     *
+     * @param initialSize initial size of backing array
+     */
+    public ConcurrentMyHashMap(int initialSize) {
+        int capacity = STRIPES;
+        while (capacity < initialSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        table = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    }
+
+    private static int indexFor(int hash, AtomicReferenceArray<?> tab) {
+        return hash & (tab.length() - 1);
+    }
+
+    /* the lock of bin I of any table, the tables being multiples of STRIPES in size */
+    private ReentrantLock lockFor(int i) {
+        return locks[i & (STRIPES - 1)];
+    }
+
+    /* the node of KEY, null if none, without locking */
+    private Node<K, V> getNode(Object key) {
+        if (key == null) {
+            return null;
+        }
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        Node<K, V> node = tab.get(indexFor(h, tab));
+        while (node != null) {
+            if (node instanceof Forward) {
+                tab = ((Forward<K, V>) node).table;
+                node = tab.get(indexFor(h, tab));
+                continue;
+            }
+            if (node.hash == h && node.key.equals(key)) {
+                return node;
+            }
+            node = node.next;
+        }
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        Node<K, V> node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return getNode(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return (int) count.sum();
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = indexFor(h, tab);
+            ReentrantLock lock = lockFor(i);
+            AtomicReferenceArray<Node<K, V>> forwardedTo = null;
+            lock.lock();
+            try {
+                Node<K, V> first = tab.get(i);
+                if (first instanceof Forward) {
+                    forwardedTo = ((Forward<K, V>) first).table;
+                } else {
+                    for (Node<K, V> node = first; node != null; node = node.next) {
+                        if (node.hash == h && node.key.equals(key)) {
+                            node.value = value;
+                            return;
+                        }
+                    }
+                    tab.set(i, new Node<>(h, key, value, first));
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (forwardedTo == null) {
+                break;
+            }
+            helpResize();
+            tab = forwardedTo;
+        }
+        count.increment();
+        if (count.sum() > table.length() * LOAD_FACTOR || resize.get() != null) {
+            startOrHelpResize();
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        return remove(key, null, false);
+    }
+
+    @Override
+    public V remove(K key, V value) {
+        return remove(key, value, true);
+    }
+
+    /* removes KEY, only if it is mapped to VALUE when MATCHVALUE */
+    private V remove(K key, V value, boolean matchValue) {
+        if (key == null) {
+            return null;
+        }
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = indexFor(h, tab);
+            ReentrantLock lock = lockFor(i);
+            AtomicReferenceArray<Node<K, V>> forwardedTo = null;
+            lock.lock();
+            try {
+                Node<K, V> first = tab.get(i);
+                if (first instanceof Forward) {
+                    forwardedTo = ((Forward<K, V>) first).table;
+                } else {
+                    Node<K, V> prev = null;
+                    for (Node<K, V> node = first; node != null; prev = node, node = node.next) {
+                        if (node.hash == h && node.key.equals(key)) {
+                            V old = node.value;
+                            if (matchValue && !old.equals(value)) {
+                                return null;
+                            }
+                            if (prev == null) {
+                                tab.set(i, node.next);
+                            } else {
+                                prev.next = node.next;
+                            }
+                            count.decrement();
+                            return old;
+                        }
+                    }
+                    return null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            helpResize();
+            tab = forwardedTo;
+        }
+    }
+
+    /* starts doubling the table if it is too full, or helps the resize in progress */
+    private void startOrHelpResize() {
+        while (resize.get() == null) {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            if (count.sum() <= tab.length() * LOAD_FACTOR || tab.length() >= (1 << 30)) {
+                return;
+            }
+            Resize<K, V> r = new Resize<>(tab);
+            if (resize.compareAndSet(null, r)) {
+                if (table != tab) {
+                    // another resize finished between reading table and starting this one
+                    resize.compareAndSet(r, null);
+                    continue;
+                }
+                break;
+            }
+        }
+        helpResize();
+    }
+
+    /* moves bins of the resize in progress, if any, until none is left to claim */
+    private void helpResize() {
+        Resize<K, V> r = resize.get();
+        if (r == null) {
+            return;
+        }
+        if (r.from != table) {
+            // started from a table another resize had already replaced, it would copy
+            // nothing but Forwards, so it is dropped instead of ever being published
+            resize.compareAndSet(r, null);
+            return;
+        }
+        int n = r.from.length();
+        while (true) {
+            int start = r.nextBin.getAndAdd(TRANSFER_STRIDE);
+            if (start >= n) {
+                return;
+            }
+            int end = Math.min(n, start + TRANSFER_STRIDE);
+            for (int i = start; i < end; i++) {
+                moveBin(r, i);
+            }
+            if (r.moved.addAndGet(end - start) == n) {
+                table = r.to;
+                resize.compareAndSet(r, null);
+                return;
+            }
+        }
+    }
+
+    /* copies bin I of the old table into bins I and I + n of the new one, and forwards it */
+    private void moveBin(Resize<K, V> r, int i) {
+        int n = r.from.length();
+        ReentrantLock lock = lockFor(i);
+        lock.lock();
+        try {
+            Node<K, V> first = r.from.get(i);
+            if (first instanceof Forward) {
+                // already moved, a Forward is never copied as if it held a key
+                return;
+            }
+            Node<K, V> low = null;
+            Node<K, V> high = null;
+            for (Node<K, V> node = first; node != null; node = node.next) {
+                // copies, so readers still walking the old chain are not led astray
+                if ((node.hash & n) == 0) {
+                    low = new Node<>(node.hash, node.key, node.value, low);
+                } else {
+                    high = new Node<>(node.hash, node.key, node.value, high);
+                }
+            }
+            r.to.set(i, low);
+            r.to.set(i + n, high);
+            r.from.set(i, new Forward<>(r.to));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* a snapshot of the keys, taken bin by bin without locking */
+    private List<K> snapshotKeys() {
+        List<K> keys = new ArrayList<>();
+        collectKeys(table, 0, 1, keys);
+        return keys;
+    }
+
+    /* adds the keys of the bins I of TAB with I % STEP == FIRST to KEYS */
+    private static <K, V> void collectKeys(AtomicReferenceArray<Node<K, V>> tab, int first,
+                                           int step, List<K> keys) {
+        for (int i = first; i < tab.length(); i += step) {
+            Node<K, V> node = tab.get(i);
+            if (node instanceof Forward) {
+                // bin i went to bins i and i + n of a table twice the size
+                collectKeys(((Forward<K, V>) node).table, i, tab.length(), keys);
+                continue;
+            }
+            for (; node != null; node = node.next) {
+                keys.add(node.key);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (K key : snapshotKeys()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new HashSet<>(snapshotKeys());
+    }
+
+    /* iterator returns an Iterator that iterates over the stored keys */
+    @Override
+    public Iterator<K> iterator() {
+        return Collections.unmodifiableList(snapshotKeys()).iterator();
+    }
+}
@@ -0,0 +1,239 @@
+package hashmap;
+
+import java.util.Arrays;
+
+/**
+ *  A hash map from int to int which never boxes: keys and values live in two int arrays,
+ *  and get, put, increment and remove allocate nothing unless the table has to grow.
+ *  Map61B<Integer, Integer> would allocate an Integer for every key and value outside
+ *  the small Integer cache, and read them back through a pointer each.
+ *
+ *  Collisions are resolved by linear probing from the slot given by Fibonacci hashing
+ *  of the key, and removal shifts the following keys back (Knuth's Algorithm R),
+ *  so there are no tombstones. The key 0 marks an empty slot, so a key 0 in the map
+ *  is kept aside in zeroValue.
+ *
+ *  A key which is not in the map gets the value 0, as a counter would start from.
+ *
+ *  @author LMS
+ */
+public class IntIntMap {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+
+    private int[] values;
+
+    /* the slot of a key k is (k * GOLDEN_RATIO) >>> shift */
+    private int shift;
+
+    private int threshold;
+
+    /* the number of keys in the table, so without the key 0 */
+    private int tableSize = 0;
+
+    private boolean hasZeroKey = false;
+
+    private int zeroValue;
+
+    /** Consumes a mapping of an IntIntMap, without boxing. */
+    public interface Consumer {
+        void accept(int key, int value);
+    }
+
+    public IntIntMap() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * IntIntMap constructor that creates backing arrays which hold
+     * initialSize keys before they have to grow.
+     *
+     * @param initialSize initial number of keys
+     */
+    public IntIntMap(int initialSize) {
+        int capacity = 2;
+        while (capacity * LOAD_FACTOR < initialSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        threshold = (int) Math.min(capacity - 1, (long) (capacity * LOAD_FACTOR));
+    }
+
+    private int slot(int key) {
+        return (key * GOLDEN_RATIO) >>> shift;
+    }
+
+    /* the slot of KEY, which is not 0, or -1 if it is not in the table */
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public int size() {
+        return tableSize + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        tableSize = 0;
+        hasZeroKey = false;
+    }
+
+    public boolean containsKey(int key) {
+        return key == EMPTY ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /** Returns the value of KEY, or 0 if it is not in the map. */
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not in the map. */
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    /** Associates VALUE with KEY, replacing its old value if any. */
+    public void put(int key, int value) {
+        if (key == EMPTY) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        // not values[insertionSlot(key)], values may be replaced by a resize
+        int index = insertionSlot(key);
+        values[index] = value;
+    }
+
+    /**
+     * Adds DELTA to the value of KEY, which is 0 if KEY is not in the map,
+     * and returns the new value.
+     */
+    public int increment(int key, int delta) {
+        if (key == EMPTY) {
+            zeroValue = hasZeroKey ? zeroValue + delta : delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        int index = insertionSlot(key);
+        values[index] += delta;
+        return values[index];
+    }
+
+    /* the slot of KEY, which is not 0, after adding it with the value 0 if it was missing */
+    private int insertionSlot(int key) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        if (tableSize + 1 > threshold) {
+            resize(keys.length * 2);
+            return insertionSlot(key);
+        }
+        keys[i] = key;
+        values[i] = 0;
+        tableSize++;
+        return i;
+    }
+
+    private void resize(int newTableSize) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newTableSize);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = slot(key);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** Removes KEY, returns true if it was in the map. */
+    public boolean remove(int key) {
+        if (key == EMPTY) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            return had;
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /*  Empties slot GAP and moves back every following key whose probe passed it,
+     *  so a lookup never stops early at the gap (Knuth's Algorithm R). */
+    private void removeAt(int gap) {
+        int mask = keys.length - 1;
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            int key = keys[i];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = slot(key);
+            // KEY may move to GAP unless its home lies cyclically in (GAP, I]
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        tableSize--;
+    }
+
+    /** Calls ACTION on every mapping, in no particular order. */
+    public void forEach(Consumer action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+}
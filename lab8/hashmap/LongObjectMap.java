@@ -0,0 +1,217 @@
+package hashmap;
+
+import java.util.Arrays;
+
+/**
+ *  A hash map from long to objects which never boxes the keys, e.g. for ids:
+ *  keys live in a long array and values in an Object array, and get, put and remove
+ *  allocate nothing unless the table has to grow.
+ *  Map61B<Long, V> allocates a Long for every key outside the small Long cache,
+ *  on every get as well as every put.
+ *
+ *  Probing and removal are those of IntIntMap, with the key 0 marking an empty slot,
+ *  so a key 0 in the map is kept aside in zeroValue. The slot of a key comes from
+ *  Fibonacci hashing of all its 64 bits. Null values are never inserted, as in MyHashMap.
+ *
+ *  @author LMS
+ */
+public class LongObjectMap<V> {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+
+    private Object[] values;
+
+    /* the slot of a key k is (k * GOLDEN_RATIO) >>> shift */
+    private int shift;
+
+    private int threshold;
+
+    /* the number of keys in the table, so without the key 0 */
+    private int tableSize = 0;
+
+    /* the value of the key 0, null if it is not in the map */
+    private V zeroValue;
+
+    /** Consumes a mapping of a LongObjectMap, without boxing. */
+    public interface Consumer<V> {
+        void accept(long key, V value);
+    }
+
+    public LongObjectMap() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * LongObjectMap constructor that creates backing arrays which hold
+     * initialSize keys before they have to grow.
+     *
+     * @param initialSize initial number of keys
+     */
+    public LongObjectMap(int initialSize) {
+        int capacity = 2;
+        while (capacity * LOAD_FACTOR < initialSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+        threshold = (int) Math.min(capacity - 1, (long) (capacity * LOAD_FACTOR));
+    }
+
+    private int slot(long key) {
+        return (int) ((key * GOLDEN_RATIO) >>> shift);
+    }
+
+    /* the slot of KEY, which is not 0, or -1 if it is not in the table */
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public int size() {
+        return tableSize + (zeroValue != null ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        tableSize = 0;
+        zeroValue = null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /** Returns the value of KEY, or null if it is not in the map. */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /** Associates VALUE with KEY, replacing its old value if any. */
+    public void put(long key, V value) {
+        if (value == null) {
+            return;
+        }
+        if (key == EMPTY) {
+            zeroValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if (tableSize + 1 > threshold) {
+            resize(keys.length * 2);
+            put(key, value);
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        tableSize++;
+    }
+
+    private void resize(int newTableSize) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newTableSize);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = slot(key);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** Removes KEY, returns its value, or null if it was not in the map. */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == EMPTY) {
+            V old = zeroValue;
+            zeroValue = null;
+            return old;
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V old = (V) values[index];
+        removeAt(index);
+        return old;
+    }
+
+    /* empties slot GAP and moves back the following keys whose probe passed it */
+    private void removeAt(int gap) {
+        int mask = keys.length - 1;
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long key = keys[i];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = slot(key);
+            // KEY may move to GAP unless its home lies cyclically in (GAP, I]
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        tableSize--;
+    }
+
+    /** Calls ACTION on every mapping, in no particular order. */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        if (zeroValue != null) {
+            action.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+}
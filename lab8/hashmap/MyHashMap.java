@@ -22,7 +22,11 @@ import java.util.*;
  *     ├── MyHashMapHSBuckets.java
  *     ├── MyHashMapLLBuckets.java
  *     ├── MyHashMapPQBuckets.java
- *     └── MyHashMapTSBuckets.java
+ *     ├── MyHashMapTSBuckets.java
+ *     └── MyHashMapAdaptiveBuckets.java
+ *
+ *  MyHashMapOpenAddressing.java and MyHashMapSwissTable.java implement Map61B without
+ *  buckets, for comparison.
  *
  *  @author LMS
  */
@@ -58,17 +62,43 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
        by many different types of data structures, e.g. LinkedList<Node> or ArrayList<Node> */
     private Collection<Node>[] buckets;
 
-    private int initialSize;
+    /* Growing the table is progressive, as in Redis: a resize only allocates the new
+       table, and the old one stays in oldBuckets while every later operation, get,
+       containsKey and put of a key already there included, moves REHASH_STEPS of its
+       buckets over, in order, so a map which is mostly read still drains it.
+       Lookups look in both tables until the old one is empty, new keys go into the
+       new one. So no single put pays for moving the whole map. */
+    private Collection<Node>[] oldBuckets;
+
+    /* the buckets of oldBuckets below this index have been moved */
+    private int rehashIndex;
+
+    private static final int REHASH_STEPS = 4;
+
     /* You should increase the size of your MyHashMap
        when the load factor exceeds the set loadFactor.
        Recall that the load factor can be computed as loadFactor = N/M,
        where N is the number of elements in the map and M is the number of buckets */
     private final double loadFactor;
 
-    private final Set<K> hashKeys;
-
     private int size = 0;
 
+    /* Changed by every put of a new key, every remove, clear and resize.
+       The key and entry iterators throw ConcurrentModificationException
+       when it changes under them, like those of java.util.HashMap. */
+    private int modCount = 0;
+
+    /* Iterators made since modCount last changed which have not reached their end.
+       Moving a bucket an open iterator has already walked would make it return those
+       keys twice, so operations which leave iterators valid (reads and updates) only
+       move buckets while there are none, like Redis pauses rehashing while a safe
+       iterator is open. An iterator dropped before its end holds the pause until the
+       next put of a new key or remove, which invalidates it. */
+    private int openIterators = 0;
+
+    /* the modCount openIterators counts the iterators of */
+    private int iteratedModCount = -1;
+
     /** Constructors */
     /* In java, you cannot create an array of parameterized type.
        Collection<Node> is a parameterized type,
@@ -80,10 +110,8 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
        like a Collection<Integer> or a Collection<Node>.
        For our purposes, we will only add elements of type Collection<Node> to our Collection[]. */
     public MyHashMap() {
-        this.initialSize = 16;
         this.loadFactor = 0.75;
-        buckets = createTable(this.initialSize);
-        hashKeys = new HashSet<>();
+        buckets = createTable(16);
     }
 
     /* During this lab, we will try out hash tables with
@@ -91,10 +119,8 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
        see empirically if there is an asymptotic difference
        between using different data structures as hash table buckets. */
     public MyHashMap(int initialSize) {
-        this.initialSize = initialSize;
         this.loadFactor = 0.75;
         buckets = createTable(initialSize);
-        hashKeys = new HashSet<>();
     }
 
     /**
@@ -105,10 +131,8 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
      * @param maxLoad maximum load factor
      */
     public MyHashMap(int initialSize, double maxLoad) {
-        this.initialSize = initialSize;
         this.loadFactor = maxLoad;
         buckets = createTable(initialSize);
-        hashKeys = new HashSet<>();
     }
 
     /**
@@ -118,14 +142,14 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
      * BE SURE TO CALL THIS FACTORY METHOD WHEN CREATING A TABLE SO
      * THAT ALL BUCKET TYPES ARE OF JAVA.UTIL.COLLECTION
      *
+     * The buckets start out null and are made by createBucket when a node is
+     * first added to them, so growing the table does not allocate a bucket
+     * for every slot at once, and empty slots cost no memory.
+     *
      * @param tableSize the size of the table to create
      */
     private Collection<Node>[] createTable(int tableSize) {
-        Collection<Node>[] table = new Collection[tableSize];
-        for (int i = 0;i < tableSize; i ++) {
-            table[i] = createBucket();
-        }
-        return table;
+        return new Collection[tableSize];
     }
 
 
@@ -175,43 +199,93 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
         return new Node(key, value);
     }
 
-    /* For these methods, we recommend you simply create
-       a HashSet instance variable that holds all your keys.*/
+    /* The handout recommends a HashSet of all the keys for containsKey, keySet and
+       iterator. That keeps every key twice, once in the buckets and once in the set,
+       and pays for a java.util.HashMap put on every put, so instead they all go
+       straight to the buckets: containsKey is a lookup, and keySet and iterator
+       walk the buckets through live views. */
 
     @Override
     public void clear() {
         int bucketSize = buckets.length;
         buckets = createTable(bucketSize);
-        hashKeys.clear();
+        oldBuckets = null;
         size = 0;
+        modCount++;
     }
 
-    private int getHashIndex(K key) {
+    private static int getHashIndex(Object key, Collection<?>[] table) {
         int hashCode = key.hashCode();
-        return Math.floorMod(hashCode, initialSize);
+        return Math.floorMod(hashCode, table.length);
     }
 
-    @Override
-    public boolean containsKey(K key) {
-        return hashKeys.contains(key);
+    /* adds NODE to its bucket in TABLE, creating the bucket if it has none yet */
+    private void addNode(Collection<Node>[] table, Node node) {
+        int index = getHashIndex(node.key, table);
+        if (table[index] == null) {
+            table[index] = createBucket();
+        }
+        table[index].add(node);
     }
 
-    private Node getNode(K key) {
-        if (key == null) {
+    /* the node of KEY in TABLE, null if none */
+    private Node findNode(Collection<Node>[] table, Object key) {
+        Collection<Node> bucket = table[getHashIndex(key, table)];
+        if (bucket == null) {
             return null;
         }
-        int index = getHashIndex(key);
-        for (Node node : buckets[index]) {
-            if (node != null && node.key.equals(key)) {
+        return findInBucket(bucket, key);
+    }
+
+    /* the bucket holding KEY, in whichever table it is, null if KEY is not in the map */
+    Collection<Node> bucketOf(Object key) {
+        if (findNode(buckets, key) != null) {
+            return buckets[getHashIndex(key, buckets)];
+        }
+        if (oldBuckets != null && findNode(oldBuckets, key) != null) {
+            return oldBuckets[getHashIndex(key, oldBuckets)];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node of KEY in BUCKET, or null if it has none.
+     *
+     * java.util.Collection can only be searched by iterating through it,
+     * so this is a linear scan. Override this method along with createBucket
+     * when the bucket type can find a key faster than that.
+     */
+    protected Node findInBucket(Collection<Node> bucket, Object key) {
+        for (Node node : bucket) {
+            if (node.key.equals(key)) {
                 return node;
             }
         }
         return null;
     }
 
+    @Override
+    public boolean containsKey(K key) {
+        Node node = getNode(key);
+        readRehashStep();
+        return node != null;
+    }
+
+    private Node getNode(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Node node = findNode(buckets, key);
+        if (node == null && oldBuckets != null) {
+            node = findNode(oldBuckets, key);
+        }
+        return node;
+    }
+
     @Override
     public V get(K key) {
         Node node = getNode(key);
+        readRehashStep();
         if (node == null) {
             return null;
         }
@@ -223,21 +297,41 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
         return this.size;
     }
 
+    /* starts moving the nodes into a new table of NEWTABLESIZE buckets */
     private void resize(int newTableSize) {
-        LinkedList<Node> nodes = new LinkedList<>();
-        for (K key : hashKeys) {
-            V value = get(key);
-            Node node = createNode(key, value);
-            nodes.add(node);
+        if (oldBuckets != null) {
+            // only when the load factor is so low that a table fills up before
+            // the one before it is drained
+            rehashStep(Integer.MAX_VALUE);
         }
-        // here a bug is that i change initialSize first
-        initialSize = newTableSize;
-        Collection<Node>[] newBuckets = createTable(newTableSize);
-        for (Node node : nodes) {
-            int newHashIndex = getHashIndex(node.key);
-            newBuckets[newHashIndex].add(node);
+        oldBuckets = buckets;
+        rehashIndex = 0;
+        buckets = createTable(newTableSize);
+        modCount++;
+    }
+
+    /* the rehashStep of an operation which leaves iterators valid, see iteratedModCount */
+    private void readRehashStep() {
+        if (oldBuckets != null && (openIterators == 0 || modCount != iteratedModCount)) {
+            rehashStep(REHASH_STEPS);
+        }
+    }
+
+    /* moves up to STEPS buckets of oldBuckets into buckets, the nodes themselves are reused */
+    private void rehashStep(int steps) {
+        for (int i = 0; i < steps && oldBuckets != null; i++) {
+            Collection<Node> bucket = oldBuckets[rehashIndex];
+            if (bucket != null) {
+                for (Node node : bucket) {
+                    addNode(buckets, node);
+                }
+                oldBuckets[rehashIndex] = null;
+            }
+            rehashIndex++;
+            if (rehashIndex == oldBuckets.length) {
+                oldBuckets = null;
+            }
         }
-        buckets = newBuckets;
     }
 
     @Override
@@ -247,24 +341,32 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
         }
         Node node = getNode(key);
         if (node == null) {
-            int hashIndex = getHashIndex(key);
             Node newNode = createNode(key, value);
 
-            buckets[hashIndex].add(newNode);
-            hashKeys.add(key);
+            addNode(buckets, newNode);
             size ++;
+            modCount++;
 
             if (size * 1.0 / buckets.length > loadFactor) {
                 resize(2 * buckets.length);
+            } else {
+                rehashStep(REHASH_STEPS);
             }
         } else {
             node.value = value;
+            readRehashStep();
         }
     }
 
+    /* a live view of the keys, removing a key from it removes it from the map */
     @Override
     public Set<K> keySet() {
-        return hashKeys;
+        return new KeySet();
+    }
+
+    /* a live view of the mappings, setValue on an entry writes through to the map */
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet();
     }
 
     @Override
@@ -277,20 +379,206 @@ public class MyHashMap<K, V> implements Map61B<K, V> {
         if (key == null) {
             return null;
         }
-        int hashIndex = getHashIndex(key);
         Node node = getNode(key);
         if (node == null || !node.value.equals(value)) {
             return null;
         }
-        buckets[hashIndex].remove(node);
-        hashKeys.remove(key);
+        bucketOf(key).remove(node);
         size -= 1;
+        modCount++;
+        rehashStep(REHASH_STEPS);
         return value;
     }
 
     /* iterator returns an Iterator that iterates over the stored keys */
     @Override
     public Iterator<K> iterator() {
-        return hashKeys.iterator();
+        return new KeyIterator();
+    }
+
+    /* Walks the nodes bucket by bucket with each bucket's own iterator,
+       so it works whatever Collection createBucket returns.
+       While the table grows it walks the buckets not moved yet, then the new table;
+       removing through it does not move any. */
+    private abstract class NodeIterator<T> implements Iterator<T> {
+        private final Collection<Node>[] old = oldBuckets;
+
+        private final Collection<Node>[] table = buckets;
+
+        private int nextBucket = old == null ? 0 : -old.length;
+
+        private Iterator<Node> current = Collections.emptyIterator();
+
+        /* the bucket iterator which returned the last node, null if it was removed */
+        private Iterator<Node> lastReturnedFrom;
+
+        private int expectedModCount = modCount;
+
+        /* whether this iterator is counted in openIterators */
+        private boolean open = true;
+
+        NodeIterator() {
+            if (iteratedModCount != modCount) {
+                iteratedModCount = modCount;
+                openIterators = 0;
+            }
+            openIterators++;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && nextBucket < table.length) {
+                Collection<Node> bucket = nextBucket < 0
+                        ? old[old.length + nextBucket] : table[nextBucket];
+                nextBucket++;
+                if (bucket != null) {
+                    current = bucket.iterator();
+                }
+            }
+            if (!current.hasNext() && open) {
+                open = false;
+                if (iteratedModCount == expectedModCount) {
+                    openIterators--;
+                }
+            }
+            return current.hasNext();
+        }
+
+        Node nextNode() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturnedFrom = current;
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturnedFrom == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            lastReturnedFrom.remove();
+            lastReturnedFrom = null;
+            size -= 1;
+            modCount++;
+            expectedModCount = modCount;
+            /* every other iterator is invalid now */
+            iteratedModCount = modCount;
+            openIterators = open ? 1 : 0;
+        }
+    }
+
+    private class KeyIterator extends NodeIterator<K> {
+        @Override
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    private class EntryIterator extends NodeIterator<Map.Entry<K, V>> {
+        @Override
+        public Map.Entry<K, V> next() {
+            return new Entry(nextNode());
+        }
+    }
+
+    private class KeySet extends AbstractSet<K> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o != null && getNode(o) != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            return contains(o) && MyHashMap.this.remove((K) o) != null;
+        }
+
+        @Override
+        public void clear() {
+            MyHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MyHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /* A mapping as seen through entrySet. Node keeps identity equality, which
+       the HashSet buckets rely on, so the Map.Entry contract lives here instead. */
+    private class Entry implements Map.Entry<K, V> {
+        private final Node node;
+
+        Entry(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public K getKey() {
+            return node.key;
+        }
+
+        @Override
+        public V getValue() {
+            return node.value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            V old = node.value;
+            node.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return node.key.equals(other.getKey()) && node.value.equals(other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return node.key.hashCode() ^ node.value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return node.key + "=" + node.value;
+        }
     }
 }
@@ -0,0 +1,313 @@
+package hashmap;
+
+import java.util.*;
+
+/**
+ * Hash Table with buckets that change shape with their size, like those of java.util.HashMap.
+ *
+ * A bucket starts as a small array of nodes, which is all almost every bucket ever needs:
+ * no node objects of a linked list, no tree, and a lookup is a scan of a few slots.
+ * When a bucket grows past TREEIFY_THRESHOLD nodes and all its keys are of the same
+ * Comparable class, it turns into a red-black tree (a TreeMap from key to nodes), and it
+ * turns back into an array when removals bring it down to UNTREEIFY_THRESHOLD nodes.
+ * Like in java.util.HashMap, compareTo only orders the tree and equals still decides
+ * which key is which: keys comparing as 0 share one entry of the tree, a short list
+ * searched with equals, so keys whose order is not consistent with equals, such as
+ * BigDecimal 1.0 and 1.00, stay distinct.
+ * A bucket only gets long when many keys share a hash code, e.g. keys chosen to collide,
+ * so lookups stay O(log n) in the worst case instead of O(n), without costing the
+ * common short bucket anything.
+ *
+ * Keys which are not Comparable, or of mixed classes, keep array buckets, as there is
+ * no order to build a tree with.
+ *
+ * @author LMS
+ */
+public class MyHashMapAdaptiveBuckets<K, V> extends MyHashMap<K, V> {
+
+    /* a bucket with more nodes than this becomes a tree, if its keys allow */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /* a tree bucket with this many nodes or fewer becomes an array again */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * Constructor that creates a backing array with default
+     * initial size and load factor
+     */
+    public MyHashMapAdaptiveBuckets() {
+        super();
+    }
+
+    /**
+     * Constructor that creates a backing array of initialSize
+     * and default load factor
+     *
+     * @param initialSize initial size of backing array
+     */
+    public MyHashMapAdaptiveBuckets(int initialSize) {
+        super(initialSize);
+    }
+
+    /**
+     * Constructor that creates a backing array of initialSize.
+     * The load factor (# items / # buckets) should always be <= loadFactor
+     *
+     * @param initialSize initial size of backing array
+     * @param maxLoad maximum load factor
+     */
+    public MyHashMapAdaptiveBuckets(int initialSize, double maxLoad) {
+        super(initialSize, maxLoad);
+    }
+
+    @Override
+    protected Collection<Node> createBucket() {
+        return new AdaptiveBucket();
+    }
+
+    @Override
+    protected Node findInBucket(Collection<Node> bucket, Object key) {
+        return ((AdaptiveBucket) bucket).find(key);
+    }
+
+    /* An array of nodes, or a tree of them when it is long and its keys are Comparable. */
+    class AdaptiveBucket extends AbstractCollection<Node> {
+        /* the nodes while this is an array, the first count of them are used */
+        private Node[] nodes;
+
+        private int count = 0;
+
+        /* the nodes by key while this is a tree, null while it is an array; the list of a key
+           holds the nodes of every key comparing equal to it, almost always just one */
+        private TreeMap<Object, List<Node>> tree;
+
+        /* the number of nodes in the tree */
+        private int treeSize = 0;
+
+        /* the class of every key of the tree */
+        private Class<?> treeKeyClass;
+
+        AdaptiveBucket() {
+            nodes = newNodes(INITIAL_CAPACITY);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node[] newNodes(int length) {
+            return (Node[]) new MyHashMap<?, ?>.Node[length];
+        }
+
+        boolean isTree() {
+            return tree != null;
+        }
+
+        /* the node of KEY, null if none */
+        Node find(Object key) {
+            if (tree != null) {
+                List<Node> equalOrder = key.getClass() == treeKeyClass ? tree.get(key) : null;
+                if (equalOrder != null) {
+                    for (Node node : equalOrder) {
+                        if (node.key.equals(key)) {
+                            return node;
+                        }
+                    }
+                }
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                if (nodes[i].key.equals(key)) {
+                    return nodes[i];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return tree != null ? treeSize : count;
+        }
+
+        @Override
+        public boolean add(Node node) {
+            if (tree != null) {
+                if (node.key.getClass() == treeKeyClass) {
+                    treeAdd(node);
+                    return true;
+                }
+                untreeify();
+            }
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count * 2);
+            }
+            nodes[count++] = node;
+            if (count > TREEIFY_THRESHOLD) {
+                treeify();
+            }
+            return true;
+        }
+
+        /* removes the node O itself, as the other bucket types do */
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            if (tree != null) {
+                Node node = (Node) o;
+                List<Node> equalOrder =
+                        node.key.getClass() == treeKeyClass ? tree.get(node.key) : null;
+                if (equalOrder == null || !removeSame(equalOrder, node)) {
+                    return false;
+                }
+                if (equalOrder.isEmpty()) {
+                    tree.remove(node.key);
+                }
+                treeSize--;
+                if (treeSize <= UNTREEIFY_THRESHOLD) {
+                    untreeify();
+                }
+                return true;
+            }
+            for (int i = 0; i < count; i++) {
+                if (nodes[i] == o) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void treeAdd(Node node) {
+            tree.computeIfAbsent(node.key, key -> new ArrayList<>(1)).add(node);
+            treeSize++;
+        }
+
+        /* removes the node NODE itself from LIST */
+        private boolean removeSame(List<Node> list, Node node) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == node) {
+                    list.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void removeAt(int i) {
+            System.arraycopy(nodes, i + 1, nodes, i, count - i - 1);
+            nodes[--count] = null;
+        }
+
+        /* turns the array into a tree, unless the keys are not all of one Comparable class */
+        private void treeify() {
+            Class<?> keyClass = nodes[0].key.getClass();
+            if (!Comparable.class.isAssignableFrom(keyClass)) {
+                return;
+            }
+            for (int i = 1; i < count; i++) {
+                if (nodes[i].key.getClass() != keyClass) {
+                    return;
+                }
+            }
+            tree = new TreeMap<>();
+            treeSize = 0;
+            for (int i = 0; i < count; i++) {
+                treeAdd(nodes[i]);
+            }
+            treeKeyClass = keyClass;
+            nodes = null;
+            count = 0;
+        }
+
+        private void untreeify() {
+            nodes = newNodes(Math.max(INITIAL_CAPACITY, treeSize * 2));
+            count = 0;
+            for (List<Node> equalOrder : tree.values()) {
+                for (Node node : equalOrder) {
+                    nodes[count++] = node;
+                }
+            }
+            tree = null;
+            treeKeyClass = null;
+            treeSize = 0;
+        }
+
+        /* Removing through it never changes the shape of the bucket, which would lose
+           its place; a tree left short by it turns back into an array on a later remove. */
+        @Override
+        public Iterator<Node> iterator() {
+            if (tree != null) {
+                return new TreeIterator();
+            }
+            return new Iterator<>() {
+                private int next = 0;
+
+                private boolean canRemove = false;
+
+                @Override
+                public boolean hasNext() {
+                    return next < count;
+                }
+
+                @Override
+                public Node next() {
+                    if (next >= count) {
+                        throw new NoSuchElementException();
+                    }
+                    canRemove = true;
+                    return nodes[next++];
+                }
+
+                @Override
+                public void remove() {
+                    if (!canRemove) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(--next);
+                    canRemove = false;
+                }
+            };
+        }
+
+        /* walks the lists of the tree in key order, removing an emptied list from the tree */
+        private class TreeIterator implements Iterator<Node> {
+            private final Iterator<List<Node>> lists = tree.values().iterator();
+
+            private Iterator<Node> current = Collections.emptyIterator();
+
+            private List<Node> currentList;
+
+            private boolean canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && lists.hasNext()) {
+                    currentList = lists.next();
+                    current = currentList.iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Node next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                current.remove();
+                treeSize--;
+                if (currentList.isEmpty()) {
+                    lists.remove();
+                }
+                canRemove = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package hashmap;
+
+import java.util.*;
+
+/**
+ *  A hash table-backed Map implementation using open addressing instead of buckets.
+ *
+ *  Keys and values live side by side in one flat array, the key of slot i at 2 * i and
+ *  its value at 2 * i + 1, and a parallel int array keeps the hash of every key.
+ *  There are no Node objects and no bucket collections: a lookup scans a few neighbouring
+ *  hashes, then reads the one slot whose hash matches, instead of following
+ *  table -> bucket -> node -> key. Keeping a value next to its key saves a cache miss
+ *  over separate key and value arrays.
+ *
+ *  Collisions are resolved by linear probing with Robin Hood insertion: a key that
+ *  is further from its home slot than the key already in a slot takes that slot, and
+ *  the displaced key probes on. This keeps every probe sequence short, and a lookup
+ *  can stop as soon as it meets a key closer to home than itself.
+ *  Removal uses backward shifting: the keys after the removed one move back a slot
+ *  until an empty slot or a key in its home slot, so there are no tombstones.
+ *
+ *  The table size is a power of two, and the home slot of a key is the top bits of
+ *  its hash code multiplied by the golden ratio (Fibonacci hashing), which spreads
+ *  keys whose hash codes only differ in their high bits.
+ *
+ *  Like MyHashMap, null keys and values are never inserted, and the table does not
+ *  shrink upon remove().
+ *
+ *  @author LMS
+ */
+public class MyHashMapOpenAddressing<K, V> implements Map61B<K, V> {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final double DEFAULT_LOAD_FACTOR = 0.75;
+
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /* the key of slot i at 2 * i and its value at 2 * i + 1, in the same cache line */
+    private Object[] table;
+
+    /* the spread hash of the key of slot i, never 0, or EMPTY if slot i is empty.
+       Probing only reads this array until a hash matches, so neither a miss nor a
+       collision touches TABLE, and resizing never calls hashCode() again. */
+    private int[] hashes;
+
+    private static final int EMPTY = 0;
+
+    /* the home slot of a hash h is h >>> shift */
+    private int shift;
+
+    private final double loadFactor;
+
+    /* the table is doubled when size would exceed this */
+    private int threshold;
+
+    private int size = 0;
+
+    /* changed by every put of a new key and every remove, for the fail-fast key iterator */
+    private int modCount = 0;
+
+    public MyHashMapOpenAddressing() {
+        this(DEFAULT_SIZE, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyHashMapOpenAddressing(int initialSize) {
+        this(initialSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * MyHashMapOpenAddressing constructor that creates backing arrays of at least
+     * initialSize slots. The load factor (# items / # slots) should always be <= maxLoad,
+     * which must be below 1 so there is always an empty slot to end a probe.
+     *
+     * @param initialSize initial size of backing arrays
+     * @param maxLoad maximum load factor
+     */
+    public MyHashMapOpenAddressing(int initialSize, double maxLoad) {
+        if (maxLoad <= 0 || maxLoad >= 1) {
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1: " + maxLoad);
+        }
+        this.loadFactor = maxLoad;
+        allocate(tableSizeFor(initialSize));
+    }
+
+    /* the smallest power of two >= N, at least 2 */
+    private static int tableSizeFor(int n) {
+        int capacity = 2;
+        while (capacity < n && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        table = new Object[2 * capacity];
+        hashes = new int[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        threshold = (int) Math.min(capacity - 1, (long) (capacity * loadFactor));
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * GOLDEN_RATIO;
+        return h == EMPTY ? 1 : h;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int i) {
+        return (K) table[2 * i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        return (V) table[2 * i + 1];
+    }
+
+    private int home(int hash) {
+        return hash >>> shift;
+    }
+
+    /* how far slot I is from the home slot of the key in it */
+    private int probeDistance(int i) {
+        return (i - home(hashes[i])) & (hashes.length - 1);
+    }
+
+    /* the slot of KEY, -1 if it is not in the map */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int h = hash(key);
+        int mask = hashes.length - 1;
+        int i = home(h);
+        for (int distance = 0; ; distance++, i = (i + 1) & mask) {
+            int slotHash = hashes[i];
+            /* a key closer to home than KEY would have been displaced by it */
+            if (slotHash == EMPTY || ((i - home(slotHash)) & mask) < distance) {
+                return -1;
+            }
+            if (slotHash == h) {
+                Object k = table[2 * i];
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, null);
+        Arrays.fill(hashes, EMPTY);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V get(K key) {
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            table[2 * index + 1] = value;
+            return;
+        }
+        if (size + 1 > threshold) {
+            resize(hashes.length * 2);
+        }
+        insert(key, value, hash(key));
+        size++;
+        modCount++;
+    }
+
+    /* places a key known not to be in the map, Robin Hood style */
+    private void insert(Object key, Object value, int h) {
+        int mask = hashes.length - 1;
+        int i = home(h);
+        for (int distance = 0; ; distance++, i = (i + 1) & mask) {
+            if (hashes[i] == EMPTY) {
+                table[2 * i] = key;
+                table[2 * i + 1] = value;
+                hashes[i] = h;
+                return;
+            }
+            int residentDistance = probeDistance(i);
+            if (residentDistance < distance) {
+                Object k = table[2 * i];
+                Object v = table[2 * i + 1];
+                int kh = hashes[i];
+                table[2 * i] = key;
+                table[2 * i + 1] = value;
+                hashes[i] = h;
+                key = k;
+                value = v;
+                h = kh;
+                distance = residentDistance;
+            }
+        }
+    }
+
+    private void resize(int newTableSize) {
+        Object[] oldTable = table;
+        int[] oldHashes = hashes;
+        allocate(newTableSize);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != EMPTY) {
+                insert(oldTable[2 * i], oldTable[2 * i + 1], oldHashes[i]);
+            }
+        }
+    }
+
+    /* empties slot I and moves the keys after it back, so no probe sequence is broken */
+    private void removeAt(int i) {
+        int mask = hashes.length - 1;
+        int next = (i + 1) & mask;
+        while (hashes[next] != EMPTY && probeDistance(next) > 0) {
+            table[2 * i] = table[2 * next];
+            table[2 * i + 1] = table[2 * next + 1];
+            hashes[i] = hashes[next];
+            i = next;
+            next = (next + 1) & mask;
+        }
+        table[2 * i] = null;
+        table[2 * i + 1] = null;
+        hashes[i] = EMPTY;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+
+    @Override
+    public V remove(K key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V value = valueAt(index);
+        removeAt(index);
+        return value;
+    }
+
+    @Override
+    public V remove(K key, V value) {
+        int index = indexOf(key);
+        if (index < 0 || !valueAt(index).equals(value)) {
+            return null;
+        }
+        removeAt(index);
+        return value;
+    }
+
+    /* iterator returns an Iterator that iterates over the stored keys */
+    @Override
+    public Iterator<K> iterator() {
+        return new KeyIterator();
+    }
+
+    /* a live view of the keys, removing from it removes from the map */
+    private class KeySet extends AbstractSet<K> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyHashMapOpenAddressing.this.clear();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+    }
+
+    /*  Visits the slots once each, starting after an empty one. A backward shift never
+     *  crosses an empty slot, so removing through the iterator only moves keys it has
+     *  not visited yet into the slot it just emptied, which it then visits again.
+     *  Any other change to the map makes it throw ConcurrentModificationException. */
+    private class KeyIterator implements Iterator<K> {
+        private final int start;
+
+        /* slots visited so far, the next one is (start + 1 + visited) & mask */
+        private int visited = 0;
+
+        /* the slot of the key last returned, -1 if none or it was removed */
+        private int last = -1;
+
+        private int remaining = size;
+
+        private int expectedModCount = modCount;
+
+        KeyIterator() {
+            int i = 0;
+            while (hashes[i] != EMPTY) {
+                i++;
+            }
+            start = i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public K next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            int mask = hashes.length - 1;
+            int i = (start + 1 + visited) & mask;
+            while (hashes[i] == EMPTY) {
+                visited++;
+                i = (start + 1 + visited) & mask;
+            }
+            visited++;
+            remaining--;
+            last = i;
+            return keyAt(i);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            if (hashes[last] != EMPTY) {
+                visited--;
+            }
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
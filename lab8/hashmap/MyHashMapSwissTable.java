@@ -0,0 +1,420 @@
+package hashmap;
+
+import java.util.*;
+
+/**
+ *  A hash table-backed Map implementation in the style of SwissTable (Abseil) and F14 (Folly):
+ *  open addressing where every slot also has a control byte, and slots are probed
+ *  eight at a time.
+ *
+ *  Keys and values live side by side in one flat array, the key of slot i at 2 * i and
+ *  its value at 2 * i + 1, as in MyHashMapOpenAddressing. The control byte of a slot says
+ *  whether it is EMPTY, DELETED (a tombstone) or full, and for a full slot holds 7 bits
+ *  of the hash of its key (h2). The control bytes of a group of 8 slots are packed in one
+ *  long, so a lookup compares h2 against a whole group with a few arithmetic operations
+ *  on that long (SWAR, SIMD within a register) and only reads the keys whose h2 matches,
+ *  1 in 128 of the others on average. A miss usually ends at the first group, having
+ *  read no key at all, since any group with an empty slot ends the probe.
+ *
+ *  The home group of a key is the top bits of its hash (h1), and the following groups
+ *  are probed triangularly: home + 1, home + 1 + 2, home + 1 + 2 + 3, ..., which visits
+ *  every group when their number is a power of two.
+ *
+ *  Removal leaves a tombstone only when the group of the slot is full, since a probe
+ *  can only have passed a group without empty slots. Tombstones are reused by later
+ *  inserts and count against the load factor; when they make the table reach it, the
+ *  table is rebuilt without them at the same size rather than doubled, unless the keys
+ *  alone fill more than half of it.
+ *
+ *  Every slot can be full, so the default load factor is 7/8, against 3/4 for the other
+ *  maps of this package.
+ *
+ *  Like MyHashMap, null keys and values are never inserted, and the table does not
+ *  shrink upon remove().
+ *
+ *  @author LMS
+ */
+public class MyHashMapSwissTable<K, V> implements Map61B<K, V> {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final double DEFAULT_LOAD_FACTOR = 0.875;
+
+    private static final int GROUP_WIDTH = 8;
+
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    /* control bytes, a full slot holds its h2 in 0x00 - 0x7F */
+    private static final int EMPTY = 0x80;
+
+    private static final int DELETED = 0xFE;
+
+    /* the lowest and the highest bit of every byte of a group */
+    private static final long LSB = 0x0101010101010101L;
+
+    private static final long MSB = 0x8080808080808080L;
+
+    private static final long EMPTY_GROUP = LSB * EMPTY;
+
+    /* the control bytes of slots 8 * g to 8 * g + 7, slot 8 * g in the lowest byte */
+    private long[] ctrl;
+
+    /* the key of slot i at 2 * i and its value at 2 * i + 1 */
+    private Object[] table;
+
+    /* the home group of a hash h is h >>> shift */
+    private int shift;
+
+    private final double loadFactor;
+
+    /* full slots and tombstones together never exceed this, so a probe always ends */
+    private int threshold;
+
+    /* EMPTY slots which may still be filled before the table is rebuilt */
+    private int growthLeft;
+
+    private int size = 0;
+
+    /* changed by every put of a new key and every remove, for the fail-fast key iterator */
+    private int modCount = 0;
+
+    public MyHashMapSwissTable() {
+        this(DEFAULT_SIZE, DEFAULT_LOAD_FACTOR);
+    }
+
+    public MyHashMapSwissTable(int initialSize) {
+        this(initialSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * MyHashMapSwissTable constructor that creates backing arrays of at least
+     * initialSize slots. The load factor (# items and tombstones / # slots) should always
+     * be <= maxLoad, which must be below 1 so there is always an empty slot to end a probe.
+     *
+     * @param initialSize initial size of backing arrays
+     * @param maxLoad maximum load factor
+     */
+    public MyHashMapSwissTable(int initialSize, double maxLoad) {
+        if (maxLoad <= 0 || maxLoad >= 1) {
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1: " + maxLoad);
+        }
+        this.loadFactor = maxLoad;
+        allocate(tableSizeFor(initialSize));
+    }
+
+    /* the smallest power of two >= N, at least two groups so that shift is below 32 */
+    private static int tableSizeFor(int n) {
+        int capacity = 2 * GROUP_WIDTH;
+        while (capacity < n && capacity < (1 << 29)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        int groups = capacity / GROUP_WIDTH;
+        ctrl = new long[groups];
+        Arrays.fill(ctrl, EMPTY_GROUP);
+        table = new Object[2 * capacity];
+        shift = Integer.numberOfLeadingZeros(groups) + 1;
+        threshold = (int) Math.max(1, Math.min(capacity - 1, (long) (capacity * loadFactor)));
+        growthLeft = threshold;
+    }
+
+    /* the hash code of KEY spread over 64 bits: h1 is its top bits, h2 bits 25 to 31 */
+    private static long hash(Object key) {
+        return key.hashCode() * GOLDEN_RATIO;
+    }
+
+    private int h1(long hash) {
+        return (int) (hash >>> 32) >>> shift;
+    }
+
+    private static int h2(long hash) {
+        return (int) (hash >>> 25) & 0x7F;
+    }
+
+    /* a mask with the highest bit of every byte of GROUP equal to H2, or a few more */
+    private static long match(long group, int h2) {
+        long x = group ^ (LSB * h2);
+        // a byte of x is 0 where it matches, and only a 0 byte (or the byte above one)
+        // borrows into its highest bit. Full slots only: EMPTY and DELETED keep theirs.
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /* a mask with the highest bit of every EMPTY byte of GROUP */
+    private static long matchEmpty(long group) {
+        // EMPTY is the only control byte with its highest bit set and its second bit not
+        return group & ~(group << 6) & MSB;
+    }
+
+    /* a mask with the highest bit of every EMPTY or DELETED byte of GROUP */
+    private static long matchFree(long group) {
+        return group & MSB;
+    }
+
+    /* the slot of the lowest byte set in the mask M of group G */
+    private static int slotOf(int g, long m) {
+        return g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+    }
+
+    private int ctrlAt(int i) {
+        return (int) (ctrl[i / GROUP_WIDTH] >>> (i % GROUP_WIDTH * 8)) & 0xFF;
+    }
+
+    private void setCtrl(int i, int b) {
+        int s = i % GROUP_WIDTH * 8;
+        ctrl[i / GROUP_WIDTH] = ctrl[i / GROUP_WIDTH] & ~(0xFFL << s) | (long) b << s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int i) {
+        return (K) table[2 * i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        return (V) table[2 * i + 1];
+    }
+
+    /* the slot of KEY, -1 if it is not in the map */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        long h = hash(key);
+        int h2 = h2(h);
+        int mask = ctrl.length - 1;
+        int g = h1(h);
+        for (int step = 1; ; g = (g + step) & mask, step++) {
+            long group = ctrl[g];
+            for (long m = match(group, h2); m != 0; m &= m - 1) {
+                int i = slotOf(g, m);
+                Object k = table[2 * i];
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+            if (matchEmpty(group) != 0) {
+                return -1;
+            }
+        }
+    }
+
+    /* the first EMPTY or DELETED slot of the probe sequence of hash H */
+    private int findFree(long h) {
+        int mask = ctrl.length - 1;
+        int g = h1(h);
+        for (int step = 1; ; g = (g + step) & mask, step++) {
+            long m = matchFree(ctrl[g]);
+            if (m != 0) {
+                return slotOf(g, m);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(ctrl, EMPTY_GROUP);
+        Arrays.fill(table, null);
+        growthLeft = threshold;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V get(K key) {
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            table[2 * index + 1] = value;
+            return;
+        }
+        long h = hash(key);
+        int i = findFree(h);
+        if (growthLeft == 0 && ctrlAt(i) == EMPTY) {
+            rehash();
+            i = findFree(h);
+        }
+        insertAt(i, key, value, h);
+        size++;
+        modCount++;
+    }
+
+    private void insertAt(int i, Object key, Object value, long h) {
+        if (ctrlAt(i) == EMPTY) {
+            growthLeft--;
+        }
+        setCtrl(i, h2(h));
+        table[2 * i] = key;
+        table[2 * i + 1] = value;
+    }
+
+    /* drops the tombstones, and doubles the table unless they took up half of it */
+    private void rehash() {
+        long[] oldCtrl = ctrl;
+        Object[] oldTable = table;
+        int capacity = oldCtrl.length * GROUP_WIDTH;
+        allocate(size > threshold / 2 ? capacity * 2 : capacity);
+        for (int g = 0; g < oldCtrl.length; g++) {
+            for (long m = ~oldCtrl[g] & MSB; m != 0; m &= m - 1) {
+                int i = slotOf(g, m);
+                Object key = oldTable[2 * i];
+                long h = hash(key);
+                insertAt(findFree(h), key, oldTable[2 * i + 1], h);
+            }
+        }
+    }
+
+    /*  Empties slot I. It only needs a tombstone if its group is full: a probe passes a
+     *  group only if it has no EMPTY slot, and then the group never gets one back until
+     *  the next rehash, so a group with an EMPTY slot was never passed by any probe. */
+    private void removeAt(int i) {
+        if (matchEmpty(ctrl[i / GROUP_WIDTH]) != 0) {
+            setCtrl(i, EMPTY);
+            growthLeft++;
+        } else {
+            setCtrl(i, DELETED);
+        }
+        table[2 * i] = null;
+        table[2 * i + 1] = null;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+
+    @Override
+    public V remove(K key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V value = valueAt(index);
+        removeAt(index);
+        return value;
+    }
+
+    @Override
+    public V remove(K key, V value) {
+        int index = indexOf(key);
+        if (index < 0 || !valueAt(index).equals(value)) {
+            return null;
+        }
+        removeAt(index);
+        return value;
+    }
+
+    /* iterator returns an Iterator that iterates over the stored keys */
+    @Override
+    public Iterator<K> iterator() {
+        return new KeyIterator();
+    }
+
+    /* a live view of the keys, removing from it removes from the map */
+    private class KeySet extends AbstractSet<K> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            MyHashMapSwissTable.this.clear();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+    }
+
+    /*  Visits the full slots group by group. Keys never move until a rehash, so removing
+     *  through the iterator is safe; any other change to the map makes it throw
+     *  ConcurrentModificationException. */
+    private class KeyIterator implements Iterator<K> {
+        /* the group being visited, and the full slots of it not visited yet */
+        private int g = -1;
+
+        private long full = 0;
+
+        /* the slot of the key last returned, -1 if none or it was removed */
+        private int last = -1;
+
+        private int remaining = size;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public K next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            while (full == 0) {
+                g++;
+                full = ~ctrl[g] & MSB;
+            }
+            last = slotOf(g, full);
+            full &= full - 1;
+            remaining--;
+            return keyAt(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
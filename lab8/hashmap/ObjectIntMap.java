@@ -0,0 +1,216 @@
+package hashmap;
+
+import java.util.Arrays;
+
+/**
+ *  A hash map from objects to int which never boxes the values, e.g. to count strings:
+ *  keys live in an Object array and values in an int array, and get, put, increment
+ *  and remove allocate nothing unless the table has to grow.
+ *  Map61B<String, Integer> allocates an Integer for nearly every put.
+ *
+ *  Probing and removal are those of IntIntMap, with null marking an empty slot,
+ *  so null keys are not allowed.
+ *
+ *  A key which is not in the map gets the value 0, as a counter would start from.
+ *
+ *  @author LMS
+ */
+public class ObjectIntMap<K> {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /* KEYS[i] is null if slot i is empty */
+    private Object[] keys;
+
+    private int[] values;
+
+    /* the slot of a key k is (k.hashCode() * GOLDEN_RATIO) >>> shift */
+    private int shift;
+
+    private int threshold;
+
+    private int size = 0;
+
+    /** Consumes a mapping of an ObjectIntMap, without boxing. */
+    public interface Consumer<K> {
+        void accept(K key, int value);
+    }
+
+    public ObjectIntMap() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * ObjectIntMap constructor that creates backing arrays which hold
+     * initialSize keys before they have to grow.
+     *
+     * @param initialSize initial number of keys
+     */
+    public ObjectIntMap(int initialSize) {
+        int capacity = 2;
+        while (capacity * LOAD_FACTOR < initialSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        threshold = (int) Math.min(capacity - 1, (long) (capacity * LOAD_FACTOR));
+    }
+
+    private int slot(Object key) {
+        return (key.hashCode() * GOLDEN_RATIO) >>> shift;
+    }
+
+    /* the slot of KEY, or -1 if it is not in the map */
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == null) {
+                return -1;
+            }
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    public boolean containsKey(K key) {
+        return indexOf(key) >= 0;
+    }
+
+    /** Returns the value of KEY, or 0 if it is not in the map. */
+    public int get(K key) {
+        return getOrDefault(key, 0);
+    }
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not in the map. */
+    public int getOrDefault(K key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    /** Associates VALUE with KEY, replacing its old value if any. */
+    public void put(K key, int value) {
+        // not values[insertionSlot(key)], values may be replaced by a resize
+        int index = insertionSlot(key);
+        values[index] = value;
+    }
+
+    /**
+     * Adds DELTA to the value of KEY, which is 0 if KEY is not in the map,
+     * and returns the new value.
+     */
+    public int increment(K key, int delta) {
+        int index = insertionSlot(key);
+        values[index] += delta;
+        return values[index];
+    }
+
+    /* the slot of KEY, after adding it with the value 0 if it was missing */
+    private int insertionSlot(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("ObjectIntMap does not allow null keys");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (Object k = keys[i]; k != null; k = keys[i]) {
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size + 1 > threshold) {
+            resize(keys.length * 2);
+            return insertionSlot(key);
+        }
+        keys[i] = key;
+        values[i] = 0;
+        size++;
+        return i;
+    }
+
+    private void resize(int newTableSize) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newTableSize);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object key = oldKeys[j];
+            if (key != null) {
+                int i = slot(key);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** Removes KEY, returns true if it was in the map. */
+    public boolean remove(K key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /* empties slot GAP and moves back the following keys whose probe passed it */
+    private void removeAt(int gap) {
+        int mask = keys.length - 1;
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            Object key = keys[i];
+            if (key == null) {
+                break;
+            }
+            int home = slot(key);
+            // KEY may move to GAP unless its home lies cyclically in (GAP, I]
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        size--;
+    }
+
+    /** Calls ACTION on every mapping, in no particular order. */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super K> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept((K) keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package hashmap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Tests of ConcurrentMyHashMap, the lab 8 sanity tests and many threads at once. */
+public class TestConcurrentMyHashMap {
+
+    @Test
+    public void sanityTests() {
+        TestMyHashMap.sanityClearTest(new ConcurrentMyHashMap<>());
+        TestMyHashMap.sanityContainsKeyTest(new ConcurrentMyHashMap<>());
+        TestMyHashMap.sanityGetTest(new ConcurrentMyHashMap<>());
+        TestMyHashMap.sanitySizeTest(new ConcurrentMyHashMap<>());
+        TestMyHashMap.sanityPutTest(new ConcurrentMyHashMap<>());
+        TestMyHashMap.sanityKeySetTest(new ConcurrentMyHashMap<>());
+        TestMyHashMap.functionalityTest(new ConcurrentMyHashMap<>(),
+                new ConcurrentMyHashMap<>());
+    }
+
+    @Test
+    public void testRemove() {
+        ConcurrentMyHashMap<String, String> q = new ConcurrentMyHashMap<>();
+        q.put("a", "x");
+        q.put("b", "y");
+        assertNull(q.remove("a", "y"));
+        assertEquals("x", q.remove("a", "x"));
+        assertNull(q.remove("a"));
+        assertEquals("y", q.remove("b"));
+        assertEquals(0, q.size());
+    }
+
+    /** Runs TASK on THREADS threads at once, and rethrows what any of them threw. */
+    private static void runThreads(int threads, IntTask task) throws InterruptedException {
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    task.run(id);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+
+    private interface IntTask {
+        void run(int id);
+    }
+
+    // every thread puts its own keys while the table keeps growing, and reads them back
+    @Test
+    public void testConcurrentPutsThroughResizes() throws InterruptedException {
+        ConcurrentMyHashMap<Integer, Integer> map = new ConcurrentMyHashMap<>();
+        int threads = 8;
+        int perThread = 20000;
+        runThreads(threads, id -> {
+            for (int i = 0; i < perThread; i++) {
+                int key = i * threads + id;
+                map.put(key, key);
+                assertEquals(Integer.valueOf(key), map.get(key));
+            }
+        });
+        assertEquals(threads * perThread, map.size());
+        for (int key = 0; key < threads * perThread; key++) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+        Set<Integer> keys = map.keySet();
+        assertEquals(threads * perThread, keys.size());
+    }
+
+    // threads put, overwrite and remove overlapping keys, each key ends up as its last writer
+    @Test
+    public void testConcurrentPutsAndRemoves() throws InterruptedException {
+        ConcurrentMyHashMap<Integer, Integer> map = new ConcurrentMyHashMap<>();
+        int threads = 6;
+        runThreads(threads, id -> {
+            for (int round = 0; round < 3; round++) {
+                for (int key = 0; key < 10000; key++) {
+                    map.put(key, id);
+                }
+                for (int key = id; key < 10000; key += threads) {
+                    map.remove(key);
+                }
+            }
+        });
+        Set<Integer> keys = new HashSet<>();
+        for (Integer key : map) {
+            keys.add(key);
+        }
+        assertEquals(keys.size(), map.size());
+        for (int key = 0; key < 10000; key++) {
+            Integer value = map.get(key);
+            assertTrue(value == null || (value >= 0 && value < threads));
+            assertEquals(value != null, keys.contains(key));
+        }
+        map.clear();
+        assertEquals(0, map.size());
+    }
+}
@@ -3,7 +3,11 @@ package hashmap;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -27,7 +31,7 @@ public class TestMyHashMap {
         sanityClearTest(new MyHashMap<>());
     }
 
-    public static void sanityClearTest(MyHashMap<String, Integer> b) {
+    public static void sanityClearTest(Map61B<String, Integer> b) {
         for (int i = 0; i < 455; i++) {
             b.put("hi" + i, 1);
             //make sure put is working via containsKey and get
@@ -48,7 +52,7 @@ public class TestMyHashMap {
         sanityContainsKeyTest(new MyHashMap<>());
     }
 
-    public static void sanityContainsKeyTest(MyHashMap<String, Integer> b) {
+    public static void sanityContainsKeyTest(Map61B<String, Integer> b) {
         assertFalse(b.containsKey("waterYouDoingHere"));
         b.put("waterYouDoingHere", 0);
         assertTrue(b.containsKey("waterYouDoingHere"));
@@ -60,7 +64,7 @@ public class TestMyHashMap {
         sanityGetTest(new MyHashMap<>());
     }
 
-    public static void sanityGetTest(MyHashMap<String, Integer> b) {
+    public static void sanityGetTest(Map61B<String, Integer> b) {
         assertEquals(null, b.get("starChild"));
         b.put("starChild", 5);
         assertNotEquals(null, b.get("starChild"));
@@ -75,7 +79,7 @@ public class TestMyHashMap {
         sanitySizeTest(new MyHashMap<>());
     }
 
-    public static void sanitySizeTest(MyHashMap<String, Integer> b) {
+    public static void sanitySizeTest(Map61B<String, Integer> b) {
         assertEquals(0, b.size());
         b.put("hi", 1);
         assertEquals(1, b.size());
@@ -91,7 +95,7 @@ public class TestMyHashMap {
         sanityPutTest(new MyHashMap<>());
     }
 
-    public static void sanityPutTest(MyHashMap<String, Integer> b) {
+    public static void sanityPutTest(Map61B<String, Integer> b) {
         b.put("hi", 1);
         assertTrue(b.containsKey("hi") && b.get("hi") != null);
     }
@@ -101,7 +105,7 @@ public class TestMyHashMap {
         sanityKeySetTest(new MyHashMap<>());
     }
 
-    public static void sanityKeySetTest(MyHashMap<String, Integer> b) {
+    public static void sanityKeySetTest(Map61B<String, Integer> b) {
         HashSet<String> values = new HashSet<String>();
         for (int i = 0; i < 455; i++) {
             b.put("hi" + i, 1);
@@ -119,8 +123,8 @@ public class TestMyHashMap {
         functionalityTest(new MyHashMap<>(), new MyHashMap<>());
     }
 
-    public static void functionalityTest(MyHashMap<String, String> dictionary,
-                                   MyHashMap<String, Integer> studentIDs) {
+    public static void functionalityTest(Map61B<String, String> dictionary,
+                                   Map61B<String, Integer> studentIDs) {
         assertEquals(0, dictionary.size());
 
         // can put objects in dictionary and get them
@@ -159,4 +163,104 @@ public class TestMyHashMap {
         assertEquals(345, studentIDs.get("evil alan").intValue());
         assertEquals(studentIDs.get("evil alan"), studentIDs.get("alan"));
     }
+
+    // removes the last key put, a missing key, and a key given with the wrong value
+    public static void removeThreeCasesTest(Map61B<String, String> q) {
+        q.put("c", "a");
+        q.put("b", "a");
+        q.put("a", "a");
+        q.put("d", "a");
+        q.put("e", "a");
+        assertEquals("a", q.remove("e"));
+        assertNull(q.remove("e"));
+        assertNull(q.remove("c", "b"));
+        assertTrue(q.containsKey("c"));
+        assertEquals("a", q.remove("c", "a"));
+        assertFalse(q.containsKey("c"));
+        assertEquals(3, q.size());
+        assertTrue(q.containsKey("a") && q.containsKey("b") && q.containsKey("d"));
+    }
+
+    // random puts and removes into the empty MAP, checked against java.util.HashMap
+    public static void randomAgainstHashMapTest(Map61B<Integer, Integer> map) {
+        Random random = new Random(61);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int n = 0; n < 20000; n++) {
+            Integer key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                expected.put(key, n);
+                map.put(key, n);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 2000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(expected.keySet(), map.keySet());
+    }
+
+    // removing through the iterator of the empty MAP skips no key and returns none twice
+    public static void iteratorRemoveTest(Map61B<Integer, Integer> map) {
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        Set<Integer> seen = new HashSet<>();
+        Iterator<Integer> keys = map.iterator();
+        while (keys.hasNext()) {
+            Integer key = keys.next();
+            assertTrue(seen.add(key));
+            if (key % 3 != 0) {
+                keys.remove();
+            }
+        }
+        assertEquals(1000, seen.size());
+        assertEquals(334, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 3 == 0, map.containsKey(i));
+        }
+    }
+
+    // putting while iterating over the empty MAP throws ConcurrentModificationException
+    public static void iteratorFailFastTest(Map61B<String, Integer> map) {
+        map.put("a", 1);
+        map.put("b", 2);
+        for (String key : map) {
+            map.put(key + key, 3);
+        }
+    }
+
+    /** Keys with equal hash codes, which all land in the same home slot or group. */
+    static class Collider {
+        private final int id;
+
+        Collider(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 3;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Collider && ((Collider) o).id == id;
+        }
+    }
+
+    // removing every other key of a run of colliding keys from the empty MAP hides none of the rest
+    public static void collidingRemoveTest(Map61B<Collider, Integer> map) {
+        for (int i = 0; i < 60; i++) {
+            map.put(new Collider(i), i);
+        }
+        for (int i = 0; i < 60; i += 2) {
+            assertEquals(Integer.valueOf(i), map.remove(new Collider(i)));
+        }
+        assertEquals(30, map.size());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(i % 2 == 1 ? Integer.valueOf(i) : null, map.get(new Collider(i)));
+        }
+    }
 }
@@ -3,6 +3,9 @@ package hashmap;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.math.BigDecimal;
+import java.util.Iterator;
+
 /**
  * Tests by Brendan Hu, Spring 2015
  * Revised for 2016 by Josh Hug
@@ -36,6 +39,11 @@ public class TestMyHashMapBuckets {
         b = new MyHashMapPQBuckets<>();
         c = new MyHashMapPQBuckets<>();
         d = new MyHashMapPQBuckets<>();
+
+        a = new MyHashMapAdaptiveBuckets<>();
+        b = new MyHashMapAdaptiveBuckets<>();
+        c = new MyHashMapAdaptiveBuckets<>();
+        d = new MyHashMapAdaptiveBuckets<>();
     }
 
     //assumes put/size/containsKey/get work
@@ -46,6 +54,7 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.sanityClearTest(new MyHashMapTSBuckets<>());
         TestMyHashMap.sanityClearTest(new MyHashMapHSBuckets<>());
         TestMyHashMap.sanityClearTest(new MyHashMapPQBuckets<>());
+        TestMyHashMap.sanityClearTest(new MyHashMapAdaptiveBuckets<>());
     }
 
     // assumes put works
@@ -56,6 +65,7 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.sanityContainsKeyTest(new MyHashMapTSBuckets<>());
         TestMyHashMap.sanityContainsKeyTest(new MyHashMapHSBuckets<>());
         TestMyHashMap.sanityContainsKeyTest(new MyHashMapPQBuckets<>());
+        TestMyHashMap.sanityContainsKeyTest(new MyHashMapAdaptiveBuckets<>());
     }
 
     // assumes put works
@@ -66,6 +76,7 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.sanityGetTest(new MyHashMapTSBuckets<>());
         TestMyHashMap.sanityGetTest(new MyHashMapHSBuckets<>());
         TestMyHashMap.sanityGetTest(new MyHashMapPQBuckets<>());
+        TestMyHashMap.sanityGetTest(new MyHashMapAdaptiveBuckets<>());
     }
 
     // assumes put works
@@ -76,6 +87,7 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.sanitySizeTest(new MyHashMapTSBuckets<>());
         TestMyHashMap.sanitySizeTest(new MyHashMapHSBuckets<>());
         TestMyHashMap.sanitySizeTest(new MyHashMapPQBuckets<>());
+        TestMyHashMap.sanitySizeTest(new MyHashMapAdaptiveBuckets<>());
     }
 
     //assumes get/containskey work
@@ -86,6 +98,7 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.sanityPutTest(new MyHashMapTSBuckets<>());
         TestMyHashMap.sanityPutTest(new MyHashMapHSBuckets<>());
         TestMyHashMap.sanityPutTest(new MyHashMapPQBuckets<>());
+        TestMyHashMap.sanityPutTest(new MyHashMapAdaptiveBuckets<>());
     }
 
     @Test
@@ -95,6 +108,7 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.sanityKeySetTest(new MyHashMapTSBuckets<>());
         TestMyHashMap.sanityKeySetTest(new MyHashMapHSBuckets<>());
         TestMyHashMap.sanityKeySetTest(new MyHashMapPQBuckets<>());
+        TestMyHashMap.sanityKeySetTest(new MyHashMapAdaptiveBuckets<>());
     }
 
     // Test for general functionality and that the properties of Maps hold.
@@ -105,5 +119,154 @@ public class TestMyHashMapBuckets {
         TestMyHashMap.functionalityTest(new MyHashMapTSBuckets<>(), new MyHashMapTSBuckets<>());
         TestMyHashMap.functionalityTest(new MyHashMapHSBuckets<>(), new MyHashMapHSBuckets<>());
         TestMyHashMap.functionalityTest(new MyHashMapPQBuckets<>(), new MyHashMapPQBuckets<>());
+        TestMyHashMap.functionalityTest(new MyHashMapAdaptiveBuckets<>(),
+                new MyHashMapAdaptiveBuckets<>());
+    }
+
+    /** Keys which all share one hash code, so they all land in one bucket. */
+    private static class Collider implements Comparable<Collider> {
+        private final int id;
+
+        Collider(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 61;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Collider && ((Collider) o).id == id;
+        }
+
+        @Override
+        public int compareTo(Collider o) {
+            return Integer.compare(id, o.id);
+        }
+    }
+
+    // a colliding bucket becomes a tree, and an array again once it is short
+    @Test
+    public void adaptiveBucketTest() {
+        MyHashMapAdaptiveBuckets<Collider, Integer> map = new MyHashMapAdaptiveBuckets<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put(new Collider(i), i);
+        }
+        assertEquals(1000, map.size());
+        assertTrue(isTree(map, new Collider(0)));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(new Collider(i)).intValue());
+        }
+        assertNull(map.get(new Collider(1000)));
+        for (int i = 0; i < 995; i++) {
+            assertEquals(i, map.remove(new Collider(i)).intValue());
+        }
+        assertFalse(isTree(map, new Collider(999)));
+        for (int i = 995; i < 1000; i++) {
+            assertTrue(map.containsKey(new Collider(i)));
+        }
+        assertEquals(5, map.size());
+    }
+
+    /** Colliding keys with no order. */
+    private static class PlainCollider {
+        private final int id;
+
+        PlainCollider(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 61;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PlainCollider && ((PlainCollider) o).id == id;
+        }
+    }
+
+    // keys without an order, or of mixed classes, stay in an array bucket however long
+    @Test
+    public void adaptiveBucketNotComparableTest() {
+        MyHashMapAdaptiveBuckets<Object, Integer> plain = new MyHashMapAdaptiveBuckets<>();
+        MyHashMapAdaptiveBuckets<Object, Integer> mixed = new MyHashMapAdaptiveBuckets<>();
+        for (int i = 0; i < 50; i++) {
+            plain.put(new PlainCollider(i), i);
+            mixed.put(i % 2 == 0 ? new Collider(i) : new PlainCollider(i), i);
+        }
+        assertFalse(isTree(plain, new PlainCollider(0)));
+        assertFalse(isTree(mixed, new Collider(0)));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, plain.get(new PlainCollider(i)).intValue());
+            assertEquals(i, mixed.get(i % 2 == 0 ? new Collider(i) : new PlainCollider(i))
+                    .intValue());
+        }
+    }
+
+    /** Colliding BigDecimals, whose order says 1.0 and 1.00 are the same while equals does not. */
+    private static class DecimalCollider implements Comparable<DecimalCollider> {
+        private final BigDecimal value;
+
+        DecimalCollider(String value) {
+            this.value = new BigDecimal(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 61;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DecimalCollider && ((DecimalCollider) o).value.equals(value);
+        }
+
+        @Override
+        public int compareTo(DecimalCollider o) {
+            return value.compareTo(o.value);
+        }
+    }
+
+    // a tree bucket tells keys apart with equals, compareTo only orders them
+    @Test
+    public void adaptiveBucketOrderNotEqualsTest() {
+        MyHashMapAdaptiveBuckets<DecimalCollider, Integer> map = new MyHashMapAdaptiveBuckets<>();
+        String[] keys = new String[20];
+        for (int i = 0; i < keys.length; i++) {
+            // 1, 1.0, 1.00, ... and 2, 2.0, 2.00, ...
+            keys[i] = (1 + i % 2) + (i < 2 ? "" : "." + "0".repeat(i / 2));
+            map.put(new DecimalCollider(keys[i]), i);
+        }
+        assertTrue(isTree(map, new DecimalCollider("1")));
+        assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.get(new DecimalCollider(keys[i])).intValue());
+        }
+        assertNull(map.get(new DecimalCollider("1.0000000000000000000")));
+        assertEquals(2, map.remove(new DecimalCollider(keys[2])).intValue());
+        assertNull(map.get(new DecimalCollider(keys[2])));
+        assertEquals(0, map.get(new DecimalCollider(keys[0])).intValue());
+        Iterator<DecimalCollider> iterator = map.iterator();
+        int seen = 0;
+        while (iterator.hasNext()) {
+            if (iterator.next().value.compareTo(BigDecimal.ONE) == 0) {
+                iterator.remove();
+            }
+            seen++;
+        }
+        assertEquals(keys.length - 1, seen);
+        assertEquals(keys.length / 2, map.size());
+        assertNull(map.get(new DecimalCollider("1")));
+        assertEquals(1, map.get(new DecimalCollider("2")).intValue());
+    }
+
+    /* true if the bucket holding KEY in MAP is a tree */
+    private static boolean isTree(MyHashMapAdaptiveBuckets<?, ?> map, Object key) {
+        Object bucket = map.bucketOf(key);
+        return ((MyHashMapAdaptiveBuckets<?, ?>.AdaptiveBucket) bucket).isTree();
     }
 }
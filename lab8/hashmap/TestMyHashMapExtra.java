@@ -3,6 +3,15 @@ package hashmap;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 /** Tests of optional parts of lab 8. */
 public class TestMyHashMapExtra {
 
@@ -49,4 +58,114 @@ public class TestMyHashMapExtra {
         assertTrue(q.containsKey("b"));
         assertTrue(q.containsKey("f"));
     }
+
+    /** keySet and entrySet are views of the buckets, not copies. */
+    @Test
+    public void testLiveViews() {
+        MyHashMap<String, Integer> q = new MyHashMapALBuckets<>();
+        Set<String> keys = q.keySet();
+        Set<Map.Entry<String, Integer>> entries = q.entrySet();
+        for (int i = 0; i < 100; i++) {
+            q.put("k" + i, i);
+        }
+        assertEquals(100, keys.size());
+        assertTrue(keys.contains("k42"));
+        assertTrue(keys.remove("k42"));
+        assertFalse(q.containsKey("k42"));
+        assertEquals(99, q.size());
+        for (Map.Entry<String, Integer> entry : entries) {
+            entry.setValue(entry.getValue() + 1000);
+        }
+        assertEquals(1007, q.get("k7").intValue());
+        assertEquals(99, entries.size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        List<MyHashMap<String, Integer>> maps = List.of(new MyHashMap<>(),
+                new MyHashMapHSBuckets<>(), new MyHashMapTSBuckets<>(),
+                new MyHashMapPQBuckets<>());
+        for (MyHashMap<String, Integer> q : maps) {
+            for (int i = 0; i < 300; i++) {
+                q.put("k" + i, i);
+            }
+            Iterator<String> keys = q.iterator();
+            int seen = 0;
+            while (keys.hasNext()) {
+                String key = keys.next();
+                seen++;
+                if (q.get(key) % 2 == 0) {
+                    keys.remove();
+                }
+            }
+            assertEquals(300, seen);
+            assertEquals(150, q.size());
+            for (int i = 0; i < 300; i++) {
+                assertEquals(i % 2 == 1, q.containsKey("k" + i));
+            }
+        }
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIteratorFailFast() {
+        MyHashMap<String, Integer> q = new MyHashMap<>();
+        q.put("a", 1);
+        q.put("b", 2);
+        for (String key : q.keySet()) {
+            q.remove(key);
+        }
+    }
+
+    /** Random puts and removes while the table grows, checked against java.util.HashMap. */
+    @Test
+    public void testProgressiveRehash() {
+        Random random = new Random(8);
+        List<MyHashMap<Integer, Integer>> maps = List.of(new MyHashMap<>(1),
+                new MyHashMapALBuckets<>(2), new MyHashMapTSBuckets<>(1, 0.1));
+        for (MyHashMap<Integer, Integer> q : maps) {
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int n = 0; n < 20000; n++) {
+                Integer key = random.nextInt(5000);
+                if (random.nextInt(4) == 0) {
+                    assertEquals(expected.remove(key), q.remove(key));
+                } else {
+                    expected.put(key, n);
+                    q.put(key, n);
+                }
+                assertEquals(expected.size(), q.size());
+                if (n % 1000 == 0) {
+                    // halfway through a rehash the keys are in both tables
+                    assertEquals(expected.keySet(), new HashSet<>(q.keySet()));
+                }
+            }
+            for (int key = 0; key < 5000; key++) {
+                assertEquals(expected.get(key), q.get(key));
+            }
+        }
+    }
+
+    /** Reads and updates move buckets too, but never under an iterator walking both tables. */
+    @Test
+    public void testReadsWhileRehashing() {
+        MyHashMap<Integer, Integer> q = new MyHashMap<>(1);
+        for (int key = 0; key < 769; key++) {
+            q.put(key, key);
+        }
+        // the last put started a rehash of 1024 buckets: iterate while reading and updating
+        Set<Integer> seen = new HashSet<>();
+        for (Integer key : q) {
+            assertTrue("returned twice: " + key, seen.add(key));
+            assertEquals(key, q.get(key));
+            q.put(key, key + 1);
+            assertTrue(q.containsKey(key + 1 < 769 ? key + 1 : 0));
+        }
+        assertEquals(769, seen.size());
+        // without an iterator the reads alone finish the rehash
+        for (int round = 0; round < 2; round++) {
+            for (int key = 0; key < 769; key++) {
+                assertEquals(Integer.valueOf(key + 1), q.get(key));
+            }
+        }
+        assertEquals(769, q.size());
+    }
 }
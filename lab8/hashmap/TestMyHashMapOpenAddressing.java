@@ -0,0 +1,48 @@
+package hashmap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.*;
+
+/** Tests of MyHashMapOpenAddressing, the lab 8 sanity tests and its probing. */
+public class TestMyHashMapOpenAddressing {
+
+    @Test
+    public void sanityTests() {
+        TestMyHashMap.sanityClearTest(new MyHashMapOpenAddressing<>());
+        TestMyHashMap.sanityContainsKeyTest(new MyHashMapOpenAddressing<>());
+        TestMyHashMap.sanityGetTest(new MyHashMapOpenAddressing<>());
+        TestMyHashMap.sanitySizeTest(new MyHashMapOpenAddressing<>());
+        TestMyHashMap.sanityPutTest(new MyHashMapOpenAddressing<>());
+        TestMyHashMap.sanityKeySetTest(new MyHashMapOpenAddressing<>());
+        TestMyHashMap.functionalityTest(new MyHashMapOpenAddressing<>(),
+                new MyHashMapOpenAddressing<>());
+    }
+
+    @Test
+    public void testRemoveThreeCases() {
+        TestMyHashMap.removeThreeCasesTest(new MyHashMapOpenAddressing<>());
+    }
+
+    /* removing from the middle of a run of colliding keys must not hide the rest */
+    @Test
+    public void testBackwardShift() {
+        TestMyHashMap.collidingRemoveTest(new MyHashMapOpenAddressing<>(4));
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        TestMyHashMap.randomAgainstHashMapTest(new MyHashMapOpenAddressing<>(2, 0.9));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        TestMyHashMap.iteratorRemoveTest(new MyHashMapOpenAddressing<>());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIteratorFailFast() {
+        TestMyHashMap.iteratorFailFastTest(new MyHashMapOpenAddressing<>());
+    }
+}
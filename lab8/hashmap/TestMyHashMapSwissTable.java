@@ -0,0 +1,67 @@
+package hashmap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import hashmap.TestMyHashMap.Collider;
+
+/** Tests of MyHashMapSwissTable, the lab 8 sanity tests its control bytes and its tombstones. */
+public class TestMyHashMapSwissTable {
+
+    @Test
+    public void sanityTests() {
+        TestMyHashMap.sanityClearTest(new MyHashMapSwissTable<>());
+        TestMyHashMap.sanityContainsKeyTest(new MyHashMapSwissTable<>());
+        TestMyHashMap.sanityGetTest(new MyHashMapSwissTable<>());
+        TestMyHashMap.sanitySizeTest(new MyHashMapSwissTable<>());
+        TestMyHashMap.sanityPutTest(new MyHashMapSwissTable<>());
+        TestMyHashMap.sanityKeySetTest(new MyHashMapSwissTable<>());
+        TestMyHashMap.functionalityTest(new MyHashMapSwissTable<>(),
+                new MyHashMapSwissTable<>());
+    }
+
+    @Test
+    public void testRemoveThreeCases() {
+        TestMyHashMap.removeThreeCasesTest(new MyHashMapSwissTable<>());
+    }
+
+    /* removing keys from full groups must leave tombstones, not hide the keys after them */
+    @Test
+    public void testTombstones() {
+        TestMyHashMap.collidingRemoveTest(new MyHashMapSwissTable<>(4));
+    }
+
+    /* endless churn at a constant size reuses or drops the tombstones, never losing a key */
+    @Test
+    public void testChurn() {
+        MyHashMapSwissTable<Collider, Integer> map = new MyHashMapSwissTable<>(64, 0.95);
+        for (int i = 0; i < 40; i++) {
+            map.put(new Collider(i), i);
+        }
+        for (int i = 40; i < 20000; i++) {
+            assertEquals(Integer.valueOf(i - 40), map.remove(new Collider(i - 40)));
+            map.put(new Collider(i), i);
+            assertEquals(40, map.size());
+        }
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(i >= 19960 ? Integer.valueOf(i) : null, map.get(new Collider(i)));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        TestMyHashMap.randomAgainstHashMapTest(new MyHashMapSwissTable<>(2, 0.9));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        TestMyHashMap.iteratorRemoveTest(new MyHashMapSwissTable<>());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIteratorFailFast() {
+        TestMyHashMap.iteratorFailFastTest(new MyHashMapSwissTable<>());
+    }
+}
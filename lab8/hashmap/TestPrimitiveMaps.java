@@ -0,0 +1,109 @@
+package hashmap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Tests of IntIntMap, ObjectIntMap and LongObjectMap, against java.util.HashMap. */
+public class TestPrimitiveMaps {
+
+    @Test
+    public void intIntMapTest() {
+        IntIntMap map = new IntIntMap(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(49);
+        for (int n = 0; n < 50000; n++) {
+            // small keys collide a lot, and include 0 and negative keys
+            int key = random.nextInt(3000) - 1000;
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+                    break;
+                case 1:
+                    expected.merge(key, 5, Integer::sum);
+                    assertEquals(expected.get(key).intValue(), map.increment(key, 5));
+                    break;
+                default:
+                    expected.put(key, n);
+                    map.put(key, n);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = -1000; key < 2000; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.getOrDefault(key, -1).intValue(), map.getOrDefault(key, -1));
+        }
+        Map<Integer, Integer> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(expected, seen);
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(0, map.get(0));
+    }
+
+    @Test
+    public void objectIntMapTest() {
+        ObjectIntMap<String> map = new ObjectIntMap<>();
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(61);
+        for (int n = 0; n < 50000; n++) {
+            String key = "k" + random.nextInt(2000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+                    break;
+                case 1:
+                    expected.merge(key, 1, Integer::sum);
+                    assertEquals(expected.get(key).intValue(), map.increment(key, 1));
+                    break;
+                default:
+                    expected.put(key, n);
+                    map.put(key, n);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int i = 0; i < 2000; i++) {
+            String key = "k" + i;
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.getOrDefault(key, 0).intValue(), map.get(key));
+        }
+        Map<String, Integer> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(expected, seen);
+        assertFalse(map.containsKey(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void objectIntMapNullKeyTest() {
+        new ObjectIntMap<String>().increment(null, 1);
+    }
+
+    @Test
+    public void longObjectMapTest() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(8);
+        for (int n = 0; n < 50000; n++) {
+            // keys which only differ in their high bits, and 0
+            long key = (long) random.nextInt(3000) << 40;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                expected.put(key, "v" + n);
+                map.put(key, "v" + n);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long i = 0; i < 3000; i++) {
+            assertEquals(expected.get(i << 40), map.get(i << 40));
+        }
+        Map<Long, String> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(expected, seen);
+        map.put(7, null);
+        assertFalse(map.containsKey(7));
+    }
+}
@@ -3,6 +3,7 @@ package speed;
 import edu.princeton.cs.algs4.Stopwatch;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Scanner;
 
 import hashmap.Map61B;
@@ -11,11 +12,17 @@ import hashmap.MyHashMapLLBuckets;
 import hashmap.MyHashMapTSBuckets;
 import hashmap.MyHashMapHSBuckets;
 import hashmap.MyHashMapPQBuckets;
+import hashmap.MyHashMapAdaptiveBuckets;
+import hashmap.MyHashMapOpenAddressing;
+import hashmap.MyHashMapSwissTable;
 
 /** Performs a timing test on three different set implementations.
  *  @author Neil Kulkarni adapted from Josh Hug, Brendan Hu
  */
 public class BucketsSpeedTest {
+    /** Keys found by the last lookupRandom, printed so the lookups are not optimized away. */
+    private static int found;
+
     /**
      * Requests user input and performs tests of three different set
      * implementations. ARGS is unused. 
@@ -36,12 +43,32 @@ public class BucketsSpeedTest {
             System.out.print("\nEnter # strings to insert into each map: ");
             N = waitForPositiveInt(input);
 
-            // Test each of the map implementations
-            timeRandomMap61B(new MyHashMapALBuckets<>(), N, L);
-            timeRandomMap61B(new MyHashMapLLBuckets<>(), N, L);
-            timeRandomMap61B(new MyHashMapTSBuckets<>(), N, L);
-            timeRandomMap61B(new MyHashMapHSBuckets<>(), N, L);
-            timeRandomMap61B(new MyHashMapPQBuckets<>(), N, L);
+            // Test each of the map implementations on the same strings,
+            // looking up every inserted string and as many longer ones that are absent
+            String[] keys = randomStrings(N, L);
+            String[] misses = randomStrings(N, L + 1);
+            timeRandomMap61B(new MyHashMapALBuckets<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapLLBuckets<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapTSBuckets<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapHSBuckets<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapPQBuckets<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapAdaptiveBuckets<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapOpenAddressing<>(), keys, misses);
+            timeRandomMap61B(new MyHashMapSwissTable<>(), keys, misses);
+            timeRandomHashMap(new HashMap<>(), keys, misses);
+
+            // again with every map allowed to fill up to 7/8, where probes get long
+            double load = 0.875;
+            System.out.println("\nAt load factor " + load + ":");
+            timeRandomMap61B(new MyHashMapALBuckets<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapLLBuckets<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapTSBuckets<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapHSBuckets<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapPQBuckets<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapAdaptiveBuckets<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapOpenAddressing<>(16, load), keys, misses);
+            timeRandomMap61B(new MyHashMapSwissTable<>(16, load), keys, misses);
+            timeRandomHashMap(new HashMap<>(16, (float) load), keys, misses);
 
             System.out.print("\nWould you like to try more timed-tests? (y/n)");
             repeat = input.nextLine();
@@ -50,35 +77,94 @@ public class BucketsSpeedTest {
     }
 
     /**
-     * Returns time needed to put N random strings of length L into the
+     * Returns N random strings of length L, with their hash codes already computed,
+     * so that the first map tested does not pay for hashing them for all the others.
+     */
+    public static String[] randomStrings(int N, int L) {
+        String[] keys = new String[N];
+        for (int i = 0; i < N; i++) {
+            keys[i] = StringUtils.randomString(L);
+            keys[i].hashCode();
+        }
+        return keys;
+    }
+
+    /**
+     * Returns time needed to put the strings KEYS into the
      * hashmap.Map61B 61bMap.
      */
-    public static double insertRandom(Map61B<String, Integer> map61B, int N, int L) {
+    public static double insertRandom(Map61B<String, Integer> map61B, String[] keys) {
         Stopwatch sw = new Stopwatch();
-        String s = "cat";
-        for (int i = 0; i < N; i++) {
-            s = StringUtils.randomString(L);
-            map61B.put(s, new Integer(i));
+        for (int i = 0; i < keys.length; i++) {
+            map61B.put(keys[i], i);
         }
         return sw.elapsedTime();
     }
 
     /**
-     * Attempts to insert N random strings of length L into map,
-     * Prints time of the N insert calls, otherwise
+     * Returns time needed to get every string of KEYS and MISSES from the
+     * hashmap.Map61B 61bMap, and sets found to the number of them it had.
+     */
+    public static double lookupRandom(Map61B<String, Integer> map61B, String[] keys,
+                                      String[] misses) {
+        Stopwatch sw = new Stopwatch();
+        int hits = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (map61B.get(keys[i]) != null) {
+                hits++;
+            }
+            if (map61B.get(misses[i]) != null) {
+                hits++;
+            }
+        }
+        found = hits;
+        return sw.elapsedTime();
+    }
+
+    /**
+     * Attempts to insert the strings KEYS into map and look them and MISSES up,
+     * Prints time of the insert and of the get calls, otherwise
      * Prints a nice message about the error
      */
-    public static void timeRandomMap61B(Map61B<String, Integer> map, int N, int L) {
+    public static void timeRandomMap61B(Map61B<String, Integer> map, String[] keys,
+                                        String[] misses) {
         try {
-            double mapTime = insertRandom(map, N, L);
-            System.out.printf(map.getClass() + ": %.2f sec\n", mapTime);
+            double insertTime = insertRandom(map, keys);
+            double lookupTime = lookupRandom(map, keys, misses);
+            System.out.printf(map.getClass() + ": put %.2f sec, get %.2f sec (%d found)\n",
+                    insertTime, lookupTime, found);
         } catch (StackOverflowError e) {
-            printInfoOnStackOverflow(N, L);
+            printInfoOnStackOverflow(keys.length, keys[0].length());
         } catch (RuntimeException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Same as timeRandomMap61B, for Java's HashMap as the baseline.
+     */
+    public static void timeRandomHashMap(HashMap<String, Integer> hashMap, String[] keys,
+                                         String[] misses) {
+        Stopwatch sw = new Stopwatch();
+        for (int i = 0; i < keys.length; i++) {
+            hashMap.put(keys[i], i);
+        }
+        double insertTime = sw.elapsedTime();
+        sw = new Stopwatch();
+        int hits = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (hashMap.get(keys[i]) != null) {
+                hits++;
+            }
+            if (hashMap.get(misses[i]) != null) {
+                hits++;
+            }
+        }
+        double lookupTime = sw.elapsedTime();
+        System.out.printf("Java's Built-in HashMap: put %.2f sec, get %.2f sec (%d found)\n",
+                insertTime, lookupTime, hits);
+    }
+
     /**
      * Waits for the user on other side of Scanner
      * to enter a positive int,
@@ -0,0 +1,133 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+
+import hashmap.ConcurrentMyHashMap;
+import hashmap.Map61B;
+import hashmap.MyHashMap;
+
+/**
+ * Measures how the throughput of a map shared by many threads scales from
+ * 1 to N threads. Every thread does the same number of operations on
+ * random strings, 4 gets for every put, and the throughput printed is the
+ * total number of operations per second.
+ * ConcurrentMyHashMap is compared with a MyHashMap behind a single lock,
+ * which is how the other maps have to be shared.
+ * @author LMS
+ */
+public class ConcurrentSpeedTest {
+    /** The number of distinct strings the operations are made on. */
+    private static final int KEYS = 1 << 16;
+
+    /**
+     * Requests N and the number of operations per thread from the user,
+     * and prints the throughput of each map with 1 to N threads. ARGS is unused.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Scanner input = new Scanner(System.in);
+        System.out.print("\nEnter the largest # threads to try ("
+                + Runtime.getRuntime().availableProcessors() + " cores): ");
+        int maxThreads = BucketsSpeedTest.waitForPositiveInt(input);
+        System.out.print("Enter # operations per thread: ");
+        int operations = BucketsSpeedTest.waitForPositiveInt(input);
+        input.close();
+
+        String[] keys = BucketsSpeedTest.randomStrings(KEYS, 10);
+        System.out.println("threads   ConcurrentMyHashMap   MyHashMap+lock   (ops/sec)");
+        // 1, 2, 4, ... threads, and maxThreads last
+        for (int threads = 1; threads <= maxThreads;
+             threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+            double concurrent = throughput(new ConcurrentMyHashMap<>(), threads, operations, keys);
+            double locked = throughput(new GlobalLockMap<>(new MyHashMap<>()), threads,
+                    operations, keys);
+            System.out.printf("%7d %21.0f %16.0f\n", threads, concurrent, locked);
+        }
+    }
+
+    /**
+     * Returns the operations per second of THREADS threads doing OPERATIONS
+     * gets and puts each on MAP, with keys taken from KEYS.
+     */
+    public static double throughput(Map61B<String, Integer> map, int threads, int operations,
+                                    String[] keys) throws InterruptedException {
+        for (int i = 0; i < keys.length; i += 2) {
+            map.put(keys[i], i);
+        }
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < operations; i++) {
+                    String key = keys[random.nextInt(keys.length)];
+                    if (i % 5 == 0) {
+                        map.put(key, i);
+                    } else {
+                        map.get(key);
+                    }
+                }
+            }));
+        }
+        Stopwatch sw = new Stopwatch();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (double) threads * operations / sw.elapsedTime();
+    }
+
+    /** A Map61B shared by taking one lock for every operation. */
+    private static class GlobalLockMap<K, V> implements Map61B<K, V> {
+        private final Map61B<K, V> map;
+
+        GlobalLockMap(Map61B<K, V> map) {
+            this.map = map;
+        }
+
+        public synchronized void clear() {
+            map.clear();
+        }
+
+        public synchronized boolean containsKey(K key) {
+            return map.containsKey(key);
+        }
+
+        public synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        public synchronized int size() {
+            return map.size();
+        }
+
+        public synchronized void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        public synchronized Set<K> keySet() {
+            return map.keySet();
+        }
+
+        public synchronized V remove(K key) {
+            return map.remove(key);
+        }
+
+        public synchronized V remove(K key, V value) {
+            return map.remove(key, value);
+        }
+
+        public synchronized Iterator<K> iterator() {
+            return map.iterator();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package speed;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+import hashmap.Map61B;
+import hashmap.MyHashMap;
+import hashmap.MyHashMapAdaptiveBuckets;
+import hashmap.MyHashMapALBuckets;
+import hashmap.MyHashMapLLBuckets;
+import hashmap.MyHashMapOpenAddressing;
+
+/**
+ * Measures the heap each map needs per entry: the heap in use after putting N random
+ * strings, minus the heap in use before, divided by N. The strings are made beforehand
+ * and shared by every map, so only the table, its buckets and nodes, and the boxed
+ * Integer values are counted.
+ * @author LMS
+ */
+public class FootprintTest {
+    /** Keeps the map being measured reachable until the heap is measured. */
+    private static Object keepAlive;
+
+    /**
+     * Requests N from the user and prints the bytes per entry of each map.
+     * ARGS is unused.
+     */
+    public static void main(String[] args) throws IOException {
+        Scanner input = new Scanner(System.in);
+        System.out.print("\nEnter # strings to insert into each map: ");
+        int n = BucketsSpeedTest.waitForPositiveInt(input);
+        String[] keys = BucketsSpeedTest.randomStrings(n, 10);
+
+        measure("MyHashMap", MyHashMap::new, keys);
+        measure("MyHashMapALBuckets", MyHashMapALBuckets::new, keys);
+        measure("MyHashMapLLBuckets", MyHashMapLLBuckets::new, keys);
+        measure("MyHashMapAdaptiveBuckets", MyHashMapAdaptiveBuckets::new, keys);
+        measure("MyHashMapOpenAddressing", MyHashMapOpenAddressing::new, keys);
+        measureHashMap(keys);
+        input.close();
+    }
+
+    /** Prints the bytes per entry of the map made by FACTORY, holding KEYS. */
+    public static void measure(String name, Supplier<Map61B<String, Integer>> factory,
+                               String[] keys) {
+        long before = usedHeap();
+        Map61B<String, Integer> map = factory.get();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        keepAlive = map;
+        long after = usedHeap();
+        System.out.printf("%s: %.1f bytes per entry\n", name,
+                (after - before) * 1.0 / map.size());
+        keepAlive = null;
+    }
+
+    /** Prints the bytes per entry of Java's HashMap, holding KEYS. */
+    public static void measureHashMap(String[] keys) {
+        long before = usedHeap();
+        HashMap<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        keepAlive = map;
+        long after = usedHeap();
+        System.out.printf("Java's Built-in HashMap: %.1f bytes per entry\n",
+                (after - before) * 1.0 / map.size());
+        keepAlive = null;
+    }
+
+    /** The heap in use once the garbage collector has settled. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,159 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.Scanner;
+
+import hashmap.IntIntMap;
+import hashmap.LongObjectMap;
+import hashmap.Map61B;
+import hashmap.MyHashMapOpenAddressing;
+import hashmap.ObjectIntMap;
+
+/**
+ * Compares the primitive maps with Map61B on counting, the job they are made for.
+ * Every test counts N random keys among N / 4 distinct ones, so most operations
+ * update a key already in the map, and prints the time and the bytes the thread
+ * allocated per operation, as reported by the JVM (the allocation profiler of
+ * com.sun.management.ThreadMXBean). The maps are filled before being measured,
+ * so the bytes are those of the hot path, not of growing the table. The counters
+ * start from START: below 128, Integer.valueOf would hand out cached Integers and
+ * hide the boxing.
+ * @author LMS
+ */
+public class PrimitiveMapSpeedTest {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int START = 1000;
+
+    /**
+     * Requests N from the user and prints the results of each map.
+     * ARGS is unused.
+     */
+    public static void main(String[] args) throws IOException {
+        Scanner input = new Scanner(System.in);
+        System.out.print("\nEnter # keys to count: ");
+        int n = BucketsSpeedTest.waitForPositiveInt(input);
+        input.close();
+
+        Random random = new Random(49);
+        int[] ints = new int[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = random.nextInt(Math.max(1, n / 4)) * 1000;
+        }
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            strings[i] = "w" + ints[i];
+        }
+        // twice each: the first round lets the JIT compile the loops
+        for (int round = 0; round < 2; round++) {
+            countIntegers(new MyHashMapOpenAddressing<>(), ints);
+            countInts(new IntIntMap(), ints);
+            countStrings(new MyHashMapOpenAddressing<>(), strings);
+            countObjects(new ObjectIntMap<>(), strings);
+            lookupBoxedLongs(new MyHashMapOpenAddressing<>(), ints);
+            lookupLongs(new LongObjectMap<>(), ints);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, Stopwatch sw, long bytes, int n) {
+        System.out.printf("%-56s %.3f sec, %.1f bytes allocated per key\n", name,
+                sw.elapsedTime(), bytes * 1.0 / n);
+    }
+
+    /** Counts KEYS in a Map61B<Integer, Integer>. */
+    public static void countIntegers(Map61B<Integer, Integer> map, int[] keys) {
+        for (int key : keys) {
+            map.put(key, START);
+        }
+        long before = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        for (int key : keys) {
+            map.put(key, map.get(key) + 1);
+        }
+        report("MyHashMapOpenAddressing<Integer, Integer>", sw, allocatedBytes() - before,
+                keys.length);
+    }
+
+    /** Counts KEYS in an IntIntMap. */
+    public static void countInts(IntIntMap map, int[] keys) {
+        for (int key : keys) {
+            map.put(key, START);
+        }
+        long before = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        for (int key : keys) {
+            map.increment(key, 1);
+        }
+        report("IntIntMap", sw, allocatedBytes() - before, keys.length);
+    }
+
+    /** Counts KEYS in a Map61B<String, Integer>. */
+    public static void countStrings(Map61B<String, Integer> map, String[] keys) {
+        for (String key : keys) {
+            map.put(key, START);
+        }
+        long before = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        for (String key : keys) {
+            map.put(key, map.get(key) + 1);
+        }
+        report("MyHashMapOpenAddressing<String, Integer>", sw, allocatedBytes() - before,
+                keys.length);
+    }
+
+    /** Counts KEYS in an ObjectIntMap. */
+    public static void countObjects(ObjectIntMap<String> map, String[] keys) {
+        for (String key : keys) {
+            map.put(key, START);
+        }
+        long before = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        for (String key : keys) {
+            map.increment(key, 1);
+        }
+        report("ObjectIntMap<String>", sw, allocatedBytes() - before, keys.length);
+    }
+
+    /** Looks KEYS up as longs in a Map61B<Long, String>. */
+    public static void lookupBoxedLongs(Map61B<Long, String> map, int[] keys) {
+        for (long key : keys) {
+            map.put(key, "v");
+        }
+        long before = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        int found = 0;
+        for (long key : keys) {
+            if (map.get(key) != null) {
+                found++;
+            }
+        }
+        report("MyHashMapOpenAddressing<Long, String> (" + found + " found)", sw,
+                allocatedBytes() - before, keys.length);
+    }
+
+    /** Looks KEYS up as longs in a LongObjectMap. */
+    public static void lookupLongs(LongObjectMap<String> map, int[] keys) {
+        for (int key : keys) {
+            map.put(key, "v");
+        }
+        long before = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        int found = 0;
+        for (int key : keys) {
+            if (map.get(key) != null) {
+                found++;
+            }
+        }
+        report("LongObjectMap<String> (" + found + " found)", sw,
+                allocatedBytes() - before, keys.length);
+    }
+}
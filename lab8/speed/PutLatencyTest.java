@@ -0,0 +1,55 @@
+package speed;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import hashmap.Map61B;
+import hashmap.MyHashMap;
+
+/**
+ * Times every single put into a MyHashMap as it grows to N entries, and prints
+ * the latency percentiles of the puts made while the map grew through each
+ * power of ten. A resize which stops the world shows up as a max and p99.9
+ * growing with the size of the map, one which is spread over many puts does not.
+ * @author LMS
+ */
+public class PutLatencyTest {
+    /**
+     * Requests N from the user and prints the put latencies into a MyHashMap.
+     * ARGS is unused.
+     */
+    public static void main(String[] args) throws IOException {
+        Scanner input = new Scanner(System.in);
+        System.out.print("\nEnter # integers to insert into hashmap.MyHashMap: ");
+        int n = BucketsSpeedTest.waitForPositiveInt(input);
+        input.close();
+
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        Map61B<Integer, Integer> map = new MyHashMap<>();
+        long[] latencies = new long[n];
+        for (int i = 0; i < n; i++) {
+            long start = System.nanoTime();
+            map.put(keys[i], keys[i]);
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        System.out.println("size range            p50 ns   p99 ns  p99.9 ns     max ns");
+        for (int low = 1; low < n; low *= 10) {
+            int high = (int) Math.min(n, low * 10L);
+            long[] range = Arrays.copyOfRange(latencies, low, high);
+            Arrays.sort(range);
+            System.out.printf("%9d-%-9d %8d %8d %9d %10d\n", low, high,
+                    percentile(range, 0.5), percentile(range, 0.99),
+                    percentile(range, 0.999), range[range.length - 1]);
+        }
+    }
+
+    /** The P-th percentile of the sorted SORTED. */
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+    }
+}
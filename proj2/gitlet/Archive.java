@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/*  Writes the files of one commit as a zip or tar archive, like git archive,
+ *  straight from the objects into the output stream: no checkout, no temporary files,
+ *  and never more than one file in memory, large files not even that,
+ *  they are copied from the large file store in chunks.
+ *  Entries are sorted by name and dated with the commit,
+ *  so archiving the same commit twice gives the same bytes, in any time zone.
+ *  Every large file is checked to be in the store before anything is written,
+ *  so a missing one fails the archive instead of leaving half of it in the output.
+ *
+ *  tar is the POSIX ustar format: a 512 byte header per file, its content padded
+ *  to 512 bytes, and two empty blocks at the end.
+ *  @author LMS
+ */
+class Archive {
+    static final String ZIP = "zip";
+
+    static final String TAR = "tar";
+
+    private static final int BLOCK = 512;
+
+    /* 1980-01-01 UTC, the earliest time a zip entry can hold */
+    private static final long DOS_EPOCH_MILLIS = 315532800000L;
+
+    private final Repository repository;
+
+    private final LargeFileStore largeFiles;
+
+    private final OutputStream out;
+
+    Archive(Repository repository, LargeFileStore largeFiles, OutputStream out) {
+        this.repository = repository;
+        this.largeFiles = largeFiles;
+        this.out = out;
+    }
+
+    /* writes the files of COMMIT in FORMAT, returns the number of files written */
+    int run(Commit commit, String format) throws IOException {
+        SortedMap<String, String> files = new TreeMap<>(commit.getCommitFiles());
+        long time = commit.getTimestamp().getTime();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String content = repository.getFileContentFromBlob(file.getValue());
+            if (LargeFileStore.isPointer(content) && !largeFiles.contains(content)) {
+                throw Utils.error("Large file %s is missing from .gitlet/lfs.", file.getKey());
+            }
+        }
+        if (format.equals(ZIP)) {
+            writeZip(files, time);
+        } else if (format.equals(TAR)) {
+            writeTar(files, time);
+        } else {
+            throw Utils.error("Unknown archive format: %s", format);
+        }
+        out.flush();
+        return files.size();
+    }
+
+    private void writeZip(SortedMap<String, String> files, long time) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            ZipEntry entry = new ZipEntry(file.getKey());
+            /* a zip entry holds a date and time without a zone, setTime would write the
+               local time of TIME, so the UTC one is written instead */
+            entry.setTimeLocal(LocalDateTime.ofEpochSecond(
+                    Math.max(time, DOS_EPOCH_MILLIS) / 1000, 0, ZoneOffset.UTC));
+            zip.putNextEntry(entry);
+            writeContent(file.getValue(), zip);
+            zip.closeEntry();
+        }
+        /* finish, not close, the caller owns OUT */
+        zip.finish();
+    }
+
+    private void writeTar(SortedMap<String, String> files, long time) throws IOException {
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String content = repository.getFileContentFromBlob(file.getValue());
+            long size;
+            byte[] bytes = null;
+            if (LargeFileStore.isPointer(content)) {
+                size = LargeFileStore.pointerSize(content);
+            } else {
+                bytes = content.getBytes(StandardCharsets.UTF_8);
+                size = bytes.length;
+            }
+            out.write(tarHeader(file.getKey(), size, time));
+            if (bytes != null) {
+                out.write(bytes);
+            } else {
+                largeFiles.copyTo(content, out);
+            }
+            int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+            out.write(new byte[padding]);
+        }
+        out.write(new byte[2 * BLOCK]);
+    }
+
+    /* the content of BLOBID into TARGET */
+    private void writeContent(String blobId, OutputStream target) throws IOException {
+        String content = repository.getFileContentFromBlob(blobId);
+        if (LargeFileStore.isPointer(content)) {
+            largeFiles.copyTo(content, target);
+        } else {
+            target.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] tarHeader(String name, long size, long time) {
+        byte[] header = new byte[BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw Utils.error("File name too long for tar: %s", name);
+        }
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, time / 1000);
+        header[156] = '0';
+        putAscii(header, 257, "ustar\0");
+        putAscii(header, 263, "00");
+        /* the checksum is computed with its own field as spaces */
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /* VALUE as LENGTH - 1 octal digits and a NUL at OFFSET */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        if (octal.length() > length - 1) {
+            throw Utils.error("Value %d does not fit in a tar header.", value);
+        }
+        String padded = "0".repeat(length - 1 - octal.length()) + octal;
+        putAscii(header, offset, padded);
+        header[offset + length - 1] = 0;
+    }
+
+    private static void putAscii(byte[] header, int offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
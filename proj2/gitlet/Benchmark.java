@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*  A repeatable timing harness for gitlet commands, invoked as
+ *      java gitlet.Benchmark [--files=1000,10000,...] [--size=BYTES] [--commits=N]
+ *                            [--branches=N] [--repeat=N] [--ops=add,commit,...]
+ *                            [--hash=sha1,sha256] [--dir=DIR] [--out=FILE.csv]
+ *                            [--baseline=OLD.csv] [--tolerance=0.25]
+ *
+ *  For every object format of --hash and every value of --files
+ *  a repository is generated by RepositoryGenerator,
+ *  then each operation of --ops (add, commit, status, log, checkout, merge)
+ *  is run --repeat times, each time as a new "java gitlet.Main" process like a user would,
+ *  with GITLET_TRACE set so the time spent inside the command is reported apart from JVM startup.
+ *  Every run is a line of the --out CSV file:
+ *      operation,files,fileSize,commits,run,processMs,commandMs,hash,hashMs,bytesHashed
+ *  and with more than one format, the hashing throughput of add and status
+ *  (bytes hashed over time spent hashing) is printed for each format side by side.
+ *
+ *  With --baseline, the median commandMs of each operation and scale is compared with
+ *  the one in an earlier CSV file, and the benchmark exits with status 1 if any of them
+ *  got slower by more than --tolerance (a fraction), so it can guard a build against regressions.
+ *  @author LMS
+ */
+public class Benchmark {
+    private static final List<String> ALL_OPERATIONS =
+            Arrays.asList("add", "commit", "status", "log", "checkout", "merge");
+
+    private static final Pattern WALL_TIME = Pattern.compile("\"wallTimeMs\":([0-9.]+)");
+
+    private static final Pattern HASH_TIME = Pattern.compile("\"hash\":([0-9.]+)");
+
+    private static final Pattern BYTES_HASHED = Pattern.compile("\"bytesHashed\":([0-9]+)");
+
+    private static final String CSV_HEADER =
+            "operation,files,fileSize,commits,run,processMs,commandMs,hash,hashMs,bytesHashed";
+
+    private final Map<String, String> options = new HashMap<>();
+
+    private final List<String> rows = new ArrayList<>();
+
+    private File traceFile;
+
+    public static void main(String[] args) throws IOException {
+        Benchmark benchmark = new Benchmark();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.out.println("Incorrect operands.");
+                System.exit(2);
+            }
+            int eq = arg.indexOf('=');
+            benchmark.options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+
+    /* Runs every scale and operation, returns false if a regression was found */
+    private boolean run() throws IOException {
+        File baseDir = new File(option("dir", "bench-repos"));
+        File out = new File(option("out", "bench-results.csv"));
+        int repeat = Integer.parseInt(option("repeat", "5"));
+        List<String> operations = Arrays.asList(option("ops", String.join(",", ALL_OPERATIONS))
+                .split(","));
+        traceFile = File.createTempFile("gitlet-trace", ".json");
+        traceFile.deleteOnExit();
+        rows.add(CSV_HEADER);
+
+        List<ObjectFormat> formats = new ArrayList<>();
+        for (String name : option("hash", "sha1").split(",")) {
+            formats.add(ObjectFormat.forName(name));
+        }
+        for (ObjectFormat format : formats) {
+            for (String scale : option("files", "1000").split(",")) {
+                runScale(format, Integer.parseInt(scale.trim()), baseDir, repeat, operations);
+            }
+        }
+        if (formats.size() > 1) {
+            printHashThroughput();
+        }
+        Utils.writeContents(out, String.join("\n", rows) + "\n");
+        System.out.println("results written to " + out);
+        String baseline = options.get("baseline");
+        if (baseline != null) {
+            double tolerance = Double.parseDouble(option("tolerance", "0.25"));
+            return compareWithBaseline(new File(baseline), tolerance);
+        }
+        return true;
+    }
+
+    /* generates a repository of FILES files named by FORMAT and times every operation in it */
+    private void runScale(ObjectFormat format, int files, File baseDir, int repeat,
+                          List<String> operations) throws IOException {
+        RepositoryGenerator generator = new RepositoryGenerator();
+        generator.format = format;
+        generator.files = files;
+        generator.fileSize = Integer.parseInt(option("size", "256"));
+        generator.commits = Integer.parseInt(option("commits", "10"));
+        generator.branches = Integer.parseInt(option("branches", "2"));
+        generator.merges = Math.min(1, generator.branches);
+        generator.mergeTargets = repeat;
+        File repoDir = Utils.join(baseDir, "files-" + generator.files + "-" + format.getName());
+        deleteRecursively(repoDir);
+        repoDir.mkdirs();
+        long start = System.nanoTime();
+        generator.generate(repoDir);
+        System.out.printf("generated %d files, %d commits with %s in %.1f s%n", generator.files,
+                generator.commits, format.getName(), (System.nanoTime() - start) / 1e9);
+        for (String operation : operations) {
+            if (!ALL_OPERATIONS.contains(operation)) {
+                System.out.println("No operation named " + operation + ".");
+                continue;
+            }
+            for (int run = 0; run < repeat; run++) {
+                timeOperation(operation, run, repoDir, generator);
+            }
+            /* the next operation starts on master again */
+            gitlet(repoDir, "checkout", "master");
+        }
+    }
+
+    /* prepares and times one run of OPERATION in REPODIR */
+    private void timeOperation(String operation, int run, File repoDir,
+                               RepositoryGenerator generator) throws IOException {
+        String[] command;
+        String benchFile = "f0000000.txt";
+        switch (operation) {
+            case "add":
+                Utils.writeContents(Utils.join(repoDir, benchFile), "bench add " + run + "\n");
+                command = new String[]{"add", benchFile};
+                break;
+            case "commit":
+                Utils.writeContents(Utils.join(repoDir, benchFile), "bench commit " + run + "\n");
+                gitlet(repoDir, "add", benchFile);
+                command = new String[]{"commit", "bench commit " + generator.files + " " + run};
+                break;
+            case "checkout":
+                if (generator.branches == 0) {
+                    return;
+                }
+                command = new String[]{"checkout", run % 2 == 0 ? "branch-0" : "master"};
+                break;
+            case "merge":
+                /* a merge needs the current branch to be master */
+                gitlet(repoDir, "checkout", "master");
+                command = new String[]{"merge", "bench-merge-" + run};
+                break;
+            default:
+                command = new String[]{operation};
+        }
+        double[] times = gitlet(repoDir, command);
+        rows.add(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.3f,%.3f,%s,%.3f,%d", operation,
+                generator.files, generator.fileSize, generator.commits, run, times[0], times[1],
+                generator.format.getName(), times[2], (long) times[3]));
+        System.out.printf(Locale.ROOT, "%-8s files=%-8d run=%d  process %9.1f ms  command %9.1f ms"
+                        + "  %s %7.1f ms%n", operation, generator.files, run, times[0], times[1],
+                generator.format.getName(), times[2]);
+    }
+
+    /* Runs "java gitlet.Main ARGS" in DIR.
+       Returns the wall time of the process, the time reported by --trace
+       and the time it spent hashing, in ms, and the number of bytes it hashed */
+    private double[] gitlet(File dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Utils.join(System.getProperty("java.home"), "bin", "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put(Trace.TRACE_ENV, traceFile.getAbsolutePath());
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException(excp);
+        }
+        double processMs = (System.nanoTime() - start) / 1e6;
+        String trace = Utils.readContentsAsString(traceFile);
+        Matcher matcher = WALL_TIME.matcher(trace);
+        double commandMs = matcher.find() ? Double.parseDouble(matcher.group(1)) : processMs;
+        matcher = HASH_TIME.matcher(trace);
+        double hashMs = matcher.find() ? Double.parseDouble(matcher.group(1)) : 0;
+        matcher = BYTES_HASHED.matcher(trace);
+        double bytesHashed = matcher.find() ? Double.parseDouble(matcher.group(1)) : 0;
+        return new double[]{processMs, commandMs, hashMs, bytesHashed};
+    }
+
+    /* MB hashed per second of hashing by add and status, for every scale and format */
+    private void printHashThroughput() {
+        Map<String, double[]> totals = new TreeMap<>();
+        for (String row : rows) {
+            String[] columns = row.split(",");
+            if (row.equals(CSV_HEADER)
+                    || !(columns[0].equals("add") || columns[0].equals("status"))) {
+                continue;
+            }
+            double[] total = totals.computeIfAbsent(columns[0] + " files=" + columns[1] + " "
+                    + columns[7], k -> new double[2]);
+            total[0] += Double.parseDouble(columns[8]);
+            total[1] += Double.parseDouble(columns[9]);
+        }
+        System.out.println("hashing throughput:");
+        for (Map.Entry<String, double[]> entry : totals.entrySet()) {
+            double[] total = entry.getValue();
+            System.out.printf(Locale.ROOT, "%-32s %9.1f MB/s  (%.0f bytes in %.1f ms)%n",
+                    entry.getKey(), total[0] == 0 ? 0 : total[1] / 1e6 / (total[0] / 1e3),
+                    total[1], total[0]);
+        }
+    }
+
+    /* prints every operation whose median got slower than in BASELINE by more than TOLERANCE */
+    private boolean compareWithBaseline(File baseline, double tolerance) {
+        Map<String, Double> before = medians(
+                Arrays.asList(Utils.readContentsAsString(baseline).split("\n")));
+        Map<String, Double> after = medians(rows);
+        boolean ok = true;
+        for (Map.Entry<String, Double> entry : after.entrySet()) {
+            Double old = before.get(entry.getKey());
+            if (old != null && entry.getValue() > old * (1 + tolerance)) {
+                System.out.printf(Locale.ROOT, "REGRESSION %s: %.1f ms -> %.1f ms%n",
+                        entry.getKey(), old, entry.getValue());
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    /* median commandMs of every "operation files=N" in the csv ROWS */
+    private static Map<String, Double> medians(List<String> csvRows) {
+        Map<String, List<Double>> samples = new TreeMap<>();
+        for (String row : csvRows) {
+            String[] columns = row.split(",");
+            if (columns.length < 7 || row.equals(CSV_HEADER)) {
+                continue;
+            }
+            /* sha1 runs keep the keys of CSV files from before the hash column */
+            String key = columns[0] + " files=" + columns[1];
+            if (columns.length > 7 && !columns[7].equals(ObjectFormat.SHA1.getName())) {
+                key += " " + columns[7];
+            }
+            samples.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(Double.parseDouble(columns[6]));
+        }
+        Map<String, Double> medians = new TreeMap<>();
+        for (Map.Entry<String, List<Double>> entry : samples.entrySet()) {
+            List<Double> values = entry.getValue();
+            Collections.sort(values);
+            medians.put(entry.getKey(), values.get(values.size() / 2));
+        }
+        return medians;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/*  The blame of every version of a file blamed so far,
+ *  kept in .gitlet/blame/[sha1 of commitId and file name] as the commitId of each line,
+ *  one per line, where commitId is the commit which changed the file to that version.
+ *  The blame of a file as of a commit only depends on the history behind that commit,
+ *  which never changes, so a cached blame holds for every later commit and every branch
+ *  reaching it: a version is only ever diffed against its predecessor once, and blaming
+ *  the file again after a new commit starts from the cached blame of the previous version
+ *  and processes just the newest diff.
+ *  The same content committed on two histories is cached once for each, as their lines
+ *  were written by different commits.
+ *  @author LMS
+ */
+class BlameCache {
+    private final File cacheDir;
+
+    BlameCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /* the commitId of each of the LINECOUNT lines of FILENAME as changed by COMMITID,
+       or null if not cached */
+    List<String> get(String commitId, String fileName, int lineCount) {
+        File file = cacheFile(commitId, fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<String> commitIds = LineDiff.lines(Utils.readContentsAsString(file));
+        return commitIds.size() == lineCount ? commitIds : null;
+    }
+
+    boolean contains(String commitId, String fileName) {
+        return cacheFile(commitId, fileName).isFile();
+    }
+
+    void put(String commitId, String fileName, List<String> commitIds) {
+        if (!cacheDir.exists()) {
+            cacheDir.mkdir();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String lineCommitId : commitIds) {
+            sb.append(lineCommitId).append('\n');
+        }
+        Utils.writeContents(cacheFile(commitId, fileName), sb.toString());
+    }
+
+    /* a commit id and a file name never contain a NUL, so no two pairs share a key */
+    private File cacheFile(String commitId, String fileName) {
+        return Utils.join(cacheDir, Utils.sha1(commitId, "\0", fileName));
+    }
+}
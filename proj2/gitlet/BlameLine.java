@@ -0,0 +1,37 @@
+package gitlet;
+
+/*  One line of a file with the commit which last changed it,
+ *  as returned by Repository.blame. toString gives the line as the blame command prints it.
+ *  @author LMS
+ */
+public class BlameLine {
+    private final String commitId;
+
+    private final int lineNumber;
+
+    private final String text;
+
+    public BlameLine(String commitId, int lineNumber, String text) {
+        this.commitId = commitId;
+        this.lineNumber = lineNumber;
+        this.text = text;
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    /* starting from 1 */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return commitId.substring(0, 8) + " " + lineNumber + ") " + text;
+    }
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/*  A Bloom filter of the files a commit changed compared to its first parent.
+ *  mightContain never answers false for a changed file, and answers true for an unchanged one
+ *  only about 1% of the time, so a history walk looking for one file
+ *  can skip almost every commit which did not touch it without reading the commit.
+ *
+ *  Like the changed-path filters of git's commit-graph, there are 10 bits per path
+ *  and 7 hash functions, rounded up to whole 64 bit words.
+ *  A commit changing more than MAX_PATHS files gets a filter that matches everything,
+ *  it would be big and would rule out little.
+ *  In the commit-graph file a filter is written as the hex of its words, or "*" for that case.
+ *  @author LMS
+ */
+class ChangedPathFilter {
+    private static final int BITS_PER_PATH = 10;
+
+    private static final int NUM_HASHES = 7;
+
+    static final int MAX_PATHS = 512;
+
+    private static final String MATCH_ALL = "*";
+
+    /* null for a filter matching every path */
+    private final long[] words;
+
+    private ChangedPathFilter(long[] words) {
+        this.words = words;
+    }
+
+    static ChangedPathFilter of(Collection<String> changedPaths) {
+        if (changedPaths.size() > MAX_PATHS) {
+            return new ChangedPathFilter(null);
+        }
+        int numWords = Math.max(1, (changedPaths.size() * BITS_PER_PATH + 63) / 64);
+        ChangedPathFilter filter = new ChangedPathFilter(new long[numWords]);
+        for (String path : changedPaths) {
+            filter.add(path);
+        }
+        return filter;
+    }
+
+    /* the filter written by toString */
+    static ChangedPathFilter parse(String text) {
+        if (text.equals(MATCH_ALL)) {
+            return new ChangedPathFilter(null);
+        }
+        long[] words = new long[text.length() / 16];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = Long.parseUnsignedLong(text.substring(i * 16, i * 16 + 16), 16);
+        }
+        return new ChangedPathFilter(words);
+    }
+
+    private void add(String path) {
+        long hash = hash(path);
+        long step = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        long numBits = words.length * 64L;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (int) Long.remainderUnsigned(hash + i * step, numBits);
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /* false if PATH was certainly not changed */
+    boolean mightContain(String path) {
+        if (words == null) {
+            return true;
+        }
+        long hash = hash(path);
+        long step = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        long numBits = words.length * 64L;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (int) Long.remainderUnsigned(hash + i * step, numBits);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* 64 bit FNV-1a of the UTF-8 bytes of PATH, then mixed */
+    private static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /* the finalizer of splitmix64 */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        if (words == null) {
+            return MATCH_ALL;
+        }
+        StringBuilder sb = new StringBuilder(words.length * 16);
+        for (long word : words) {
+            sb.append(String.format("%016x", word));
+        }
+        return sb.toString();
+    }
+}
@@ -23,6 +23,9 @@ import java.util.*;
  *  @author LMS
  */
 public class Commit implements Serializable {
+    /* the id of the first version, so the commits it wrote can still be read */
+    private static final long serialVersionUID = -5977080733108945900L;
+
     /* The message of this Commit. */
     private String message;
 
@@ -94,4 +97,18 @@ public class Commit implements Serializable {
     public void removeCommitFiles(String fileName) {
         this.commitFiles.remove(fileName);
     }
+
+    /* The id of this commit in FORMAT, the hash of its message, timestamp, parents and files.
+       Two commits made within the same second with the same message,
+       as a rebase replaying several "fix" commits would do, still get different ids.
+       The timestamp is hashed in milliseconds, so the id does not depend on the time zone. */
+    public String computeId(ObjectFormat format) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(message).append('\n').append(timestamp.getTime()).append('\n');
+        sb.append(parentCommitId).append('\n').append(secondParentCommitId).append('\n');
+        for (Map.Entry<String, String> entry : new TreeMap<>(commitFiles).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return format.hash(sb.toString());
+    }
 }
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/*  The commit-graph file .gitlet/commit-graph, one line per commit:
+ *      [commitId] [parentId] [secondParentId] [timestamp in ms] [changed-path filter]
+ *  with "-" for a missing parent.
+ *  Every commit written by Repository appends its line, so the file grows with the history
+ *  and is never rewritten; the whole of it is read with a single file read
+ *  the first time a command needs it.
+ *  A history walk then finds parents and skips commits which did not change a file
+ *  without deserializing a single Commit, see ChangedPathFilter.
+ *  Commits made before the file existed have no line until the commit-graph command adds them,
+ *  callers must read the commit itself when get returns null.
+ *  @author LMS
+ */
+class CommitGraph {
+    /* one commit of the graph */
+    static class Node {
+        private final String parentId;
+
+        private final String secondParentId;
+
+        private final long timestamp;
+
+        private final ChangedPathFilter changedPaths;
+
+        Node(String parentId, String secondParentId, long timestamp,
+             ChangedPathFilter changedPaths) {
+            this.parentId = parentId;
+            this.secondParentId = secondParentId;
+            this.timestamp = timestamp;
+            this.changedPaths = changedPaths;
+        }
+
+        String getParentId() {
+            return parentId;
+        }
+
+        String getSecondParentId() {
+            return secondParentId;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        /* false if the commit certainly did not change FILENAME compared to its first parent */
+        boolean mightHaveChanged(String fileName) {
+            return changedPaths.mightContain(fileName);
+        }
+    }
+
+    private final File graphFile;
+
+    /* <commitId, Node>, null until first needed */
+    private Map<String, Node> nodes;
+
+    CommitGraph(File graphFile) {
+        this.graphFile = graphFile;
+    }
+
+    /* Forgets the nodes read so far, so commits appended by others are seen */
+    void reload() {
+        nodes = null;
+    }
+
+    /* the node of COMMITID, or null if the commit is not in the graph */
+    Node get(String commitId) {
+        return getNodes().get(commitId);
+    }
+
+    boolean contains(String commitId) {
+        return getNodes().containsKey(commitId);
+    }
+
+    /* Appends COMMIT, whose first parent tracks PARENTFILES, to the graph */
+    void add(String commitId, Commit commit, Map<String, String> parentFiles) {
+        Map<String, String> commitFiles = commit.getCommitFiles();
+        Set<String> changedPaths = new HashSet<>();
+        for (Map.Entry<String, String> entry : commitFiles.entrySet()) {
+            if (!entry.getValue().equals(parentFiles.get(entry.getKey()))) {
+                changedPaths.add(entry.getKey());
+            }
+        }
+        for (String fileName : parentFiles.keySet()) {
+            if (!commitFiles.containsKey(fileName)) {
+                changedPaths.add(fileName);
+            }
+        }
+        Node node = new Node(commit.getParentCommitId(), commit.getSecondParentCommitId(),
+                commit.getTimestamp().getTime(), ChangedPathFilter.of(changedPaths));
+        Utils.appendContents(graphFile, commitId + " " + orDash(node.parentId) + " "
+                + orDash(node.secondParentId) + " " + node.timestamp + " "
+                + node.changedPaths + "\n");
+        if (nodes != null) {
+            nodes.put(commitId, node);
+        }
+    }
+
+    private Map<String, Node> getNodes() {
+        if (nodes == null) {
+            nodes = new HashMap<>();
+            if (graphFile.isFile()) {
+                for (String line : Utils.readContentsAsString(graphFile).split("\n")) {
+                    String[] fields = line.split(" ");
+                    if (fields.length != 5) {
+                        continue;
+                    }
+                    nodes.put(fields[0], new Node(fromDash(fields[1]), fromDash(fields[2]),
+                            Long.parseLong(fields[3]), ChangedPathFilter.parse(fields[4])));
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static String orDash(String commitId) {
+        return commitId.equals("") ? "-" : commitId;
+    }
+
+    private static String fromDash(String field) {
+        return field.equals("-") ? "" : field;
+    }
+}
@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*  Writes the history of every branch as a stream FastImport (and git fast-import) can read.
+ *  Commits are written parents first, each with a mark, its first parent as "from",
+ *  its second parent as "merge", and only the files changed since its first parent,
+ *  their content inline, so the stream never holds a file twice in a row.
+ *  The initial commit every gitlet repository shares is not written,
+ *  commits on top of it name it by its commitId.
+ *  Finally a reset per branch points it at its head.
+ *  Importing the stream into a new repository gives back the same commitIds.
+ *  Large files are written with the content from .gitlet/lfs, not their pointers,
+ *  so the stream stands alone; an import stores them as ordinary blobs, so commits
+ *  holding large files get new ids there.
+ *  @author LMS
+ */
+class FastExport {
+    private final Repository repository;
+
+    private final LargeFileStore largeFiles;
+
+    private final OutputStream out;
+
+    /* <commitId, mark> of the commits written so far */
+    private final Map<String, Integer> marks = new HashMap<>();
+
+    FastExport(Repository repository, LargeFileStore largeFiles, OutputStream out) {
+        this.repository = repository;
+        this.largeFiles = largeFiles;
+        this.out = out;
+    }
+
+    /* writes every branch, returns the number of commits written */
+    int run() throws IOException {
+        String initialCommitId = repository.getInitialCommitId();
+        SortedMap<String, String> branches = new TreeMap<>();
+        for (String branchName : repository.getBranchNames()) {
+            branches.put(branchName, repository.resolveBranch(branchName));
+        }
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            for (String commitId : unwrittenAncestors(branch.getValue(), initialCommitId)) {
+                writeCommit(branch.getKey(), commitId, initialCommitId);
+            }
+        }
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            write("reset refs/heads/" + branch.getKey() + "\n");
+            write("from " + commitish(branch.getValue()) + "\n\n");
+        }
+        write("done\n");
+        out.flush();
+        return marks.size();
+    }
+
+    /* the ancestors of HEADID not written yet, parents before children,
+       walked without recursion so a long history cannot overflow the stack */
+    private List<String> unwrittenAncestors(String headId, String initialCommitId) {
+        List<String> order = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(headId);
+        expanded.push(false);
+        while (!stack.isEmpty()) {
+            String commitId = stack.pop();
+            boolean done = expanded.pop();
+            if (done) {
+                order.add(commitId);
+                continue;
+            }
+            if (commitId.equals("") || commitId.equals(initialCommitId)
+                    || marks.containsKey(commitId) || !seen.add(commitId)) {
+                continue;
+            }
+            stack.push(commitId);
+            expanded.push(true);
+            Commit commit = repository.readCommit(commitId);
+            stack.push(commit.getSecondParentCommitId());
+            expanded.push(false);
+            stack.push(commit.getParentCommitId());
+            expanded.push(false);
+        }
+        return order;
+    }
+
+    private void writeCommit(String branchName, String commitId, String initialCommitId)
+            throws IOException {
+        Commit commit = repository.readCommit(commitId);
+        int mark = marks.size() + 1;
+        write("commit refs/heads/" + branchName + "\n");
+        write("mark :" + mark + "\n");
+        write("committer gitlet <gitlet> " + commit.getTimestamp().getTime() / 1000 + " +0000\n");
+        writeData(commit.getMessage());
+        Map<String, String> parentFiles = new HashMap<>();
+        if (!commit.getParentCommitId().equals("")) {
+            write("from " + commitish(commit.getParentCommitId()) + "\n");
+            if (!commit.getParentCommitId().equals(initialCommitId)) {
+                parentFiles = repository.readCommit(commit.getParentCommitId()).getCommitFiles();
+            }
+        }
+        if (!commit.getSecondParentCommitId().equals("")) {
+            write("merge " + commitish(commit.getSecondParentCommitId()) + "\n");
+        }
+        Map<String, String> files = new TreeMap<>(commit.getCommitFiles());
+        for (String fileName : new TreeSet<>(parentFiles.keySet())) {
+            if (!files.containsKey(fileName)) {
+                write("D " + fileName + "\n");
+            }
+        }
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            if (!entry.getValue().equals(parentFiles.get(entry.getKey()))) {
+                String content = repository.getFileContentFromBlob(entry.getValue());
+                if (LargeFileStore.isPointer(content) && !largeFiles.contains(content)) {
+                    throw Utils.error("Large file %s of commit %s is missing from .gitlet/lfs.",
+                            entry.getKey(), commitId);
+                }
+                write("M 100644 inline " + entry.getKey() + "\n");
+                if (LargeFileStore.isPointer(content)) {
+                    write("data " + LargeFileStore.pointerSize(content) + "\n");
+                    largeFiles.copyTo(content, out);
+                    write("\n");
+                } else {
+                    writeData(content);
+                }
+            }
+        }
+        write("\n");
+        marks.put(commitId, mark);
+    }
+
+    private String commitish(String commitId) {
+        Integer mark = marks.get(commitId);
+        return mark != null ? ":" + mark : commitId;
+    }
+
+    private void writeData(String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        write("data " + bytes.length + "\n");
+        out.write(bytes);
+        write("\n");
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
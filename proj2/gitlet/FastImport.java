@@ -0,0 +1,316 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*  Reads a history in the stream format of git fast-import and writes it straight into objects,
+ *  without touching the working directory or the staging area. The commands understood are
+ *
+ *      blob                              commit refs/heads/[branch]
+ *      mark :[n]                         mark :[n]
+ *      data [byte count]                 committer [anything] [epoch seconds] [zone]
+ *      [content]                         data [byte count]
+ *                                        [message]
+ *      reset refs/heads/[branch]         from [commit-ish]
+ *      from [commit-ish]                 merge [commit-ish]
+ *                                        M [mode] [:mark or inline] [path]   (inline: data follows)
+ *      done                              D [path]
+ *                                        deleteall
+ *
+ *  where a commit-ish is a :mark, a full commitId or a branch name.
+ *  A commit without "from" continues its branch, or starts from the initial commit
+ *  every gitlet repository has. "author" lines and the optional newline after data are skipped.
+ *  Branches are only moved once the whole stream has been read.
+ *  A blob id covers the file name, which is only known once a commit uses the blob,
+ *  so each marked blob is spooled to .gitlet/fast-import as soon as it is read and
+ *  stored as a blob from there; only the mark of each one is kept in memory.
+ *  @author LMS
+ */
+class FastImport {
+    /* file maps of recently created commits, the parent of the next commit is usually among them */
+    private static final int RECENT_COMMITS = 64;
+
+    private final Repository repository;
+
+    private final InputStream in;
+
+    /* a line read ahead and pushed back */
+    private String pendingLine;
+
+    private final Map<String, String> commitMarks = new HashMap<>();
+
+    /* <mark, file the blob was spooled to> */
+    private final Map<String, File> blobMarks = new HashMap<>();
+
+    /* where marked blobs wait for a commit to name them, removed when the import ends */
+    private final File spoolDir;
+
+    /* <branchName, commitId> of every branch moved by the stream */
+    private final Map<String, String> branchTips = new LinkedHashMap<>();
+
+    private final Map<String, Map<String, String>> recentFiles =
+            new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> e) {
+                    return size() > RECENT_COMMITS;
+                }
+            };
+
+    private int commitCount = 0;
+
+    FastImport(Repository repository, InputStream in) {
+        this.repository = repository;
+        this.in = in;
+        spoolDir = Utils.join(repository.getGitletDirectory(), "fast-import");
+    }
+
+    /* imports the whole stream, returns the number of commits created */
+    int run() throws IOException {
+        deleteSpool();
+        try {
+            return importStream();
+        } finally {
+            deleteSpool();
+        }
+    }
+
+    private int importStream() throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.equals("done")) {
+                break;
+            } else if (line.equals("blob")) {
+                readBlob();
+            } else if (line.startsWith("commit ")) {
+                readCommit(branchName(line.substring("commit ".length())));
+            } else if (line.startsWith("reset ")) {
+                readReset(branchName(line.substring("reset ".length())));
+            } else {
+                throw Utils.error("Unexpected fast-import command: %s", line);
+            }
+        }
+        for (Map.Entry<String, String> tip : branchTips.entrySet()) {
+            repository.updateBranch(tip.getKey(), tip.getValue());
+        }
+        return commitCount;
+    }
+
+    private void readBlob() throws IOException {
+        String mark = readMark();
+        byte[] content = readDataBytes();
+        if (mark != null) {
+            if (!spoolDir.exists()) {
+                spoolDir.mkdir();
+            }
+            File spooled = Utils.join(spoolDir, Integer.toString(blobMarks.size()));
+            Utils.writeContents(spooled, (Object) content);
+            blobMarks.put(mark, spooled);
+        }
+    }
+
+    private void deleteSpool() {
+        File[] spooled = spoolDir.listFiles();
+        if (spooled != null) {
+            for (File file : spooled) {
+                file.delete();
+            }
+        }
+        spoolDir.delete();
+        blobMarks.clear();
+    }
+
+    /* the date of a "committer [name] <[email]> [seconds] [zone]" LINE */
+    private static Date parseCommitterDate(String line) {
+        String[] fields = line.split(" ");
+        if (fields.length >= 4) {
+            try {
+                return new Date(Long.parseLong(fields[fields.length - 2]) * 1000);
+            } catch (NumberFormatException e) {
+                /* reported below */
+            }
+        }
+        throw Utils.error("Expected committer [name] <[email]> [time] [zone], found: %s", line);
+    }
+
+    private void readCommit(String branchName) throws IOException {
+        String mark = readMark();
+        Date date = new Date();
+        String line = readLine();
+        while (line != null && (line.startsWith("author ") || line.startsWith("committer "))) {
+            if (line.startsWith("committer ")) {
+                date = parseCommitterDate(line);
+            }
+            line = readLine();
+        }
+        if (line == null || !line.startsWith("data ")) {
+            throw Utils.error("Expected data for the message of a commit to %s.", branchName);
+        }
+        pendingLine = line;
+        String message = readData();
+        if (message.endsWith("\n")) {
+            message = message.substring(0, message.length() - 1);
+        }
+
+        String parentId = branchTips.get(branchName);
+        if (parentId == null) {
+            parentId = repository.resolveBranch(branchName);
+        }
+        String secondParentId = "";
+        line = readLine();
+        if (line != null && line.startsWith("from ")) {
+            parentId = resolveCommitish(line.substring("from ".length()));
+            line = readLine();
+        }
+        if (line != null && line.startsWith("merge ")) {
+            secondParentId = resolveCommitish(line.substring("merge ".length()));
+            line = readLine();
+        }
+        if (parentId == null) {
+            parentId = repository.getInitialCommitId();
+        }
+        Map<String, String> parentFiles = filesOf(parentId);
+        Map<String, String> files = new HashMap<>(parentFiles);
+        while (line != null && !line.isEmpty()) {
+            if (line.startsWith("M ")) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length < 4) {
+                    throw Utils.error("Expected M [mode] [:mark or inline] [path], found: %s",
+                            line);
+                }
+                String content;
+                if (fields[2].equals("inline")) {
+                    content = readData();
+                } else if (blobMarks.containsKey(fields[2])) {
+                    content = Utils.readContentsAsString(blobMarks.get(fields[2]));
+                } else {
+                    throw Utils.error("Unknown blob %s.", fields[2]);
+                }
+                files.put(fields[3], storeBlob(fields[3], content));
+            } else if (line.startsWith("D ")) {
+                files.remove(line.substring(2));
+            } else if (line.equals("deleteall")) {
+                files.clear();
+            } else {
+                break;
+            }
+            line = readLine();
+        }
+        pendingLine = line;
+
+        String commitId = repository.writeNewCommit(message, date, parentId, secondParentId,
+                files, parentFiles);
+        recentFiles.put(commitId, files);
+        branchTips.put(branchName, commitId);
+        if (mark != null) {
+            commitMarks.put(mark, commitId);
+        }
+        commitCount++;
+    }
+
+    private void readReset(String branchName) throws IOException {
+        String line = readLine();
+        if (line != null && line.startsWith("from ")) {
+            branchTips.put(branchName, resolveCommitish(line.substring("from ".length())));
+        } else {
+            pendingLine = line;
+        }
+    }
+
+    /* the mark of an optional "mark :n" line */
+    private String readMark() throws IOException {
+        String line = readLine();
+        if (line != null && line.startsWith("mark ")) {
+            return line.substring("mark ".length());
+        }
+        pendingLine = line;
+        return null;
+    }
+
+    /* the content of a "data [byte count]" line and the bytes after it */
+    private String readData() throws IOException {
+        return new String(readDataBytes(), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readDataBytes() throws IOException {
+        String line = readLine();
+        if (line == null || !line.startsWith("data ")) {
+            throw Utils.error("Expected data, found: %s", line);
+        }
+        int length = Integer.parseInt(line.substring("data ".length()));
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw Utils.error("The stream ended inside a data block.");
+            }
+            read += n;
+        }
+        /* the newline after data is optional */
+        String next = readLine();
+        if (next != null && !next.isEmpty()) {
+            pendingLine = next;
+        }
+        return bytes;
+    }
+
+    private String resolveCommitish(String commitish) {
+        String commitId;
+        if (commitish.startsWith(":")) {
+            commitId = commitMarks.get(commitish);
+        } else if (branchTips.containsKey(commitish)) {
+            commitId = branchTips.get(commitish);
+        } else if (repository.commitExists(commitish)) {
+            commitId = commitish;
+        } else {
+            commitId = repository.resolveBranch(branchName(commitish));
+        }
+        if (commitId == null) {
+            throw Utils.error(GitletException.Kind.NO_SUCH_COMMIT, "Unknown commit %s.", commitish);
+        }
+        return commitId;
+    }
+
+    private Map<String, String> filesOf(String commitId) {
+        Map<String, String> files = recentFiles.get(commitId);
+        return files != null ? files : repository.readCommit(commitId).getCommitFiles();
+    }
+
+    private String storeBlob(String fileName, String content) {
+        String blobId = repository.checkBlobExist(fileName, content);
+        if (blobId.equals("")) {
+            blobId = repository.writeBlobIntoObjects(fileName, content);
+        }
+        return blobId;
+    }
+
+    private static String branchName(String ref) {
+        return ref.startsWith("refs/heads/") ? ref.substring("refs/heads/".length()) : ref;
+    }
+
+    /* the next line without its '\n', null at the end of the stream */
+    private String readLine() throws IOException {
+        if (pendingLine != null) {
+            String line = pendingLine;
+            pendingLine = null;
+            return line;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b = in.read();
+        if (b < 0) {
+            return null;
+        }
+        while (b >= 0 && b != '\n') {
+            line.write(b);
+            b = in.read();
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*  Verifies every object of a repository, like git fsck.
+ *
+ *  1. every commit is read and its id recomputed from its content,
+ *  2. every blob is read and, for each file name a commit or an index refers to it by,
+ *     its id recomputed, since a blob id covers the file name and the content,
+ *  3. parents and files of every commit and the head of every branch must exist,
+ *     and every large file a blob points to must be in .gitlet/lfs, of the size
+ *     and hash in the pointer, each one checked once however many blobs point to it,
+ *  4. objects which no branch or index reaches are reported as dangling.
+ *  Steps 1 and 2 are split over a ForkJoinPool with one worker per core,
+ *  progress is printed on one line of stderr while they run, when asked for.
+ *  @author LMS
+ */
+class Fsck {
+    /* objects verified by one task before it stops splitting */
+    private static final int TASK_SIZE = 64;
+
+    private final File commitDir;
+
+    private final File blobDir;
+
+    private final LargeFileStore largeFiles;
+
+    /* the format objects are named in */
+    private final ObjectFormat format;
+
+    /* <branchName, commitId> */
+    private final Map<String, String> branchHeads;
+
+    /* <fileName, blobId> staged in the index of any worktree */
+    private final List<Map<String, String>> stagedFiles;
+
+    private final PrintStream progress;
+
+    /* the Trace of the command running fsck, entered again by every worker */
+    private final Trace trace = Trace.current();
+
+    /* <commitId, commit> of every commit which could be read */
+    private final Map<String, Commit> commits = new ConcurrentHashMap<>();
+
+    /* blobs which could be read */
+    private final Set<String> readableBlobs = ConcurrentHashMap.newKeySet();
+
+    /* pointers whose large file was verified, or is being verified */
+    private final Set<String> checkedPointers = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> problems = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger checked = new AtomicInteger();
+
+    private int total;
+
+    private String phase;
+
+    /* PROGRESS may be null for no progress */
+    Fsck(File commitDir, File blobDir, LargeFileStore largeFiles, ObjectFormat format,
+         Map<String, String> branchHeads, List<Map<String, String>> stagedFiles,
+         PrintStream progress) {
+        this.commitDir = commitDir;
+        this.blobDir = blobDir;
+        this.largeFiles = largeFiles;
+        this.format = format;
+        this.branchHeads = branchHeads;
+        this.stagedFiles = stagedFiles;
+        this.progress = progress;
+    }
+
+    FsckReport run() {
+        List<String> commitIds = listObjects(commitDir);
+        List<String> blobIds = listObjects(blobDir);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            startPhase("Checking commits", commitIds.size());
+            pool.invoke(new VerifyTask(commitIds, 0, commitIds.size(), this::verifyCommit));
+            endPhase();
+
+            /* <blobId, every file name it is referred to by> */
+            Map<String, Set<String>> blobNames = new HashMap<>();
+            for (Commit commit : commits.values()) {
+                addNames(blobNames, commit.getCommitFiles());
+            }
+            for (Map<String, String> staged : stagedFiles) {
+                addNames(blobNames, staged);
+            }
+            startPhase("Checking blobs", blobIds.size());
+            pool.invoke(new VerifyTask(blobIds, 0, blobIds.size(),
+                    blobId -> verifyBlob(blobId, blobNames.get(blobId))));
+            endPhase();
+        } finally {
+            pool.shutdown();
+        }
+        checkConnectivity(new HashSet<>(commitIds), new HashSet<>(blobIds));
+        return new FsckReport(new TreeSet<>(problems), commitIds.size(), blobIds.size());
+    }
+
+    private void verifyCommit(String commitId) {
+        Commit commit;
+        try {
+            commit = Utils.readObject(Utils.join(commitDir, commitId), Commit.class);
+        } catch (RuntimeException e) {
+            problems.add("corrupt commit " + commitId + ": unreadable");
+            return;
+        }
+        if (commit.getMessage() == null || commit.getTimestamp() == null
+                || commit.getParentCommitId() == null || commit.getCommitFiles() == null) {
+            problems.add("corrupt commit " + commitId + ": missing fields");
+            return;
+        }
+        if (!commitId.equals(commit.computeId(format)) && !isLegacyId(commitId, commit)) {
+            problems.add("corrupt commit " + commitId + ": hash mismatch");
+        }
+        /* its links are still followed, so its ancestors do not show up as dangling */
+        commits.put(commitId, commit);
+    }
+
+    /* Commits made before ids covered parents and files hash their message and their date
+       as Date.toString printed it, in the time zone of the machine which made them.
+       Any zone is tried, so a repository made in another zone is not reported as corrupt. */
+    private static boolean isLegacyId(String commitId, Commit commit) {
+        Date timestamp = commit.getTimestamp();
+        if (commitId.equals(Utils.sha1(commit.getMessage() + timestamp.toString()))) {
+            return true;
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy",
+                Locale.US);
+        Set<String> dates = new HashSet<>();
+        for (String zone : TimeZone.getAvailableIDs()) {
+            dateFormat.setTimeZone(TimeZone.getTimeZone(zone));
+            String date = dateFormat.format(timestamp);
+            if (dates.add(date) && commitId.equals(Utils.sha1(commit.getMessage() + date))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void verifyBlob(String blobId, Set<String> fileNames) {
+        Blob blob;
+        try {
+            blob = Utils.readObject(Utils.join(blobDir, blobId), Blob.class);
+        } catch (RuntimeException e) {
+            problems.add("corrupt blob " + blobId + ": unreadable");
+            return;
+        }
+        if (blob.getContent() == null) {
+            problems.add("corrupt blob " + blobId + ": no content");
+            return;
+        }
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (!format.hash(fileName + blob.getContent()).equals(blobId)) {
+                    problems.add("corrupt blob " + blobId + ": hash mismatch for " + fileName);
+                    return;
+                }
+            }
+        }
+        readableBlobs.add(blobId);
+        if (LargeFileStore.isPointer(blob.getContent())) {
+            verifyLargeFile(blobId, blob.getContent());
+        }
+    }
+
+    private void verifyLargeFile(String blobId, String pointer) {
+        if (!checkedPointers.add(pointer)) {
+            return;
+        }
+        String problem = largeFiles.verify(pointer);
+        if (problem != null) {
+            problems.add("large file of blob " + blobId + ": " + problem);
+        }
+    }
+
+    /* broken links, broken refs, and objects no branch or index reaches */
+    private void checkConnectivity(Set<String> commitIds, Set<String> blobIds) {
+        Set<String> reachableCommits = new HashSet<>();
+        Set<String> reachableBlobs = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        for (Map.Entry<String, String> branch : branchHeads.entrySet()) {
+            if (!commitIds.contains(branch.getValue())) {
+                problems.add("broken ref " + branch.getKey() + " to missing commit "
+                        + branch.getValue());
+            } else {
+                toVisit.push(branch.getValue());
+            }
+        }
+        for (Map<String, String> staged : stagedFiles) {
+            for (String blobId : staged.values()) {
+                reachableBlobs.add(blobId);
+                if (!blobIds.contains(blobId)) {
+                    problems.add("missing blob " + blobId + " staged in an index");
+                }
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            String commitId = toVisit.pop();
+            if (!reachableCommits.add(commitId)) {
+                continue;
+            }
+            Commit commit = commits.get(commitId);
+            if (commit == null) {
+                /* unreadable, already reported */
+                continue;
+            }
+            for (String parentId : Arrays.asList(commit.getParentCommitId(),
+                    commit.getSecondParentCommitId())) {
+                if (parentId == null || parentId.equals("")) {
+                    continue;
+                }
+                if (commitIds.contains(parentId)) {
+                    toVisit.push(parentId);
+                } else {
+                    problems.add("missing commit " + parentId + ", parent of " + commitId);
+                }
+            }
+            for (String blobId : commit.getCommitFiles().values()) {
+                reachableBlobs.add(blobId);
+                if (!blobIds.contains(blobId)) {
+                    problems.add("missing blob " + blobId + " in commit " + commitId);
+                }
+            }
+        }
+        for (String commitId : commitIds) {
+            if (!reachableCommits.contains(commitId) && commits.containsKey(commitId)) {
+                problems.add("dangling commit " + commitId);
+            }
+        }
+        for (String blobId : blobIds) {
+            if (!reachableBlobs.contains(blobId) && readableBlobs.contains(blobId)) {
+                problems.add("dangling blob " + blobId);
+            }
+        }
+    }
+
+    private static void addNames(Map<String, Set<String>> blobNames, Map<String, String> files) {
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            blobNames.computeIfAbsent(entry.getValue(), k -> new HashSet<>()).add(entry.getKey());
+        }
+    }
+
+    private static List<String> listObjects(File dir) {
+        List<String> ids = Utils.plainFilenamesIn(dir);
+        return ids == null ? new ArrayList<>() : ids;
+    }
+
+    private void startPhase(String name, int count) {
+        phase = name;
+        total = count;
+        checked.set(0);
+        reportProgress();
+    }
+
+    private void endPhase() {
+        if (progress != null) {
+            progress.printf("\r%s: 100%% (%d/%d), done.%n", phase, total, total);
+            progress.flush();
+        }
+    }
+
+    private void reportProgress() {
+        if (progress != null) {
+            int done = checked.get();
+            int percent = total == 0 ? 100 : (int) (100L * done / total);
+            progress.printf("\r%s: %3d%% (%d/%d)", phase, percent, done, total);
+            progress.flush();
+        }
+    }
+
+    /* verifies IDS[from, to) with CHECK, halving the range until it is small.
+       RecursiveAction is Serializable, but a task is never serialized */
+    @SuppressWarnings("serial")
+    private class VerifyTask extends RecursiveAction {
+        private final List<String> ids;
+
+        private final int from;
+
+        private final int to;
+
+        private final Consumer<String> check;
+
+        VerifyTask(List<String> ids, int from, int to, Consumer<String> check) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.check = check;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyTask(ids, from, middle, check),
+                        new VerifyTask(ids, middle, to, check));
+                return;
+            }
+            Trace.Scope traced = Trace.enter(trace, null);
+            try {
+                for (int i = from; i < to; i++) {
+                    check.accept(ids.get(i));
+                }
+            } finally {
+                traced.close();
+            }
+            checked.addAndGet(to - from);
+            synchronized (Fsck.this) {
+                reportProgress();
+            }
+        }
+    }
+}
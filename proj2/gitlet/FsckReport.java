@@ -0,0 +1,48 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*  What fsck found, as returned by Repository: one line per problem, sorted, such as
+ *      corrupt commit [id]: hash mismatch      missing blob [id] in commit [id]
+ *      dangling blob [id]                      broken ref [branch] to missing commit [id]
+ *      large file of blob [id]: hash mismatch  (or missing, size mismatch)
+ *  Dangling objects are reported but do not make a repository unclean.
+ *  @author LMS
+ */
+public class FsckReport {
+    private final List<String> problems;
+
+    private final int commitCount;
+
+    private final int blobCount;
+
+    public FsckReport(Collection<String> problems, int commitCount, int blobCount) {
+        this.problems = new ArrayList<>(problems);
+        this.commitCount = commitCount;
+        this.blobCount = blobCount;
+    }
+
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    public int getCommitCount() {
+        return commitCount;
+    }
+
+    public int getBlobCount() {
+        return blobCount;
+    }
+
+    /* true if nothing is corrupt, missing or broken */
+    public boolean isClean() {
+        for (String problem : problems) {
+            if (!problem.startsWith("dangling ")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
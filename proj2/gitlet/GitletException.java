@@ -2,16 +2,51 @@ package gitlet;
 
 /*  General exception indicating a Gitlet error.  For fatal errors, the
  *  result of .getMessage() is the error message to be printed.
+ *  getKind() tells programs using Repository what went wrong without parsing it.
  *  @author P. N. Hilfinger
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
+    /* What went wrong, OTHER for anything the other kinds do not cover */
+    public enum Kind {
+        /* there is no .gitlet in the working directory */
+        NOT_A_REPOSITORY,
+        /* no branch has the given name */
+        NO_SUCH_BRANCH,
+        /* no commit has the given id, abbreviated or not */
+        NO_SUCH_COMMIT,
+        /* the file is neither in the working directory nor in the commit */
+        NO_SUCH_FILE,
+        /* an untracked file would be overwritten */
+        UNTRACKED_FILE,
+        /* the command needs an empty staging area */
+        UNCOMMITTED_CHANGES,
+        /* a merge, cherry-pick or rebase ended with conflicts, see MergeResult */
+        MERGE_CONFLICT,
+        /* another command held the repository lock for longer than the lock timeout */
+        LOCK_HELD,
+        OTHER
+    }
+
+    private final Kind kind;
+
     /* A GitletException with no message. */
-    GitletException() {
+    public GitletException() {
         super();
+        kind = Kind.OTHER;
     }
 
     /* A GitletException MSG as its message. */
-    GitletException(String msg) {
+    public GitletException(String msg) {
+        this(Kind.OTHER, msg);
+    }
+
+    /* A GitletException of KIND with MSG as its message. */
+    public GitletException(Kind kind, String msg) {
         super(msg);
+        this.kind = kind;
+    }
+
+    public Kind getKind() {
+        return kind;
     }
 }
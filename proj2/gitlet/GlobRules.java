@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*  A list of glob patterns over file names, one per line, in the style of .gitignore:
+ *      *  any run of characters but '/',   ?  any one character but '/',
+ *      ** any run of characters,           [abc] [a-z] [!abc]  character classes,
+ *      a leading '!' negates the pattern,  a '#' starts a comment line,
+ *      a backslash escapes the next character.
+ *  A name matches when the last pattern matching it is not negated.
+ *
+ *  The patterns are compiled once into a combined matcher, so a name is matched against
+ *  all of them in one pass whatever their number:
+ *      plain names (Makefile)          a hash lookup,
+ *      *suffix (*.class, *~)           a trie of the reversed suffixes, walked from the end,
+ *      prefix* (build*, tmp-*)         a trie of the prefixes,
+ *      anything else                   one regex alternating all of them, the last pattern first,
+ *  and the winner is the latest pattern any of them found.
+ *  @author LMS
+ */
+class GlobRules {
+    private final List<String> patterns = new ArrayList<>();
+
+    private final List<Boolean> negated = new ArrayList<>();
+
+    /* <name, index of the last pattern which is exactly that name> */
+    private final Map<String, Integer> literals = new HashMap<>();
+
+    /* the suffixes of "*suffix" patterns, reversed */
+    private final TrieNode suffixes = new TrieNode();
+
+    /* the prefixes of "prefix*" patterns */
+    private final TrieNode prefixes = new TrieNode();
+
+    /* the regexes of the other patterns and their indices, the last pattern first */
+    private final List<String> otherRegexes = new ArrayList<>();
+
+    private final List<Integer> otherIndices = new ArrayList<>();
+
+    /* otherRegexes as one alternation, group i + 1 is otherIndices.get(i) */
+    private Pattern combined;
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+
+        /* index of the last pattern ending here, -1 if none */
+        private int rule = -1;
+
+        TrieNode child(char c) {
+            return children.computeIfAbsent(c, k -> new TrieNode());
+        }
+    }
+
+    /* the rules in FILE, none if it does not exist */
+    static GlobRules read(File file) {
+        return parse(file.isFile() ? Utils.readContentsAsString(file) : "");
+    }
+
+    static GlobRules parse(String text) {
+        GlobRules rules = new GlobRules();
+        for (String line : text.split("\n")) {
+            rules.add(line);
+        }
+        rules.compile();
+        return rules;
+    }
+
+    private void add(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        int index = patterns.size();
+        patterns.add(line);
+        boolean negate = line.startsWith("!");
+        String glob = negate ? line.substring(1) : line;
+        if (glob.startsWith("/")) {
+            glob = glob.substring(1);
+        }
+        negated.add(negate);
+
+        if (isLiteral(glob)) {
+            literals.put(glob, index);
+        } else if (glob.startsWith("*") && isLiteral(glob.substring(1))) {
+            TrieNode node = suffixes;
+            for (int i = glob.length() - 1; i >= 1; i--) {
+                node = node.child(glob.charAt(i));
+            }
+            node.rule = index;
+        } else if (glob.endsWith("*") && !glob.endsWith("**")
+                && isLiteral(glob.substring(0, glob.length() - 1))) {
+            TrieNode node = prefixes;
+            for (int i = 0; i < glob.length() - 1; i++) {
+                node = node.child(glob.charAt(i));
+            }
+            node.rule = index;
+        } else {
+            otherRegexes.add(0, toRegex(glob));
+            otherIndices.add(0, index);
+        }
+    }
+
+    private void compile() {
+        if (otherRegexes.isEmpty()) {
+            return;
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String other : otherRegexes) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append('(').append(other).append(')');
+        }
+        combined = Pattern.compile(regex.toString());
+    }
+
+    private static boolean isLiteral(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /* the patterns as written, without comments and blank lines */
+    List<String> getPatterns() {
+        return Collections.unmodifiableList(patterns);
+    }
+
+    /* true if the last pattern matching NAME is not negated, false if none matches */
+    boolean matches(String name) {
+        int winner = literals.getOrDefault(name, -1);
+        int firstSlash = name.indexOf('/');
+        /* a '*' does not match a '/', so what it stands for must come before the first one */
+        TrieNode node = suffixes;
+        for (int i = name.length(); node != null; i--) {
+            if (node.rule > winner && (firstSlash < 0 || firstSlash >= i)) {
+                winner = node.rule;
+            }
+            node = i > 0 ? node.children.get(name.charAt(i - 1)) : null;
+        }
+        /* ... and for prefixes, after the last one */
+        int lastSlash = name.lastIndexOf('/');
+        node = prefixes;
+        for (int i = 0; node != null; i++) {
+            if (node.rule > winner && lastSlash < i) {
+                winner = node.rule;
+            }
+            node = i < name.length() ? node.children.get(name.charAt(i)) : null;
+        }
+        if (combined != null && (otherIndices.get(0) > winner)) {
+            Matcher matcher = combined.matcher(name);
+            if (matcher.matches()) {
+                for (int group = 1; group <= otherIndices.size(); group++) {
+                    if (matcher.group(group) != null) {
+                        winner = Math.max(winner, otherIndices.get(group - 1));
+                        break;
+                    }
+                }
+            }
+        }
+        return winner >= 0 && !negated.get(winner);
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 2);
+                    if (end < 0) {
+                        regex.append("\\[");
+                        break;
+                    }
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    regex.append('[').append(set.replace("\\", "\\\\")).append(']');
+                    i = end;
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        i++;
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                    }
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/*  Keeps large files out of blobs, like git lfs.
+ *  The content of a large file is stored once, as is, in .gitlet/lfs/objects/[hash of content],
+ *  hashed in the object format of the repository, which every call naming a new file is given,
+ *  and its blob only holds a pointer of three lines:
+ *      version gitlet-lfs/1
+ *      oid sha1:[hash of content]          (or oid sha256:...)
+ *      size [bytes]
+ *  so commits, merges and logs never load it. Checkout copies the content from the store
+ *  into the working directory with FileChannel.transferTo, the JVM never holds it.
+ *
+ *  Which files are large is decided by the rules in .gitlet/lfs/rules, one per line,
+ *      [glob] [minimum size]       e.g.   *.psd 0   or   * 10M
+ *  with the glob as in GlobRules and the size in bytes or with a K, M or G suffix.
+ *  The last rule whose glob matches a file name decides, a file is large if it is at least
+ *  that size. Without rules, files of DEFAULT_THRESHOLD bytes or more are large.
+ *  @author LMS
+ */
+class LargeFileStore {
+    static final long DEFAULT_THRESHOLD = 64L << 20;
+
+    private static final String POINTER_VERSION = "version gitlet-lfs/1\n";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File objectDir;
+
+    private final File rulesFile;
+
+    /* rule i is large from thresholds.get(i) bytes, when globs.get(i) matches */
+    private final List<String> ruleLines = new ArrayList<>();
+
+    private final List<GlobRules> globs = new ArrayList<>();
+
+    private final List<Long> thresholds = new ArrayList<>();
+
+    /* LFSDIR is .gitlet/lfs of the common .gitlet directory */
+    LargeFileStore(File lfsDir) {
+        objectDir = Utils.join(lfsDir, "objects");
+        rulesFile = Utils.join(lfsDir, "rules");
+        reload();
+    }
+
+    /* Reads the rules again, as track of another Repository or process may have changed them */
+    void reload() {
+        ruleLines.clear();
+        globs.clear();
+        thresholds.clear();
+        if (rulesFile.isFile()) {
+            for (String line : Utils.readContentsAsString(rulesFile).split("\n")) {
+                addRule(line);
+            }
+        }
+    }
+
+    private void addRule(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        int space = line.lastIndexOf(' ');
+        String glob = space < 0 ? line : line.substring(0, space).trim();
+        long threshold = space < 0 ? 0 : parseSize(line.substring(space + 1));
+        ruleLines.add(glob + " " + threshold);
+        globs.add(GlobRules.parse(glob));
+        thresholds.add(threshold);
+    }
+
+    /* "123", "64K", "10M" or "2G" as a number of bytes */
+    static long parseSize(String size) {
+        String digits = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (digits.endsWith("K") || digits.endsWith("M") || digits.endsWith("G")) {
+            unit = 1L << (10 * ("KMG".indexOf(digits.charAt(digits.length() - 1)) + 1));
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        try {
+            return Long.parseLong(digits) * unit;
+        } catch (NumberFormatException e) {
+            throw Utils.error("Invalid size: %s", size);
+        }
+    }
+
+    /* Like git lfs track, files matching GLOB are large from MINSIZE bytes on */
+    void track(String glob, long minSize) {
+        addRule(glob + " " + minSize);
+        rulesFile.getParentFile().mkdirs();
+        Utils.writeContents(rulesFile, String.join("\n", ruleLines) + "\n");
+    }
+
+    /* the rules as "glob size" lines, the last matching one decides */
+    List<String> getRules() {
+        return Collections.unmodifiableList(ruleLines);
+    }
+
+    /* true if the file FILENAME of SIZE bytes is kept in the store */
+    boolean isLarge(String fileName, long size) {
+        for (int i = globs.size() - 1; i >= 0; i--) {
+            if (globs.get(i).matches(fileName)) {
+                return size >= thresholds.get(i);
+            }
+        }
+        return globs.isEmpty() && size >= DEFAULT_THRESHOLD;
+    }
+
+    static boolean isPointer(String blobContent) {
+        return blobContent.startsWith(POINTER_VERSION);
+    }
+
+    /* the pointer to the content of FILE hashed in FORMAT, without storing it */
+    String pointerFor(File file, ObjectFormat format) {
+        return pointer(format, hash(file, format), file.length());
+    }
+
+    /* stores the content of FILE unless the store has it already, returns its pointer,
+       whose oid is in FORMAT */
+    String add(File file, ObjectFormat format) {
+        String oid = hash(file, format);
+        File object = Utils.join(objectDir, oid);
+        if (!object.isFile()) {
+            objectDir.mkdirs();
+            File temp = Utils.join(objectDir, oid + ".tmp");
+            copy(file, temp);
+            try {
+                Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw Utils.error("Cannot store large file %s: %s", file.getName(), e.getMessage());
+            }
+        }
+        return pointer(format, oid, file.length());
+    }
+
+    /* writes the content POINTER refers to into FILE, read only now that it is needed */
+    void checkout(String pointer, File file) {
+        File object = Utils.join(objectDir, pointerOid(pointer));
+        if (!object.isFile()) {
+            throw Utils.error("Large file %s is missing from .gitlet/lfs.", file.getName());
+        }
+        copy(object, file);
+    }
+
+    /* writes the content POINTER refers to into OUT, in chunks */
+    void copyTo(String pointer, OutputStream out) throws IOException {
+        File object = Utils.join(objectDir, pointerOid(pointer));
+        if (!object.isFile()) {
+            throw Utils.error("A large file is missing from .gitlet/lfs.");
+        }
+        try (FileChannel in = FileChannel.open(object.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    /* the size of the file POINTER refers to */
+    static long pointerSize(String pointer) {
+        int start = pointer.indexOf("\nsize ") + "\nsize ".length();
+        return Long.parseLong(pointer.substring(start, pointer.indexOf('\n', start)));
+    }
+
+    /* true if the content POINTER refers to is in the store */
+    boolean contains(String pointer) {
+        return Utils.join(objectDir, pointerOid(pointer)).isFile();
+    }
+
+    /* What is wrong with the content POINTER refers to: null if the store has it with the
+       size and the hash the pointer gives, which is rehashed in the pointer's format */
+    String verify(String pointer) {
+        String oid;
+        long size;
+        ObjectFormat format;
+        try {
+            oid = pointerOid(pointer);
+            size = pointerSize(pointer);
+            int line = pointer.indexOf("\noid ") + "\noid ".length();
+            format = ObjectFormat.forName(pointer.substring(line, pointer.indexOf(':', line)));
+        } catch (RuntimeException e) {
+            return "unreadable pointer";
+        }
+        File object = Utils.join(objectDir, oid);
+        if (!object.isFile()) {
+            return "missing";
+        }
+        if (object.length() != size) {
+            return "size mismatch";
+        }
+        if (!hash(object, format).equals(oid)) {
+            return "hash mismatch";
+        }
+        return null;
+    }
+
+    private static String pointer(ObjectFormat format, String oid, long size) {
+        return POINTER_VERSION + "oid " + format.getName() + ":" + oid
+                + "\nsize " + size + "\n";
+    }
+
+    private static String pointerOid(String pointer) {
+        int line = pointer.indexOf("\noid ");
+        int start = pointer.indexOf(':', line) + 1;
+        return pointer.substring(start, pointer.indexOf('\n', start));
+    }
+
+    /* the hash of the content of FILE in FORMAT, read in chunks */
+    private static String hash(File file, ObjectFormat format) {
+        long start = Trace.start();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = format.digest();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long bytes = 0;
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                bytes += buffer.remaining();
+                md.update(buffer);
+                buffer.clear();
+            }
+            Trace.hashed(bytes);
+            return ObjectFormat.toHex(md.digest());
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s: %s", file.getName(), e.getMessage());
+        } finally {
+            Trace.stop(Trace.Phase.HASH, start);
+        }
+    }
+
+    /* copies FROM into TO in the kernel where it can, transferTo may move fewer bytes than asked */
+    private static void copy(File from, File to) {
+        long start = Trace.start();
+        try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            Trace.written(size);
+        } catch (IOException e) {
+            throw Utils.error("Cannot copy %s: %s", from.getName(), e.getMessage());
+        } finally {
+            Trace.stop(Trace.Phase.WRITE, start);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.util.*;
+
+/*  Line diff of two versions of a file, by Myers' O(ND) algorithm
+ *  after stripping the lines both versions start and end with.
+ *  When the versions differ in more than MAX_EDITS lines the middle is
+ *  taken as entirely rewritten instead, so a diff never needs more than a few MB.
+ *  @author LMS
+ */
+class LineDiff {
+    static final int MAX_EDITS = 2048;
+
+    /* CONTENT split into lines, a last line without '\n' is a line too */
+    static List<String> lines(String content) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = content.length();
+            }
+            lines.add(content.substring(start, end));
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /* For every line of NEWLINES, the index of the line of OLDLINES it was kept from,
+       or -1 if it was added */
+    static int[] matchLines(List<String> oldLines, List<String> newLines) {
+        int[] matches = new int[newLines.size()];
+        Arrays.fill(matches, -1);
+        int oldEnd = oldLines.size();
+        int newEnd = newLines.size();
+        int prefix = 0;
+        while (prefix < oldEnd && prefix < newEnd
+                && oldLines.get(prefix).equals(newLines.get(prefix))) {
+            matches[prefix] = prefix;
+            prefix++;
+        }
+        while (oldEnd > prefix && newEnd > prefix
+                && oldLines.get(oldEnd - 1).equals(newLines.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+            matches[newEnd] = oldEnd;
+        }
+        myers(oldLines.subList(prefix, oldEnd), newLines.subList(prefix, newEnd),
+                matches, prefix);
+        return matches;
+    }
+
+    /* fills MATCHES[OFFSET + y] = OFFSET + x for every line B[y] kept as A[x] */
+    private static void myers(List<String> a, List<String> b, int[] matches, int offset) {
+        int n = a.size();
+        int m = b.size();
+        if (n == 0 || m == 0) {
+            return;
+        }
+        int max = Math.min(n + m, MAX_EDITS);
+        int[] v = new int[2 * max + 3];
+        int zero = max + 1;
+        /* trace.get(d) is v[-d .. d] before step d */
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOfRange(v, zero - d, zero + d + 1));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[zero + k - 1] < v[zero + k + 1])) {
+                    x = v[zero + k + 1];
+                } else {
+                    x = v[zero + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[zero + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, n, m, matches, offset);
+                    return;
+                }
+            }
+        }
+        /* too different, every line of the middle counts as added */
+    }
+
+    private static void backtrack(List<int[]> trace, int n, int m,
+                                  int[] matches, int offset) {
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d >= 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[k - 1 + d] < v[k + 1 + d])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = d == 0 ? 0 : v[prevK + d];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+                matches[offset + y] = offset + x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/*  One commit of a history, as returned by Repository.getLog and getGlobalLog.
+ *  toString gives the entry exactly as the log command prints it.
+ *  Only the header of the commit is kept, not its files,
+ *  so a list of entries for a long history stays small.
+ *  @author LMS
+ */
+public class LogEntry {
+    private final String commitId;
+
+    private final String message;
+
+    private final Date timestamp;
+
+    private final String parentCommitId;
+
+    private final String secondParentCommitId;
+
+    public LogEntry(String commitId, Commit commit) {
+        this.commitId = commitId;
+        this.message = commit.getMessage();
+        this.timestamp = commit.getTimestamp();
+        this.parentCommitId = commit.getParentCommitId();
+        this.secondParentCommitId = commit.getSecondParentCommitId();
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public String getParentCommitId() {
+        return parentCommitId;
+    }
+
+    public String getSecondParentCommitId() {
+        return secondParentCommitId;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("===\n");
+        // SHA1
+        sb.append("commit ").append(commitId).append("\n");
+        // Merge
+        if (!secondParentCommitId.equals("")) {
+            sb.append("Merge: ").append(parentCommitId.substring(0, 7)).append(" ");
+            sb.append(secondParentCommitId.substring(0, 7)).append("\n");
+        }
+        // TimeStamp
+        sb.append("Date: ");
+        SimpleDateFormat format = new SimpleDateFormat("E MMM dd HH:mm:ss yyyy Z");
+        sb.append(format.format(timestamp)).append("\n");
+        // Message
+        sb.append(message).append("\n");
+        return sb.toString();
+    }
+}
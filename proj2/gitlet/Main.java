@@ -1,162 +1,173 @@
 package gitlet;
 
-import java.util.Date;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 
 /* Driver class for Gitlet, a subset of the Git version-control system.
  * Some of the commands have their differences from real Git listed.
  * README does list some of the bigger or potentially confusing and misleading ones.
+ * All the work is done by a Repository bound to the current directory,
+ * Main only parses the arguments, prints the results,
+ * and turns a GitletException into its message and System.exit(0).
  * @author LMS
  */
 public class Main {
 
-    /* java gitlet.Main ARGS, where ARGS contains <COMMAND> <OPERAND1> <OPERAND2> ... */
+    /* java gitlet.Main ARGS, where ARGS contains <COMMAND> <OPERAND1> <OPERAND2> ...
+       java gitlet.Main --trace ARGS also prints counters and timings as JSON on stderr */
     public static void main(String[] args) {
+        Trace trace = Trace.fromArgs(args);
+        args = Trace.stripFlag(args);
         if(args.length == 0) {
-            Repository.exitRepository("Please enter a command.");
+            exitWithMessage("Please enter a command.");
         }
         String firstArg = args[0];
-        switch(firstArg) {
+        if (trace != null) {
+            trace.setCommand(firstArg);
+        }
+        Repository repository = new Repository(new File(System.getProperty("user.dir")), trace);
+        try {
+            runCommand(repository, args);
+        } catch (GitletException e) {
+            exitWithMessage(e.getMessage());
+        }
+    }
+
+    private static void runCommand(Repository repository, String[] args) {
+        switch(args[0]) {
             case "init":
-                validateNumArgs(args, 1);
-                if(Repository.checkRepositoryExist()){
-                    Repository.exitRepository("A Gitlet version-control system " +
-                            "already exists in the current directory.");
-                } else {
-                    Repository.initRepository();
+                if (args.length == 2 && args[1].startsWith("--object-format=")) {
+                    // init --object-format=[sha1 or sha256]
+                    repository.initRepository(ObjectFormat.forName(
+                            args[1].substring("--object-format=".length())));
+                    break;
                 }
+                validateNumArgs(args, 1);
+                repository.initRepository();
                 break;
             case "add":
                 validateNumArgs(args, 2);
-                if(Repository.checkRepositoryExist()) {
-                    /* add the file into stage area(called ZanCunQu) when file changed or added first time
-                       add the file content(at the moment when you call "add") to the blob
-                       notice that file which not change will not be added to stage */
-                    Repository.initBranch();
-                    String filename = args[1];
-                    Repository.addFileToStage(filename);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                /* add the file into stage area(called ZanCunQu) when file changed or added first time
+                   add the file content(at the moment when you call "add") to the blob
+                   notice that file which not change will not be added to stage */
+                repository.addFileToStage(args[1]);
                 break;
             case "commit":
                 validateNumArgs(args, 2); // commit [message]
-                if(Repository.checkRepositoryExist()) {
-                    /* creating a new commit saves a snapshot of tracked files in the current commit and staging area
-                      so they can be restored at a later time.
-                      The commit is said to be tracking the saved files.
-                      By default, each commit’s snapshot of files will be exactly the same as its parent commit’s snapshot
-                      of files;  it will keep versions of files exactly as they are, and not update them.
-                      A commit will only update the contents of files it is tracking that have been staged for addition
-                      at the time of commit, in which case the commit will now include the version of the file that was staged
-                      instead of the version it got from its parent.
-                      A commit will save and start tracking any files that were staged for addition but weren’t tracked by its parent.
-                      Finally, files tracked in the current commit may be untracked in the new commit as a result being staged for removal
-                      by the rm command . */
-                    Repository.initBranch();
-                    Date date = new Date();
-                    String message = args[1];
-                    if(message.length() == 0) {
-                        Repository.exitRepository("Please enter a commit message.");
-                    }
-                    Repository.clearStageAndCommit(message, date, "");
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                /* creating a new commit saves a snapshot of tracked files in the current commit and staging area
+                  so they can be restored at a later time.
+                  The commit is said to be tracking the saved files.
+                  By default, each commit’s snapshot of files will be exactly the same as its parent commit’s snapshot
+                  of files;  it will keep versions of files exactly as they are, and not update them.
+                  A commit will only update the contents of files it is tracking that have been staged for addition
+                  at the time of commit, in which case the commit will now include the version of the file that was staged
+                  instead of the version it got from its parent.
+                  A commit will save and start tracking any files that were staged for addition but weren’t tracked by its parent.
+                  Finally, files tracked in the current commit may be untracked in the new commit as a result being staged for removal
+                  by the rm command . */
+                repository.commit(args[1]);
                 break;
             case "rm":
                 validateNumArgs(args, 2); // rm [file-name]
-                if(Repository.checkRepositoryExist()) {
-                    /* Unstage the file if it is currently staged for addition.
-                       If the file is tracked in the current commit,
-                       stage it for removal and remove the file from the working directory
-                       if the user has not already done so
-                       remember do not remove it unless it is tracked in the current commit */
-                    Repository.initBranch();
-                    String fileName = args[1];
-                    Repository.removeFileFromStageAndCWD(fileName);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                /* Unstage the file if it is currently staged for addition.
+                   If the file is tracked in the current commit,
+                   stage it for removal and remove the file from the working directory
+                   if the user has not already done so
+                   remember do not remove it unless it is tracked in the current commit */
+                repository.removeFileFromStageAndCWD(args[1]);
                 break;
             case "log":
+                if (args.length == 3 && args[1].equals("--")) { // log -- [file name]
+                    checkRepositoryExist(repository);
+                    /* only the commits which changed the file */
+                    for (LogEntry entry : repository.getLog(args[2])) {
+                        System.out.println(entry);
+                    }
+                    break;
+                }
                 validateNumArgs(args, 1);
-                if(Repository.checkRepositoryExist()) {
-                    /* Starting at the current head commit, display information about each commit
-                       backwards along the commit tree until the initial commit,
-                       following the first parent commit links,
-                       ignoring any second parents found in merge commits.
-                       In regular Git, this is what you get with git log --first-parent.
-                       This set of commit nodes is called the commit’s history. */
-                    Repository.initBranch();
-                    Repository.showLogInfo();
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                /* Starting at the current head commit, display information about each commit
+                   backwards along the commit tree until the initial commit,
+                   following the first parent commit links,
+                   ignoring any second parents found in merge commits.
+                   In regular Git, this is what you get with git log --first-parent.
+                   This set of commit nodes is called the commit’s history. */
+                for (LogEntry entry : repository.getLog()) {
+                    System.out.println(entry);
+                }
                 break;
             case "global-log":
                 validateNumArgs(args, 1);
-                if(Repository.checkRepositoryExist()) {
-                    Repository.initBranch();
-                    Repository.showGlobalLogInfo();
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                for (LogEntry entry : repository.getGlobalLog()) {
+                    System.out.println(entry);
+                }
                 break;
             case "find":
                 validateNumArgs(args, 2);
-                if(Repository.checkRepositoryExist()) {
-                    String message = args[1];
-                    Repository.initBranch();
-                    Repository.findAllCommitByMessage(message);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                for (String commitId : repository.findAllCommitByMessage(args[1])) {
+                    System.out.println(commitId);
+                }
                 break;
             case "status":
-                validateNumArgs(args, 1);
-                if(Repository.checkRepositoryExist()) {
-                    Repository.initBranch();
-                    Repository.showStatusInfo();
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                if(args.length == 2 && !args[1].equals("--find-renames")) {
+                    throw Utils.error("Incorrect operands.");
+                } else if(args.length != 2) {
+                    validateNumArgs(args, 1);
+                }
+                checkRepositoryExist(repository);
+                /* status --find-renames also pairs up deleted and added files
+                   with similar contents, like git status -M */
+                System.out.print(repository.getStatus(args.length == 2));
                 break;
             case "checkout":
-                if(Repository.checkRepositoryExist()) {
-                    Repository.initBranch();
-                    if(args.length == 2) { // checkout [branch name]
-                        /* In our proj, only checkout of a full branch modifies the staging area
-                           otherwise files scheduled for addition or removal remain so. */
-                        String branchName = args[1];
-                        Repository.checkoutToGivenBranch(branchName);
-                    } else if(args.length == 3) { // checkout -- [file name]
-                        /* Takes the version of the file as it exists in the head commit
-                           and puts it in the working directory,
-                           overwriting the version of the file that’s already there if there is one.
-                           The new version of the file is not staged. */
-                        if(!args[1].equals("--")) {
-                            Repository.exitRepository("Incorrect operands.");
-                        }
-                        String fileName = args[2];
-                        Repository.checkoutFileToCurrentCommit(fileName);
-                    } else if(args.length == 4) { // checkout [commit id] -- [file name]
-                        /* Takes the version of the file as it exists in the commit with the given id,
-                           and puts it in the working directory,
-                           overwriting the version of the file that’s already there if there is one.
-                           The new version of the file is not staged. */
-                        if(!args[2].equals("--")) {
-                            Repository.exitRepository("Incorrect operands.");
-                        }
-                        String commitId = args[1];
-                        String fileName = args[3];
-                        Repository.checkoutFileToGivenCommit(fileName, commitId);
-                    } else Repository.exitRepository("Incorrect operands.");
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                if(args.length == 2) { // checkout [branch name]
+                    /* In our proj, only checkout of a full branch modifies the staging area
+                       otherwise files scheduled for addition or removal remain so. */
+                    repository.checkoutToGivenBranch(args[1]);
+                } else if(args.length == 3) { // checkout -- [file name]
+                    /* Takes the version of the file as it exists in the head commit
+                       and puts it in the working directory,
+                       overwriting the version of the file that’s already there if there is one.
+                       The new version of the file is not staged. */
+                    if(!args[1].equals("--")) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    repository.checkoutFileToCurrentCommit(args[2]);
+                } else if(args.length == 4) { // checkout [commit id] -- [file name]
+                    /* Takes the version of the file as it exists in the commit with the given id,
+                       and puts it in the working directory,
+                       overwriting the version of the file that’s already there if there is one.
+                       The new version of the file is not staged. */
+                    if(!args[2].equals("--")) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    repository.checkoutFileToGivenCommit(args[3], args[1]);
+                } else throw Utils.error("Incorrect operands.");
                 break;
             case "branch":
                 validateNumArgs(args, 2);
-                String newBranchName = args[1];
-                if(Repository.checkRepositoryExist()) {
-                    Repository.initBranch();
-                    Repository.createNewBranch(newBranchName);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                repository.createNewBranch(args[1]);
                 break;
             case "rm-branch":
                 validateNumArgs(args, 2);
-                String branchName = args[1];
-                if(Repository.checkRepositoryExist()) {
-                    /* Deletes the branch with the given name.
+                checkRepositoryExist(repository);
+                /* Deletes the branch with the given name.
                    This only means to delete the pointer associated with the branch;
                    it does not mean to delete all commits that were created under the branch. */
-                    Repository.initBranch();
-                    Repository.deleteGivenBranch(branchName);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                repository.deleteGivenBranch(args[1]);
                 break;
             case "reset":
                 validateNumArgs(args, 2);  // reset [commit id]
@@ -165,62 +176,208 @@ public class Main {
                    Also moves the current branch’s head to that commit node.
                    The staging area is cleared.
                    The command is essentially checkout of an arbitrary commit that also changes the current branch head. */
-                if(Repository.checkRepositoryExist()) {
-                    Repository.initBranch();
-                    String commitId = args[1];
-                    Repository.resetHard(commitId);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                repository.resetHard(args[1]);
                 break;
             case "merge": // in gitlet, we only support two branches merge
-                validateNumArgs(args, 2); // merge [file name]
+                validateNumArgs(args, 2); // merge [branch name]
                 /* Merge files from the given branch into the current branch. */
-                String givenBranchName = args[1];
-                if(Repository.checkRepositoryExist()) {
-                    Repository.initBranch();
-                    Repository.mergeGivenBranchToCurrent(givenBranchName);
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
+                printMergeMessage(repository.mergeGivenBranchToCurrent(args[1]));
+                break;
+            case "cherry-pick":
+                validateNumArgs(args, 2); // cherry-pick [commit id]
+                checkRepositoryExist(repository);
+                /* Applies the changes of the given commit on top of the current branch */
+                printMergeMessage(repository.cherryPick(args[1]));
+                break;
+            case "rebase":
+                validateNumArgs(args, 2); // rebase [branch name]
+                checkRepositoryExist(repository);
+                /* Replays the commits of the current branch on top of the given branch */
+                printMergeMessage(repository.rebase(args[1]));
+                break;
+            case "blame":
+                validateNumArgs(args, 2); // blame [file name]
+                checkRepositoryExist(repository);
+                /* every line of the file in the head commit, with the commit which last changed it */
+                for (BlameLine line : repository.blame(args[1])) {
+                    System.out.println(line);
+                }
+                break;
+            case "sparse-checkout":
+                checkRepositoryExist(repository);
+                if (args.length == 2 && args[1].equals("list")) {
+                    for (String pattern : repository.getSparseCheckoutPatterns()) {
+                        System.out.println(pattern);
+                    }
+                } else if (args.length >= 3 && args[1].equals("set")) {
+                    // sparse-checkout set [pattern] ...
+                    repository.setSparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    repository.setSparseCheckout(Collections.emptyList());
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+                break;
+            case "worktree":
+                checkRepositoryExist(repository);
+                if (args.length == 4 && args[1].equals("add")) {
+                    // worktree add [directory] [branch name]
+                    repository.addWorktree(new File(args[2]), args[3]);
+                } else if (args.length == 3 && args[1].equals("remove")) {
+                    repository.removeWorktree(new File(args[2]));
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    for (String worktree : repository.listWorktrees()) {
+                        System.out.println(worktree);
+                    }
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+                break;
+            case "lfs":
+                checkRepositoryExist(repository);
+                if (args.length == 2 && args[1].equals("track")) {
+                    for (String rule : repository.getLargeFileRules()) {
+                        System.out.println(rule);
+                    }
+                } else if ((args.length == 3 || args.length == 4) && args[1].equals("track")) {
+                    // lfs track [glob] [minimum size], every matching file when no size is given
+                    long minSize = args.length == 4 ? LargeFileStore.parseSize(args[3]) : 0;
+                    repository.trackLargeFiles(args[2], minSize);
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+                break;
+            case "fast-import":
+                validateNumArgs(args, 1);
+                checkRepositoryExist(repository);
+                /* read a fast-import stream from stdin, objects are written in bulk */
+                repository.fastImport(System.in);
+                break;
+            case "fast-export":
+                validateNumArgs(args, 1);
+                checkRepositoryExist(repository);
+                BufferedOutputStream exportStream = new BufferedOutputStream(System.out, 1 << 16);
+                repository.fastExport(exportStream);
+                break;
+            case "archive":
+                checkRepositoryExist(repository);
+                archive(repository, args);
+                break;
+            case "fsck":
+                checkRepositoryExist(repository);
+                boolean showProgress = System.console() != null;
+                if (args.length == 2 && args[1].equals("--progress")) {
+                    showProgress = true;
+                } else {
+                    validateNumArgs(args, 1);
+                }
+                /* progress only on a terminal, so scripts see the problems alone */
+                FsckReport report = repository.fsck(showProgress ? System.err : null);
+                for (String problem : report.getProblems()) {
+                    System.out.println(problem);
+                }
+                /* like git fsck, fail when something is corrupt, missing or broken,
+                   dangling objects alone still exit with 0 */
+                if (!report.isClean()) {
+                    System.out.flush();
+                    System.exit(1);
+                }
+                break;
+            case "commit-graph":
+                validateNumArgs(args, 1);
+                checkRepositoryExist(repository);
+                /* add the commits made before .gitlet/commit-graph existed */
+                repository.writeCommitGraph();
+                break;
+            case "pack-refs":
+                validateNumArgs(args, 1);
+                checkRepositoryExist(repository);
+                /* move every loose branch file into .gitlet/packed-refs */
+                repository.packRefs();
                 break;
             case "add-remote":
                 // add-remote [remote name] [name of remote directory]/.gitlet
                 validateNumArgs(args, 3);
-                String remoteName = args[1];
-                String directoryName = args[2];
-                if (Repository.checkRepositoryExist()) {
-
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
             case "rm-remote":
                 // rm-remote [remote name]
                 validateNumArgs(args, 2);
-                String removeRemoteName = args[1];
-                if (Repository.checkRepositoryExist()) {
-
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
             case "fetch":
                 // fetch [remote name] [remote branch name]
                 validateNumArgs(args, 3);
-                String fetchRemoteName = args[1];
-                String fetchRemoteBranchName = args[2];
-                if (Repository.checkRepositoryExist()) {
-
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
             case "push":
                 // push [remote name] [remote branch name]
                 validateNumArgs(args, 3);
-                String pushRemoteName = args[1];
-                String puhsRemoteBranchName = args[2];
-                if (Repository.checkRepositoryExist()) {
-
-                } else Repository.exitRepository("Not in an initialized Gitlet directory.");
+                checkRepositoryExist(repository);
             case "pull":
                 // pull [remote name] [remote branch name]
             default:
-                Repository.exitRepository("No command with that name exists.");
+                throw Utils.error("No command with that name exists.");
+        }
+    }
+
+    /* archive [commit id or branch] [--format=zip|tar] [--output=file]
+       the format defaults to zip for an output ending in .zip, tar otherwise,
+       and the archive goes to standard output unless --output is given */
+    private static void archive(Repository repository, String[] args) {
+        String commitish = null;
+        String format = null;
+        String output = null;
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else if (arg.startsWith("--output=")) {
+                output = arg.substring("--output=".length());
+            } else if (commitish == null && !arg.startsWith("--")) {
+                commitish = arg;
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        if (commitish == null) {
+            throw Utils.error("Incorrect operands.");
+        }
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? Archive.ZIP : Archive.TAR;
+        }
+        if (!format.equals(Archive.ZIP) && !format.equals(Archive.TAR)) {
+            throw Utils.error("Unknown archive format: %s", format);
+        }
+        /* before the output file is created */
+        String commitId = repository.resolveCommitish(commitish);
+        try (OutputStream out = new BufferedOutputStream(output == null ? System.out
+                : new FileOutputStream(output), 1 << 16)) {
+            repository.archive(commitId, format, out);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write the archive: %s", e.getMessage());
+        }
+    }
+
+    private static void printMergeMessage(MergeResult result) {
+        if (result.getMessage() != null) {
+            System.out.println(result.getMessage());
+        }
+    }
+
+    private static void checkRepositoryExist(Repository repository) {
+        if (!repository.checkRepositoryExist()) {
+            throw Utils.error(GitletException.Kind.NOT_A_REPOSITORY,
+                    "Not in an initialized Gitlet directory.");
         }
     }
 
     public static void validateNumArgs(String[] args, int n) {
         if (args.length != n) {
-            Repository.exitRepository("Incorrect operands.");
+            throw Utils.error("Incorrect operands.");
         }
     }
+
+    private static void exitWithMessage(String message) {
+        System.out.println(message);
+        System.exit(0);
+    }
 }
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.util.*;
+
+/*  The three-way merge of gitlet, done purely on <fileName, blobId> maps.
+ *  merge, cherry-pick and rebase all ask it for the files of the commit they create.
+ *  Blobs are only read for files which were renamed, and only written for conflicts,
+ *  the working directory is never touched: the caller checks it for untracked files in the way
+ *  and syncs it once, after the last commit is created.
+ *
+ *  For every file, with BASE the split point, CURRENT and GIVEN the two sides:
+ *  unchanged in GIVEN, or changed the same way in both -> the CURRENT version (or absence),
+ *  unchanged in CURRENT -> the GIVEN version (or absence),
+ *  changed differently in both -> a conflict file holding both versions.
+ *  @author LMS
+ */
+class MergeEngine {
+    /* the files of a merge, and whether any of them conflicted */
+    static class Result {
+        private final Map<String, String> files;
+
+        private final boolean conflict;
+
+        Result(Map<String, String> files, boolean conflict) {
+            this.files = files;
+            this.conflict = conflict;
+        }
+
+        Map<String, String> getFiles() {
+            return files;
+        }
+
+        boolean hasConflict() {
+            return conflict;
+        }
+    }
+
+    private final Repository repository;
+
+    MergeEngine(Repository repository) {
+        this.repository = repository;
+    }
+
+    /* Merges the changes from BASE to GIVEN into CURRENT, none of the maps is modified */
+    Result merge(Map<String, String> base, Map<String, String> current,
+                 Map<String, String> given) {
+        Map<String, String> merged = new HashMap<>(current);
+        /* files renamed in one branch and modified in the other are merged first,
+           the rules below must then leave both of their names alone */
+        Set<String> renamedFiles = new HashSet<>();
+        boolean hasConflict = mergeRenames(base, current, given, true, merged, renamedFiles);
+        hasConflict |= mergeRenames(base, given, current, false, merged, renamedFiles);
+
+        Set<String> fileNames = new HashSet<>(current.keySet());
+        fileNames.addAll(given.keySet());
+        for (String fileName : fileNames) {
+            if (renamedFiles.contains(fileName)) {
+                continue;
+            }
+            String baseBlob = base.get(fileName);
+            String currentBlob = current.get(fileName);
+            String givenBlob = given.get(fileName);
+            if (Objects.equals(currentBlob, givenBlob) || Objects.equals(givenBlob, baseBlob)) {
+                continue;
+            }
+            if (Objects.equals(currentBlob, baseBlob)) {
+                if (givenBlob == null) {
+                    merged.remove(fileName);
+                } else {
+                    merged.put(fileName, givenBlob);
+                }
+                continue;
+            }
+            hasConflict = true;
+            String conflict = conflictContent(readContent(currentBlob), readContent(givenBlob));
+            merged.put(fileName, storeBlob(fileName, conflict));
+        }
+        return new Result(merged, hasConflict);
+    }
+
+    /* Finds files which RENAMINGFILES moved to a new name since the split point
+       while KEEPINGFILES still has them under the old name, modified.
+       Without this, the modification would conflict with the deletion of the old name.
+       Instead, when the renaming branch did not change the content,
+       the modified content simply moves to the new name;
+       otherwise both versions conflict under the new name.
+       KEEPINGISCURRENT tells which side is the current branch.
+       The result goes into MERGED, names of handled files are put in HANDLED,
+       returns true if there was a conflict. */
+    private boolean mergeRenames(Map<String, String> splitPointFiles,
+                                 Map<String, String> keepingFiles,
+                                 Map<String, String> renamingFiles,
+                                 boolean keepingIsCurrent,
+                                 Map<String, String> merged, Set<String> handled) {
+        Map<String, String> deletedFiles = new HashMap<>();
+        for (Map.Entry<String, String> entry : splitPointFiles.entrySet()) {
+            String filename = entry.getKey();
+            if (!renamingFiles.containsKey(filename) && keepingFiles.containsKey(filename)
+                    && !keepingFiles.get(filename).equals(entry.getValue())) {
+                deletedFiles.put(filename, readContent(entry.getValue()));
+            }
+        }
+        if (deletedFiles.isEmpty()) {
+            return false;
+        }
+        Map<String, String> addedFiles = new HashMap<>();
+        for (Map.Entry<String, String> entry : renamingFiles.entrySet()) {
+            String filename = entry.getKey();
+            if (!splitPointFiles.containsKey(filename) && !keepingFiles.containsKey(filename)) {
+                addedFiles.put(filename, readContent(entry.getValue()));
+            }
+        }
+        boolean hasConflict = false;
+        for (RenameDetector.Rename rename : new RenameDetector().detect(deletedFiles, addedFiles)) {
+            String keptContent = readContent(keepingFiles.get(rename.oldName));
+            String renamedContent = addedFiles.get(rename.newName);
+            String content;
+            if (renamedContent.equals(deletedFiles.get(rename.oldName))) {
+                content = keptContent;
+            } else {
+                hasConflict = true;
+                content = keepingIsCurrent
+                        ? conflictContent(keptContent, renamedContent)
+                        : conflictContent(renamedContent, keptContent);
+            }
+            merged.put(rename.newName, storeBlob(rename.newName, content));
+            merged.remove(rename.oldName);
+            handled.add(rename.oldName);
+            handled.add(rename.newName);
+        }
+        return hasConflict;
+    }
+
+    /* the content of the blob, "" for a file absent on one side of a conflict */
+    private String readContent(String blobId) {
+        return blobId == null ? "" : repository.getFileContentFromBlob(blobId);
+    }
+
+    /* writes the blob of FILENAME with CONTENT unless it already exists, returns its id */
+    private String storeBlob(String fileName, String content) {
+        String blobId = repository.checkBlobExist(fileName, content);
+        if (blobId.equals("")) {
+            blobId = repository.writeBlobIntoObjects(fileName, content);
+        }
+        return blobId;
+    }
+
+    static String conflictContent(String currentContent, String givenContent) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<<<<<<< HEAD\n");
+        sb.append(currentContent);
+        sb.append("=======\n");
+        sb.append(givenContent);
+        sb.append(">>>>>>>\n");
+        return sb.toString();
+    }
+}
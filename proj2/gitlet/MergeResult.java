@@ -0,0 +1,66 @@
+package gitlet;
+
+/*  What a merge, cherry-pick or rebase did, as returned by Repository.
+ *  @author LMS
+ */
+public class MergeResult {
+    public enum Outcome {
+        /* the given branch is an ancestor of the current one, nothing changed */
+        ALREADY_MERGED,
+        /* the current branch was an ancestor, the given branch was checked out */
+        FAST_FORWARD,
+        /* rebase: the given branch is already part of the current one, nothing changed */
+        UP_TO_DATE,
+        /* a merge commit was created, or commits were cherry-picked or rebased */
+        MERGED
+    }
+
+    private final Outcome outcome;
+
+    private final boolean conflict;
+
+    /* the new head of the current branch */
+    private final String commitId;
+
+    public MergeResult(Outcome outcome, boolean conflict, String commitId) {
+        this.outcome = outcome;
+        this.conflict = conflict;
+        this.commitId = commitId;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean hasConflict() {
+        return conflict;
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    /* Throws a GitletException of Kind.MERGE_CONFLICT if there were conflicts,
+       for callers that must not go on from a conflicted commit */
+    public MergeResult requireNoConflict() {
+        if (conflict) {
+            throw Utils.error(GitletException.Kind.MERGE_CONFLICT,
+                    "Encountered a merge conflict in %s.", commitId);
+        }
+        return this;
+    }
+
+    /* the line the merge command prints, or null if it prints nothing */
+    public String getMessage() {
+        switch (outcome) {
+            case ALREADY_MERGED:
+                return "Given branch is an ancestor of the current branch.";
+            case FAST_FORWARD:
+                return "Current branch fast-forwarded.";
+            case UP_TO_DATE:
+                return "Current branch is up to date.";
+            default:
+                return conflict ? "Encountered a merge conflict." : null;
+        }
+    }
+}
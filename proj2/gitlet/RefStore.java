@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/*  All branch heads of a repository.
+ *  A branch is either a loose ref, one file refs/heads/[branch name] holding a commitId,
+ *  or a line "[commitId] [branch name]" of the packed-refs file.
+ *  A loose ref always overrides the packed line of the same branch,
+ *  so updating a branch only writes its own small file and never rewrites packed-refs.
+ *
+ *  pack() moves every loose ref into packed-refs,
+ *  afterwards thousands of branches are listed and resolved by reading a single file.
+ *  Refs are cached in memory once read, and the cache is dropped by reload whenever a
+ *  command takes the .gitlet lock, so each ref is touched on disk at most once per command
+ *  and a command still sees the refs another Repository or process wrote before it.
+ *  @author LMS
+ */
+class RefStore {
+    /* first line of the packed-refs file */
+    private static final String PACKED_REFS_HEADER = "# pack-refs";
+
+    /* once there are more loose refs than this, creating a branch packs them */
+    static final int AUTO_PACK_LIMIT = 256;
+
+    private final File packedRefsFile;
+
+    private final File looseRefDir;
+
+    /* <branchName, commitId> from packed-refs, null until first needed */
+    private Map<String, String> packedRefs;
+
+    /* <branchName, commitId> of every ref already resolved, "" for a missing ref */
+    private final Map<String, String> refCache = new HashMap<>();
+
+    /* sorted names of all branches, null until first listed */
+    private TreeSet<String> branchNames;
+
+    RefStore(File packedRefsFile, File looseRefDir) {
+        this.packedRefsFile = packedRefsFile;
+        this.looseRefDir = looseRefDir;
+    }
+
+    /* Forgets every ref read so far, so they are read again from disk */
+    void reload() {
+        packedRefs = null;
+        refCache.clear();
+        branchNames = null;
+    }
+
+    /* Returns the commitId the branch points at, or null if there is no such branch */
+    String resolve(String branchName) {
+        String commitId = refCache.get(branchName);
+        if (commitId != null) {
+            Trace.cacheHit();
+        } else {
+            File looseRef = Utils.join(looseRefDir, branchName);
+            if (looseRef.isFile()) {
+                commitId = Utils.readContentsAsString(looseRef).trim();
+            } else {
+                commitId = getPackedRefs().getOrDefault(branchName, "");
+            }
+            refCache.put(branchName, commitId);
+        }
+        return commitId.equals("") ? null : commitId;
+    }
+
+    boolean exists(String branchName) {
+        return resolve(branchName) != null;
+    }
+
+    /* point the branch at commitId, creating it if needed */
+    void update(String branchName, String commitId) {
+        Utils.writeContents(Utils.join(looseRefDir, branchName), commitId);
+        refCache.put(branchName, commitId);
+        if (branchNames != null) {
+            branchNames.add(branchName);
+        }
+    }
+
+    void delete(String branchName) {
+        Utils.notRestrictedDelete(Utils.join(looseRefDir, branchName));
+        if (getPackedRefs().remove(branchName) != null) {
+            writePackedRefs();
+        }
+        refCache.put(branchName, "");
+        if (branchNames != null) {
+            branchNames.remove(branchName);
+        }
+    }
+
+    /* names of all branches, loose or packed, in lexicographic order */
+    SortedSet<String> branchNames() {
+        if (branchNames == null) {
+            branchNames = new TreeSet<>(getPackedRefs().keySet());
+            branchNames.addAll(looseRefNames());
+        }
+        return Collections.unmodifiableSortedSet(branchNames);
+    }
+
+    /* number of refs stored as their own file */
+    int looseRefCount() {
+        return looseRefNames().size();
+    }
+
+    /* Moves every loose ref into packed-refs and deletes the loose files */
+    void pack() {
+        Map<String, String> packed = getPackedRefs();
+        List<String> looseNames = looseRefNames();
+        for (String branchName : looseNames) {
+            packed.put(branchName, resolve(branchName));
+        }
+        writePackedRefs();
+        for (String branchName : looseNames) {
+            Utils.notRestrictedDelete(Utils.join(looseRefDir, branchName));
+        }
+    }
+
+    private List<String> looseRefNames() {
+        List<String> names = Utils.plainFilenamesIn(looseRefDir);
+        return names == null ? Collections.emptyList() : names;
+    }
+
+    private Map<String, String> getPackedRefs() {
+        if (packedRefs == null) {
+            packedRefs = new TreeMap<>();
+            if (packedRefsFile.isFile()) {
+                String content = Utils.readContentsAsString(packedRefsFile);
+                for (String line : content.split("\n")) {
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    int space = line.indexOf(' ');
+                    packedRefs.put(line.substring(space + 1), line.substring(0, space));
+                }
+            }
+        }
+        return packedRefs;
+    }
+
+    private void writePackedRefs() {
+        StringBuilder sb = new StringBuilder(PACKED_REFS_HEADER).append("\n");
+        for (Map.Entry<String, String> entry : packedRefs.entrySet()) {
+            sb.append(entry.getValue()).append(" ").append(entry.getKey()).append("\n");
+        }
+        Utils.writeContents(packedRefsFile, sb.toString());
+    }
+}
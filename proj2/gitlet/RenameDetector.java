@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.util.*;
+
+/*  Pairs deleted files with added files whose contents are similar, i.e. renames.
+ *
+ *  Comparing every deleted file with every added file is O(n^2) content comparisons,
+ *  so each file is first reduced to a MinHash signature:
+ *  the content is cut into overlapping shingles of SHINGLE_LENGTH characters,
+ *  and for each of NUM_HASHES hash functions the signature keeps the minimum hash of all shingles.
+ *  The fraction of equal signature slots estimates the Jaccard similarity of the two shingle sets.
+ *
+ *  Signatures are then split into BANDS bands of ROWS slots (locality sensitive hashing).
+ *  Two files only become a candidate pair when they agree on a whole band,
+ *  so similar files meet in some bucket while unrelated ones almost never do,
+ *  and the work stays near-linear in the number of files.
+ *  @author LMS
+ */
+class RenameDetector {
+    /* like git, a pair is a rename when at least half of the content is the same */
+    static final double DEFAULT_THRESHOLD = 0.5;
+
+    private static final int SHINGLE_LENGTH = 5;
+
+    private static final int BANDS = 16;
+
+    private static final int ROWS = 4;
+
+    private static final int NUM_HASHES = BANDS * ROWS;
+
+    /* seeds of the hash family, fixed so that signatures are reproducible */
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /* one detected rename */
+    static class Rename {
+        final String oldName;
+        final String newName;
+        /* estimated similarity in [0, 1], exactly 1 for identical content */
+        final double similarity;
+
+        Rename(String oldName, String newName, double similarity) {
+            this.oldName = oldName;
+            this.newName = newName;
+            this.similarity = similarity;
+        }
+
+        int percent() {
+            return (int) Math.round(similarity * 100);
+        }
+    }
+
+    private final double threshold;
+
+    RenameDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    RenameDetector(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /* Returns the renames among DELETEDFILES and ADDEDFILES, both <fileName, content>,
+       sorted by old file name. Each deleted and each added file is used at most once,
+       the most similar pairs win. */
+    List<Rename> detect(Map<String, String> deletedFiles, Map<String, String> addedFiles) {
+        List<Rename> candidates = new ArrayList<>();
+        Set<String> exactOld = new HashSet<>();
+        Set<String> exactNew = new HashSet<>();
+        /* identical content is found through a hash map, before any signature is computed */
+        Map<String, List<String>> deletedByContent = new HashMap<>();
+        for (Map.Entry<String, String> entry : deletedFiles.entrySet()) {
+            deletedByContent.computeIfAbsent(entry.getValue(), k -> new ArrayList<>())
+                    .add(entry.getKey());
+        }
+        for (Map.Entry<String, String> entry : addedFiles.entrySet()) {
+            List<String> sameContent = deletedByContent.get(entry.getValue());
+            if (sameContent != null) {
+                for (String oldName : sameContent) {
+                    candidates.add(new Rename(oldName, entry.getKey(), 1.0));
+                }
+                exactNew.add(entry.getKey());
+                exactOld.addAll(sameContent);
+            }
+        }
+
+        Map<String, int[]> oldSignatures = signatures(deletedFiles, exactOld);
+        Map<String, int[]> newSignatures = signatures(addedFiles, exactNew);
+        /* band buckets of deleted files, <band index and band hash, file names> */
+        Map<Long, List<String>> buckets = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : oldSignatures.entrySet()) {
+            for (int band = 0; band < BANDS; band++) {
+                buckets.computeIfAbsent(bandKey(entry.getValue(), band), k -> new ArrayList<>())
+                        .add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, int[]> entry : newSignatures.entrySet()) {
+            Set<String> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                List<String> bucket = buckets.get(bandKey(entry.getValue(), band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (String oldName : bucket) {
+                    if (seen.add(oldName)) {
+                        double similarity =
+                                similarity(oldSignatures.get(oldName), entry.getValue());
+                        if (similarity >= threshold) {
+                            candidates.add(new Rename(oldName, entry.getKey(), similarity));
+                        }
+                    }
+                }
+            }
+        }
+        return pickBest(candidates);
+    }
+
+    /* greedily keeps the most similar pairs so that no file is used twice */
+    private static List<Rename> pickBest(List<Rename> candidates) {
+        candidates.sort(Comparator.comparingDouble((Rename r) -> -r.similarity)
+                .thenComparing(r -> r.oldName)
+                .thenComparing(r -> r.newName));
+        Set<String> usedOld = new HashSet<>();
+        Set<String> usedNew = new HashSet<>();
+        List<Rename> renames = new ArrayList<>();
+        for (Rename rename : candidates) {
+            if (!usedOld.contains(rename.oldName) && !usedNew.contains(rename.newName)) {
+                usedOld.add(rename.oldName);
+                usedNew.add(rename.newName);
+                renames.add(rename);
+            }
+        }
+        renames.sort(Comparator.comparing(r -> r.oldName));
+        return renames;
+    }
+
+    private static Map<String, int[]> signatures(Map<String, String> files, Set<String> skip) {
+        Map<String, int[]> signatures = new HashMap<>();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            if (!skip.contains(entry.getKey()) && !entry.getValue().isEmpty()) {
+                signatures.put(entry.getKey(), signature(entry.getValue()));
+            }
+        }
+        return signatures;
+    }
+
+    /* MinHash signature of the shingles of CONTENT */
+    static int[] signature(String content) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        int shingles = Math.max(1, content.length() - SHINGLE_LENGTH + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = shingleHash(content, start,
+                    Math.min(content.length(), start + SHINGLE_LENGTH));
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int h = (int) (mix(shingle ^ SEEDS[i]) >>> 33);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /* estimated Jaccard similarity, the fraction of equal signature slots */
+    static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / NUM_HASHES;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long h = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            h = mix(h * 31 + signature[i]);
+        }
+        return h;
+    }
+
+    private static long shingleHash(String content, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h = (h ^ content.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /* the splitmix64 finalizer, spreads every input bit over the whole long */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
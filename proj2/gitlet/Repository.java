@@ -1,14 +1,27 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.*;
+import java.util.function.Supplier;
 
 /*  Represents a gitlet repository.
  *  The repository also maintains a mapping from branch heads to reference of commits
  *  so that certain important commits have symbolic names.
  *
+ *  A Repository is bound to one working directory and keeps no static state,
+ *  so any number of repositories can be used inside one JVM.
+ *  Commands return their results (LogEntry, Status, MergeResult, commit ids ...)
+ *  and report failures by throwing a GitletException whose message is the one
+ *  gitlet prints, Main is the only place that prints and calls System.exit.
+ *  A single Repository object is not thread-safe. Every public command takes the .gitlet lock
+ *  itself, shared when it only reads, so other processes and other Repositories of the
+ *  same .gitlet never see it half done, see RepositoryLock.
+ *
  *  About sha1
  *  An interesting feature of Git is that these ids are universal:
  *  unlike a typical Java implementation
@@ -21,139 +34,338 @@ import java.util.*;
  *  @author LMS
  */
 public class Repository {
-    /* The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /* in the .gitlet of a linked worktree, the path of the shared .gitlet */
+    private static final String COMMON_DIR_FILE = "commondir";
+
+    /* patterns of untracked files status does not list, in the working directory */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /* The working directory of this repository. */
+    private final File cwd;
 
     /* The .gitlet directory. */
-    public static final File GITLET_DIR = Utils.join(CWD, ".gitlet");
+    private final File gitletDir;
+
+    /* The .gitlet directory holding objects and refs, shared by all worktrees.
+       It is gitletDir itself, except in a worktree made by addWorktree,
+       whose .gitlet only keeps its own HEAD and index and names the shared one in "commondir". */
+    private final File commonDir;
+
+    /* linked worktrees of commonDir, one directory per worktree holding the path of its .gitlet */
+    private final File worktreesDir;
 
     /* Blob and Commit data directory */
-    public static final File OBJECT_DIR = Utils.join(GITLET_DIR, "objects");
+    private final File objectDir;
 
-    public static final File COMMIT_DIR = Utils.join(OBJECT_DIR, "commits");
+    private final File commitDir;
 
-    public static final File BLOB_DIR = Utils.join(OBJECT_DIR, "blobs");
+    private final File blobDir;
 
     /* Stage data file */
-    public static final File STAGE_FILE = Utils.join(GITLET_DIR, "index");
+    private final File stageFile;
 
     /* Branch file directory */
-    public static final File BRANCH_DIR = Utils.join(GITLET_DIR, "refs");
+    private final File branchDir;
 
     /* local branch directory*/
-    public static final File LOCAL_BRANCH_DIR = Utils.join(BRANCH_DIR, "heads");
+    private final File localBranchDir;
+
+    /* packed branch heads, one "[commitId] [branch name]" per line */
+    private final File packedRefsFile;
+
+    /* every branch read or written goes through here, loose refs override packed ones */
+    private final RefStore refs;
+
+    /* parents, dates and changed-path filters of commits, appended to by every new commit */
+    private final CommitGraph commitGraph;
+
+    /* line attributions of file versions blamed before */
+    private final BlameCache blameCache;
+
+    /* patterns of the files written into the working directory, all files when empty */
+    private final File sparseCheckoutFile;
+
+    /* the compiled sparseCheckoutFile, null until first needed */
+    private GlobRules sparseRules;
+
+    /* the compiled .gitletignore of the working directory, null until first needed */
+    private GlobRules ignoreRules;
 
-    private static String currentBranchName;
+    /* contents of large files, their blobs only hold pointers */
+    private final LargeFileStore largeFiles;
+
+    /* the lock of commonDir, shared by the worktrees */
+    private final RepositoryLock repositoryLock;
+
+    /* the hash function naming the objects, read from .gitlet/object-format and only
+       changed by initRepository, which is when the repository gets its format */
+    private ObjectFormat objectFormat;
+
+    /* found by getInitialCommitId, null until then */
+    private String initialCommitId;
+
+    /* what the commands of this repository count into, null when not traced */
+    private final Trace trace;
+
+    private String currentBranchName;
 
     /* HEAD file */
     /* Note that in Gitlet, there is no way to be in a detached head state
        since there is no [checkout] command that will move the HEAD pointer to a specific commit.
        The [reset] command will do that, though it also moves the branch pointer.
        Thus, in Gitlet, you will never be in a detached HEAD state. */
-    public static final File HEAD_FILE = Utils.join(GITLET_DIR, "HEAD");
+    private final File headFile;
+
+    /* A repository whose working directory is WORKINGDIR, with its data in WORKINGDIR/.gitlet.
+       Nothing is created until initRepository. */
+    public Repository(File workingDir) {
+        this(workingDir, null);
+    }
+
+    /* The same, with its commands counted and timed into TRACE, see Trace */
+    Repository(File workingDir, Trace trace) {
+        this.trace = trace;
+        cwd = workingDir.getAbsoluteFile().toPath().normalize().toFile();
+        gitletDir = Utils.join(cwd, ".gitlet");
+        File commonDirFile = Utils.join(gitletDir, COMMON_DIR_FILE);
+        commonDir = commonDirFile.isFile()
+                ? new File(Utils.readContentsAsString(commonDirFile).trim()) : gitletDir;
+        worktreesDir = Utils.join(commonDir, "worktrees");
+        objectDir = Utils.join(commonDir, "objects");
+        commitDir = Utils.join(objectDir, "commits");
+        blobDir = Utils.join(objectDir, "blobs");
+        stageFile = Utils.join(gitletDir, "index");
+        branchDir = Utils.join(commonDir, "refs");
+        localBranchDir = Utils.join(branchDir, "heads");
+        packedRefsFile = Utils.join(commonDir, "packed-refs");
+        headFile = Utils.join(gitletDir, "HEAD");
+        refs = new RefStore(packedRefsFile, localBranchDir);
+        commitGraph = new CommitGraph(Utils.join(commonDir, "commit-graph"));
+        blameCache = new BlameCache(Utils.join(commonDir, "blame"));
+        largeFiles = new LargeFileStore(Utils.join(commonDir, "lfs"));
+        sparseCheckoutFile = Utils.join(gitletDir, "sparse-checkout");
+        repositoryLock = new RepositoryLock(commonDir);
+        /* ids are hashed the way the repository was made, sha1 before it exists */
+        objectFormat = ObjectFormat.read(commonDir);
+        initBranch();
+    }
+
+    /* Makes commands fail with GitletException.Kind.LOCK_HELD when another command holds the
+       .gitlet lock for more than TIMEOUTMILLIS, instead of waiting; < 0 waits forever,
+       the default */
+    public void setLockTimeout(long timeoutMillis) {
+        repositoryLock.setTimeout(timeoutMillis);
+    }
+
+    public File getWorkingDirectory() {
+        return cwd;
+    }
+
+    public File getGitletDirectory() {
+        return gitletDir;
+    }
+
+    public String getCurrentBranchName() {
+        return currentBranchName;
+    }
 
     /* init the repository before any operation */
-    public static void initRepository() {
-        if (!GITLET_DIR.exists()) {
-            GITLET_DIR.mkdir();
+    public void initRepository() {
+        initRepository(ObjectFormat.SHA1);
+    }
+
+    /* init the repository with its objects named by FORMAT */
+    public void initRepository(ObjectFormat format) {
+        /* the lock file lives in .gitlet, two inits racing both make it, one then fails below */
+        if (!gitletDir.exists()) {
+            gitletDir.mkdir();
         }
-        if (!OBJECT_DIR.exists()) {
-            OBJECT_DIR.mkdir();
+        runCommand("initRepository", false, () -> {
+            initLockedRepository(format);
+            return null;
+        });
+    }
+
+    private void initLockedRepository(ObjectFormat format) {
+        if (checkRepositoryExist()) {
+            throw Utils.error("A Gitlet version-control system "
+                    + "already exists in the current directory.");
         }
-        if (!BRANCH_DIR.exists()) {
-            BRANCH_DIR.mkdir();
+        if (!objectDir.exists()) {
+            objectDir.mkdir();
         }
-        if (!LOCAL_BRANCH_DIR.exists()) {
-            LOCAL_BRANCH_DIR.mkdir();
+        if (!branchDir.exists()) {
+            branchDir.mkdir();
         }
-        if (!COMMIT_DIR.exists()) {
-            COMMIT_DIR.mkdir();
+        if (!localBranchDir.exists()) {
+            localBranchDir.mkdir();
         }
-        if (!BLOB_DIR.exists()) {
-            BLOB_DIR.mkdir();
+        if (!commitDir.exists()) {
+            commitDir.mkdir();
         }
+        if (!blobDir.exists()) {
+            blobDir.mkdir();
+        }
+        format.write(commonDir);
+        objectFormat = format;
         initBranch();
         // do not forget every time you init, there will be a new Commit which point nothing;
-        Date initDate = new Date(0);
-        String initMessage = "initial commit";
-        /* Since the initial commit in all repositories
-           created by Gitlet will have exactly the same content,
-           it follows that all repositories will automatically share this commit
-           they will all have the same UID and
-           all commits in all repositories will trace back to it. */
-        String obj = initMessage + initDate;
-        String commitId = Utils.sha1(obj);
-        // init commit
-        Commit commit = new Commit(initMessage, initDate, "", "");
+        Commit commit = newInitialCommit();
+        String commitId = commit.computeId(objectFormat);
         writeCommitIntoObjects(commitId, commit);
+        commitGraph.add(commitId, commit, new HashMap<>());
         // local"master" branch head and HEAD file both point at the init commit
         writeCurrentCommitIdIntoCurrentLocalBranch(commitId);
         // write branchInfo into HEAD
         writeCurrentLocalBranchIntoHead();
     }
 
-    public static void initBranch() {
-        if (HEAD_FILE.exists()) {
-            String currentLocalBranchInfo = Utils.readContentsAsString(HEAD_FILE);
+    /* Since the initial commit in all repositories
+       created by Gitlet will have exactly the same content,
+       it follows that all repositories will automatically share this commit
+       they will all have the same UID and
+       all commits in all repositories will trace back to it. */
+    private static Commit newInitialCommit() {
+        return new Commit("initial commit", new Date(0), "", "");
+    }
+
+    /* The id of the initial commit, the root every first parent chain ends at.
+       It is looked up rather than recomputed from newInitialCommit, since repositories
+       made before commit ids covered parents and files stored it under another id. */
+    String getInitialCommitId() {
+        if (initialCommitId == null) {
+            String commitId = getCurrentLocalBranchHeadId();
+            String parentId = getFirstParentId(commitId);
+            while (!parentId.equals("")) {
+                commitId = parentId;
+                parentId = getFirstParentId(commitId);
+            }
+            initialCommitId = commitId;
+        }
+        return initialCommitId;
+    }
+
+    /* the first parent of COMMITID, from the commit-graph when it has the commit */
+    private String getFirstParentId(String commitId) {
+        CommitGraph.Node node = commitGraph.get(commitId);
+        return node != null ? node.getParentId() : readCommit(commitId).getParentCommitId();
+    }
+
+    public void initBranch() {
+        if (headFile.exists()) {
+            String currentLocalBranchInfo = Utils.readContentsAsString(headFile);
             currentBranchName = currentLocalBranchInfo.split(" ")[1].split("/")[2];
         } else {
             currentBranchName = "master";
         }
     }
 
-    public static void switchToNewBranch(String newBranchName) {
+    public void switchToNewBranch(String newBranchName) {
         currentBranchName = newBranchName;
         writeCurrentLocalBranchIntoHead();
     }
 
+    /* Runs BODY as the public command NAME and returns its result. The command holds the
+       .gitlet lock, shared when SHARED, see RepositoryLock, and counts into the Trace, which
+       also times it as the entry point NAME; both are released however BODY ends.
+       The outermost command reloads what this Repository caches from .gitlet,
+       since other Repositories and processes may have changed it while it was not locked. */
+    private <T> T runCommand(String name, boolean shared, Supplier<T> body) {
+        Trace.Scope traced = Trace.enter(trace, name);
+        try {
+            RepositoryLock held = repositoryLock.acquire(shared);
+            try {
+                if (held.isOutermost()) {
+                    reload();
+                }
+                return body.get();
+            } finally {
+                held.close();
+            }
+        } finally {
+            traced.close();
+        }
+    }
+
+    /* Forgets what was read from .gitlet before the lock was taken: HEAD, the refs, the
+       commit-graph, the sparse-checkout, ignore and large file rules and the object format.
+       The initial commit is kept, it never changes once the repository exists. */
+    private void reload() {
+        objectFormat = ObjectFormat.read(commonDir);
+        initBranch();
+        refs.reload();
+        commitGraph.reload();
+        largeFiles.reload();
+        sparseRules = null;
+        ignoreRules = null;
+    }
+
+    /* runs BODY as the public command NAME, which only reads */
+    private <T> T readCommand(String name, Supplier<T> body) {
+        checkRepository();
+        return runCommand(name, true, body);
+    }
+
+    /* runs BODY as the public command NAME, which writes into .gitlet */
+    private <T> T writeCommand(String name, Supplier<T> body) {
+        checkRepository();
+        return runCommand(name, false, body);
+    }
+
+    private void writeCommand(String name, Runnable body) {
+        writeCommand(name, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    private void checkRepository() {
+        if (!checkRepositoryExist()) {
+            throw Utils.error(GitletException.Kind.NOT_A_REPOSITORY,
+                    "Not in an initialized Gitlet directory.");
+        }
+    }
+
     /* check directory exsit */
-    public static boolean checkRepositoryExist() {
-        return GITLET_DIR.exists() && OBJECT_DIR.exists()
-                && BRANCH_DIR.exists() && LOCAL_BRANCH_DIR.exists()
-                && COMMIT_DIR.exists() && BLOB_DIR.exists()
-                && GITLET_DIR.isDirectory() && OBJECT_DIR.isDirectory()
-                && BRANCH_DIR.isDirectory() && LOCAL_BRANCH_DIR.isDirectory()
-                && COMMIT_DIR.isDirectory() && BLOB_DIR.isDirectory();
+    public boolean checkRepositoryExist() {
+        return gitletDir.exists() && objectDir.exists()
+                && branchDir.exists() && localBranchDir.exists()
+                && commitDir.exists() && blobDir.exists()
+                && gitletDir.isDirectory() && objectDir.isDirectory()
+                && branchDir.isDirectory() && localBranchDir.isDirectory()
+                && commitDir.isDirectory() && blobDir.isDirectory();
     }
 
     /* write commit into objects */
-    public static void writeCommitIntoObjects(String commitId, Commit commit) {
-        File file = Utils.join(COMMIT_DIR, commitId);
+    public void writeCommitIntoObjects(String commitId, Commit commit) {
+        File file = Utils.join(commitDir, commitId);
         Utils.writeObject(file, commit);
     }
 
     /* write current commitId into refs/heads/branchName */
-    public static void writeCurrentCommitIdIntoCurrentLocalBranch(String commitId) {
-        File file = Utils.join(LOCAL_BRANCH_DIR, currentBranchName);
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        Utils.writeContents(file, commitId);
+    public void writeCurrentCommitIdIntoCurrentLocalBranch(String commitId) {
+        refs.update(currentBranchName, commitId);
     }
 
     /* write current branchInfo into HEAD */
-    public static void writeCurrentLocalBranchIntoHead() {
-        if (!HEAD_FILE.exists()) {
+    public void writeCurrentLocalBranchIntoHead() {
+        if (!headFile.exists()) {
             try {
-                HEAD_FILE.createNewFile();
+                headFile.createNewFile();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
-        String content = "ref: " + BRANCH_DIR.getName() + "/"
-                + LOCAL_BRANCH_DIR.getName() + "/" + currentBranchName;
-        Utils.writeContents(HEAD_FILE, content);
+        String content = "ref: " + branchDir.getName() + "/"
+                + localBranchDir.getName() + "/" + currentBranchName;
+        Utils.writeContents(headFile, content);
     }
 
     /* using filename+filecontent as key */
-    public static String checkBlobExist(String fileName, String content) {
+    public String checkBlobExist(String fileName, String content) {
         String obj = fileName + content;
-        String blobId = Utils.sha1(obj);
-        File blobFile = Utils.join(BLOB_DIR, blobId);
+        String blobId = objectFormat.hash(obj);
+        File blobFile = Utils.join(blobDir, blobId);
         if (blobFile.exists()) {
             return blobId;
         } else {
@@ -161,27 +373,27 @@ public class Repository {
         }
     }
 
-    public static String writeBlobIntoObjects(String fileName, String content) {
+    public String writeBlobIntoObjects(String fileName, String content) {
         Blob blob = new Blob(content);
         String obj = fileName + content;
-        String blobId = Utils.sha1(obj);
-        File file = Utils.join(BLOB_DIR, blobId);
+        String blobId = objectFormat.hash(obj);
+        File file = Utils.join(blobDir, blobId);
         Utils.writeObject(file, blob);
         return blobId;
     }
 
-    public static String getCurrentLocalBranchHeadId() {
-        File file = Utils.join(LOCAL_BRANCH_DIR, currentBranchName);
-        if (file.exists()) {
-            return Utils.readContentsAsString(file);
+    public String getCurrentLocalBranchHeadId() {
+        String commitId = refs.resolve(currentBranchName);
+        if (commitId != null) {
+            return commitId;
         } else {
             return "";
         }
     }
 
-    public static Commit getCurrentLocalBranchHead() {
+    public Commit getCurrentLocalBranchHead() {
         String commitId = getCurrentLocalBranchHeadId();
-        File commitFile = Utils.join(COMMIT_DIR, commitId);
+        File commitFile = Utils.join(commitDir, commitId);
         if (commitFile.exists()) {
             return Utils.readObject(commitFile, Commit.class);
         } else {
@@ -196,44 +408,48 @@ public class Repository {
        as can happen when a file is changed, added, and then changed back to it’s original version.
        The file will no longer be staged for removal,
        see git rm, if it was at the time of the command. */
-    public static void addFileToStage(String fileName) {
-        File file = Utils.join(CWD, fileName);
-        String content, blobId;
-        Stage stage;
-        if (STAGE_FILE.exists()) {
-            stage = Utils.readObject(STAGE_FILE, Stage.class);
-        } else {
-            stage = new Stage();
-        }
-        if (file.exists()) {
-            content = Utils.readContentsAsString(file);
-            blobId = Repository.checkBlobExist(file.getName(), content);
-            /* read blob data and check file content;
-             * if the content change, add it to the stage area */
-            if (blobId.equals("")) {
-                blobId = Repository.writeBlobIntoObjects(file.getName(), content);
-            }
-            if (stage.getRemovedFiles().contains(fileName)) {
-                stage.removeFileOutOfRemoval(fileName);
-            } else {
-                stage.addFileToStage(fileName, blobId);
-            }
-            // check this file version in current branch
-            Commit currentCommit = getCurrentLocalBranchHead();
-            if (currentCommit != null) {
-                Map<String, String> commitFiles = currentCommit.getCommitFiles();
-                for (String filename : commitFiles.keySet()) {
-                    if (filename.equals(fileName) && commitFiles.get(filename).equals(blobId)) {
-                        // if this unchanged file exist in stage, remove it from stage
-                        // not stage it for removal!
-                        stage.removeFileOutOfStage(fileName);
+    public void addFileToStage(String fileName) {
+        writeCommand("addFileToStage", () -> {
+            File file = Utils.join(cwd, fileName);
+            String content, blobId;
+            Stage stage = readStage();
+            if (file.exists()) {
+                if (isIgnored(fileName) && stage.getStagedBlobId(fileName) == null
+                        && !stage.isStagedForRemoval(fileName)
+                        && !getCurrentLocalBranchHead().getCommitFiles().containsKey(fileName)) {
+                    throw Utils.error("That file is ignored by %s.", IGNORE_FILE);
+                }
+                /* a large file goes into the large file store, its blob is a pointer to it */
+                content = largeFiles.isLarge(fileName, file.length())
+                        ? largeFiles.add(file, objectFormat) : Utils.readContentsAsString(file);
+                blobId = checkBlobExist(file.getName(), content);
+                /* read blob data and check file content;
+                 * if the content change, add it to the stage area */
+                if (blobId.equals("")) {
+                    blobId = writeBlobIntoObjects(file.getName(), content);
+                }
+                if (stage.isStagedForRemoval(fileName)) {
+                    stage.removeFileOutOfRemoval(fileName);
+                } else {
+                    stage.addFileToStage(fileName, blobId);
+                }
+                // check this file version in current branch
+                Commit currentCommit = getCurrentLocalBranchHead();
+                if (currentCommit != null) {
+                    Map<String, String> commitFiles = currentCommit.getCommitFiles();
+                    for (String filename : commitFiles.keySet()) {
+                        if (filename.equals(fileName) && commitFiles.get(filename).equals(blobId)) {
+                            // if this unchanged file exist in stage, remove it from stage
+                            // not stage it for removal!
+                            stage.removeFileOutOfStage(fileName);
+                        }
                     }
                 }
+                StagingIndex.write(stageFile, stage);
+            } else {
+                throw Utils.error(GitletException.Kind.NO_SUCH_FILE, "File does not exist.");
             }
-            Utils.writeObject(STAGE_FILE, stage);
-        } else {
-            Repository.exitRepository("File does not exist.");
-        }
+        });
     }
 
     /* By default a commit has the same file contents as its parent.
@@ -244,254 +460,419 @@ public class Repository {
     /* ? Each commit is identified by its SHA-1 id,
        which must include the blob references of its files,
        parent reference, log message, and commit time. ? */
-    public static void clearStageAndCommit(String message, Date date,
-                                           String secondParentId) {
-        String obj = message + date.toString();
-        String newCommitId = Utils.sha1(obj);
+    /* commits the staging area with MESSAGE, returns the id of the new commit */
+    public String commit(String message) {
+        return writeCommand("commit", () -> {
+            if (message.length() == 0) {
+                throw Utils.error("Please enter a commit message.");
+            }
+            return clearStageAndCommit(message, new Date(), "");
+        });
+    }
+
+    public String clearStageAndCommit(String message, Date date,
+                                      String secondParentId) {
         // how we get the last commitId? -> current branch head point at it
         String currentCommitId = getCurrentLocalBranchHeadId();
         Commit currentCommit = getCurrentLocalBranchHead();
-        Commit newCommit = new Commit(message, date, currentCommitId, secondParentId);
         /* default commit is same as it parent commit */
+        Map<String, String> commitFiles = new HashMap<>();
         if (currentCommit != null) {
-            newCommit.setCommitFiles(currentCommit.getCommitFiles());
+            commitFiles.putAll(currentCommit.getCommitFiles());
         }
-        Stage stage;
-        if (STAGE_FILE.exists()) {
-            stage = Utils.readObject(STAGE_FILE, Stage.class);
-        } else {
-            stage = new Stage();
+        Stage stage = readStage();
+        if (stage.isEmpty()) {
+            throw Utils.error("No changes added to the commit.");
         }
         Map<String, String> addedFiles = stage.getAddedFiles();
         List<String> removedFiles = stage.getRemovedFiles();
-        if (addedFiles.size() == 0 && removedFiles.size() == 0) {
-            exitRepository("No changes added to the commit.");
-        }
-        for (String fileName : addedFiles.keySet()) {
-            newCommit.addCommitFile(fileName, addedFiles.get(fileName));
-        }
+        commitFiles.putAll(addedFiles);
         /* files tracked in the current commit may be untracked in the new commit
            as a result being staged for removal */
         for (String removeFileName : removedFiles) {
-            newCommit.removeCommitFiles(removeFileName);
+            commitFiles.remove(removeFileName);
         }
-        // 1.update index
+        // 1.write new commit into object
+        String newCommitId = writeNewCommit(message, date, currentCommitId,
+                secondParentId, commitFiles, currentCommit == null
+                        ? new HashMap<>() : currentCommit.getCommitFiles());
+        // 2.update index
         stage.clear();
-        Utils.writeObject(STAGE_FILE, stage);
-        // 2.update refs/heads
+        StagingIndex.write(stageFile, stage);
+        // 3.update refs/heads
         writeCurrentCommitIdIntoCurrentLocalBranch(newCommitId);
-        // 3.write new commit into object
+        return newCommitId;
+    }
+
+    /* Writes a commit with the given fields and files, returns its id.
+       PARENTFILES are the files of the first parent, for the changed paths in the commit-graph */
+    String writeNewCommit(String message, Date date, String parentId,
+                                  String secondParentId, Map<String, String> commitFiles,
+                                  Map<String, String> parentFiles) {
+        Commit newCommit = new Commit(message, date, parentId, secondParentId);
+        newCommit.setCommitFiles(new HashMap<>(commitFiles));
+        String newCommitId = newCommit.computeId(objectFormat);
         writeCommitIntoObjects(newCommitId, newCommit);
+        commitGraph.add(newCommitId, newCommit, parentFiles);
+        return newCommitId;
+    }
+
+    Commit readCommit(String commitId) {
+        return Utils.readObject(Utils.join(commitDir, commitId), Commit.class);
     }
 
     /* If the file is neither staged nor tracked by the head commit. do not remove */
     /* The rm command will remove such files, as well as staging them for removal
        so that they will be untracked after a commit. */
-    public static void removeFileFromStageAndCWD(String fileName) {
-        Stage stage;
-        if (STAGE_FILE.exists()) {
-            stage = Utils.readObject(STAGE_FILE, Stage.class);
-        } else {
-            stage = new Stage();
-        }
-        File file = Utils.join(CWD, fileName);
-        Commit commit = getCurrentLocalBranchHead();
-        if (commit != null) {
-            Map<String, String> addedFiles = stage.getAddedFiles();
-            Map<String, String> commitedFiles = commit.getCommitFiles();
-            if (!addedFiles.containsKey(fileName) && !commitedFiles.containsKey(fileName)) {
-                exitRepository("No reason to remove the file.");
-            }
-            if (addedFiles.containsKey(fileName)) {
-                stage.removeFileOutOfStage(fileName);
-            }
-            /* do not remove it unless it is tracked in the current commit */
-            if (commitedFiles.containsKey(fileName)) {
-                stage.removeFileForRemoval(fileName);
-                if (file.exists()) {
-                    Utils.restrictedDelete(file);
+    public void removeFileFromStageAndCWD(String fileName) {
+        writeCommand("removeFileFromStageAndCWD", () -> {
+            Stage stage = readStage();
+            File file = Utils.join(cwd, fileName);
+            Commit commit = getCurrentLocalBranchHead();
+            if (commit != null) {
+                boolean staged = stage.getStagedBlobId(fileName) != null;
+                Map<String, String> commitedFiles = commit.getCommitFiles();
+                if (!staged && !commitedFiles.containsKey(fileName)) {
+                    throw Utils.error("No reason to remove the file.");
+                }
+                if (staged) {
+                    stage.removeFileOutOfStage(fileName);
+                }
+                /* do not remove it unless it is tracked in the current commit */
+                if (commitedFiles.containsKey(fileName)) {
+                    stage.removeFileForRemoval(fileName);
+                    if (file.exists()) {
+                        Utils.restrictedDelete(file);
+                    }
                 }
+                StagingIndex.write(stageFile, stage);
             }
-            Utils.writeObject(STAGE_FILE, stage);
-        }
+        });
     }
 
-    public static String getFileContentFromBlob(String blobId) {
-        File file = Utils.join(BLOB_DIR, blobId);
+    /* the staging area, empty if nothing was ever staged */
+    private Stage readStage() {
+        return StagingIndex.read(stageFile);
+    }
+
+    public String getFileContentFromBlob(String blobId) {
+        File file = Utils.join(blobDir, blobId);
         Blob blob = Utils.readObject(file, Blob.class);
         return blob.getContent();
     }
 
+    /* writes the file of BLOBID into FILE, a large file is copied from the large file store */
+    private void writeWorkingFile(File file, String blobId) {
+        String content = getFileContentFromBlob(blobId);
+        if (LargeFileStore.isPointer(content)) {
+            largeFiles.checkout(content, file);
+        } else {
+            Utils.writeContents(file, content);
+        }
+    }
+
+    /* what the blob of the working file FILENAME would hold, the pointer for a large file */
+    private String readWorkingFile(String fileName) {
+        File file = Utils.join(cwd, fileName);
+        return largeFiles.isLarge(fileName, file.length())
+                ? largeFiles.pointerFor(file, objectFormat) : Utils.readContentsAsString(file);
+    }
+
+    /* the blobId the working file FILENAME would get if it was added */
+    private String getWorkingFileBlobId(String fileName) {
+        return objectFormat.hash(fileName + readWorkingFile(fileName));
+    }
+
+    /* Like git lfs track, keeps files matching GLOB of at least MINSIZE bytes
+       in the large file store when they are added, see LargeFileStore */
+    public void trackLargeFiles(String glob, long minSize) {
+        writeCommand("trackLargeFiles", () -> {
+            largeFiles.track(glob, minSize);
+        });
+    }
+
+    public List<String> getLargeFileRules() {
+        return readCommand("getLargeFileRules", () -> {
+            return largeFiles.getRules();
+        });
+    }
+
     /* in real git, this is [git log --first-parent] */
-    public static void showLogInfo() {
-        String commitId = getCurrentLocalBranchHeadId();
-        File file;
-        Commit commit;
-        do {
-            file = Utils.join(COMMIT_DIR, commitId);
-            commit = Utils.readObject(file, Commit.class);
-            showSingleCommitLogInfo(commitId, commit);
-            commitId = commit.getParentCommitId();
-        } while (!commitId.equals(""));
-    }
-
-    private static void showSingleCommitLogInfo(String commitId, Commit commit) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("===\n");
-        // SHA1
-        sb.append("commit ").append(commitId).append("\n");
-        // Merge
-        if (!commit.getSecondParentCommitId().equals("")) {
-            sb.append("Merge: ").append(commit.getParentCommitId().substring(0, 7)).append(" ");
-            sb.append(commit.getSecondParentCommitId().substring(0, 7)).append("\n");
-        }
-        // TimeStamp
-        sb.append("Date: ");
-        SimpleDateFormat format = new SimpleDateFormat("E MMM dd HH:mm:ss yyyy Z");
-        sb.append(format.format(commit.getTimestamp())).append("\n");
-        // Message
-        sb.append(commit.getMessage()).append("\n");
-        System.out.println(sb.toString());
+    public List<LogEntry> getLog() {
+        return readCommand("getLog", () -> {
+            List<LogEntry> entries = new ArrayList<>();
+            String commitId = getCurrentLocalBranchHeadId();
+            File file;
+            Commit commit;
+            do {
+                file = Utils.join(commitDir, commitId);
+                commit = Utils.readObject(file, Commit.class);
+                entries.add(new LogEntry(commitId, commit));
+                commitId = commit.getParentCommitId();
+            } while (!commitId.equals(""));
+            return entries;
+        });
     }
 
     /* in real git, this is [git log] */
     /* in fact, get all commits equals traverse all nodes in a tree
        since we can use HEAD, which means a tree node */
-    public static void showGlobalLogInfo() {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMIT_DIR);
-        if (commitFiles != null) {
-            File file;
-            Commit commit;
-            for (String commitFileName : commitFiles) {
-                file = Utils.join(COMMIT_DIR, commitFileName);
-                commit = Utils.readObject(file, Commit.class);
-                showSingleCommitLogInfo(commitFileName, commit);
+    /* Like getLog, but only the commits which changed FILENAME compared to their first parent,
+       in real git this is [git log --first-parent -- file].
+       A commit whose changed-path filter in the commit-graph rules the file out
+       is passed over without reading it, only the remaining ones are read and compared. */
+    public List<LogEntry> getLog(String fileName) {
+        return readCommand("getLog", () -> {
+            List<LogEntry> entries = new ArrayList<>();
+            String commitId = getCurrentLocalBranchHeadId();
+            /* the commit of commitId when it was already read as the parent of the previous one */
+            Commit commit = null;
+            while (!commitId.equals("")) {
+                CommitGraph.Node node = commitGraph.get(commitId);
+                if (node != null && !node.mightHaveChanged(fileName)) {
+                    commitId = node.getParentId();
+                    commit = null;
+                    continue;
+                }
+                if (commit == null) {
+                    commit = readCommit(commitId);
+                }
+                String parentId = commit.getParentCommitId();
+                Commit parent = parentId.equals("") ? null : readCommit(parentId);
+                String parentBlobId = parent == null ? null : parent.getCommitFiles().get(fileName);
+                if (!Objects.equals(commit.getCommitFiles().get(fileName), parentBlobId)) {
+                    entries.add(new LogEntry(commitId, commit));
+                }
+                commitId = parentId;
+                commit = parent;
             }
-        }
+            return entries;
+        });
+    }
+
+    /* For every line of FILENAME in the head commit, the commit which last changed it,
+       in real git this is [git blame --first-parent file].
+       The history of the file is walked back, through the changed-path filters,
+       only until a version whose blame is cached, or the version which added the file.
+       Then each newer version is diffed with the one before it only,
+       and its blame is cached under its blob id. */
+    public List<BlameLine> blame(String fileName) {
+        return writeCommand("blame", () -> {
+            String commitId = getCurrentLocalBranchHeadId();
+            Commit commit = readCommit(commitId);
+            String blobId = commit.getCommitFiles().get(fileName);
+            if (blobId == null) {
+                throw Utils.error(GitletException.Kind.NO_SUCH_FILE,
+                        "File does not exist in that commit.");
+            }
+            /* versions not blamed yet, newest first, each with the commit which introduced it */
+            List<String> versionCommits = new ArrayList<>();
+            List<String> versionBlobs = new ArrayList<>();
+            List<String> lines = new ArrayList<>();
+            List<String> attribution = new ArrayList<>();
+            while (blobId != null) {
+                /* go back to the commit which changed the file to this version */
+                Commit parent;
+                String parentBlobId;
+                while (true) {
+                    CommitGraph.Node node = commitGraph.get(commitId);
+                    if (node != null && !node.mightHaveChanged(fileName)) {
+                        commitId = node.getParentId();
+                        commit = null;
+                        continue;
+                    }
+                    if (commit == null) {
+                        commit = readCommit(commitId);
+                    }
+                    String parentId = commit.getParentCommitId();
+                    parent = parentId.equals("") ? null : readCommit(parentId);
+                    parentBlobId = parent == null ? null : parent.getCommitFiles().get(fileName);
+                    if (!blobId.equals(parentBlobId)) {
+                        break;
+                    }
+                    commitId = parentId;
+                    commit = parent;
+                }
+                if (blameCache.contains(commitId, fileName)) {
+                    lines = LineDiff.lines(getFileContentFromBlob(blobId));
+                    attribution = blameCache.get(commitId, fileName, lines.size());
+                    if (attribution != null) {
+                        break;
+                    }
+                    lines = new ArrayList<>();
+                    attribution = new ArrayList<>();
+                }
+                versionCommits.add(commitId);
+                versionBlobs.add(blobId);
+                commitId = commit.getParentCommitId();
+                commit = parent;
+                blobId = parentBlobId;
+            }
+            for (int i = versionBlobs.size() - 1; i >= 0; i--) {
+                List<String> newLines = LineDiff.lines(getFileContentFromBlob(versionBlobs.get(i)));
+                int[] matches = LineDiff.matchLines(lines, newLines);
+                List<String> newAttribution = new ArrayList<>(newLines.size());
+                for (int match : matches) {
+                    newAttribution.add(match >= 0 ? attribution.get(match) : versionCommits.get(i));
+                }
+                blameCache.put(versionCommits.get(i), fileName, newAttribution);
+                lines = newLines;
+                attribution = newAttribution;
+            }
+            List<BlameLine> blameLines = new ArrayList<>();
+            for (int i = 0; i < lines.size(); i++) {
+                blameLines.add(new BlameLine(attribution.get(i), i + 1, lines.get(i)));
+            }
+            return blameLines;
+        });
+    }
+
+    public List<LogEntry> getGlobalLog() {
+        return readCommand("getGlobalLog", () -> {
+            List<LogEntry> entries = new ArrayList<>();
+            List<String> commitFiles = Utils.plainFilenamesIn(commitDir);
+            if (commitFiles != null) {
+                File file;
+                Commit commit;
+                for (String commitFileName : commitFiles) {
+                    file = Utils.join(commitDir, commitFileName);
+                    commit = Utils.readObject(file, Commit.class);
+                    entries.add(new LogEntry(commitFileName, commit));
+                }
+            }
+            return entries;
+        });
     }
 
     /* Doesn’t exist in real git.
        Similar effects can be achieved by grepping the output of log. */
-    public static void findAllCommitByMessage(String message) {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMIT_DIR);
-        List<String> namesList = new ArrayList<>();
-        if (commitFiles != null) {
-            File file;
-            Commit commit;
-            for (String commitFileName : commitFiles) {
-                file = Utils.join(COMMIT_DIR, commitFileName);
-                commit = Utils.readObject(file, Commit.class);
-                if (commit.getMessage().equals(message)) {
-                    namesList.add(commitFileName);
+    public List<String> findAllCommitByMessage(String message) {
+        return readCommand("findAllCommitByMessage", () -> {
+            List<String> commitFiles = Utils.plainFilenamesIn(commitDir);
+            List<String> namesList = new ArrayList<>();
+            if (commitFiles != null) {
+                File file;
+                Commit commit;
+                for (String commitFileName : commitFiles) {
+                    file = Utils.join(commitDir, commitFileName);
+                    commit = Utils.readObject(file, Commit.class);
+                    if (commit.getMessage().equals(message)) {
+                        namesList.add(commitFileName);
+                    }
                 }
             }
             if (namesList.size() == 0) {
-                exitRepository("Found no commit with that message.");
-            }
-            for (String name : namesList) {
-                System.out.println(name);
+                throw Utils.error("Found no commit with that message.");
             }
-        }
+            return namesList;
+        });
+    }
+
+    public Status getStatus() {
+        return getStatus(false);
     }
 
-    public static void showStatusInfo() {
-        StringBuilder statusBuilder = new StringBuilder();
-        /* branch */
-        statusBuilder.append("=== Branches ===").append("\n");
-        List<String> branchNames = Utils.plainFilenamesIn(LOCAL_BRANCH_DIR);
-        if (branchNames != null) {
-            for (String branchName : branchNames) {
-                if (branchName.equals(currentBranchName)) {
-                    statusBuilder.append("*").append(currentBranchName).append("\n");
+    /* with FINDRENAMES, deleted and added files with similar contents are
+       also listed as renames, see RenameDetector */
+    public Status getStatus(boolean findRenames) {
+        return readCommand("getStatus", () -> {
+            Stage stage = readStage();
+            /* not stage */
+            Map<String, String> modifiedNotStageFiles = new HashMap<>();
+            Set<String> deletedNotStageFiles = new HashSet<>();
+            Map<String, String> trackedFilesMap = getCurrentLocalBranchHead().getCommitFiles();
+
+            trackedFilesMap.putAll(stage.getAddedFiles());
+            for (String filename : stage.getRemovedFiles()) {
+                trackedFilesMap.remove(filename);
+            }
+            Map<String, String> currentFilesMap = getCurrentFilesMap(trackedFilesMap.keySet());
+
+            for (Map.Entry<String, String> entry : trackedFilesMap.entrySet()) {
+                String filename = entry.getKey();
+                String blobId = entry.getValue();
+                if (!isInSparseCheckout(filename)) {
+                    /* tracked but left out of the working directory,
+                       neither deleted nor untracked */
+                    currentFilesMap.remove(filename);
+                    continue;
+                }
+                String currentFileBlobId = currentFilesMap.getOrDefault(filename, "");
+                if (!currentFileBlobId.equals("")) {
+                    if (!currentFileBlobId.equals(blobId)) {
+                        /* 1. Tracked in the current commit, changed
+                           in the working directory, but not staged; or*/
+                        /* 2. Staged for addition, but with different contents
+                           than in the working directory.*/
+                        modifiedNotStageFiles.put(filename, "modified");
+                    }
+                    currentFilesMap.remove(filename);
                 } else {
-                    statusBuilder.append(branchName).append("\n");
+                    // 3. Staged for addition, but deleted in the working directory; or
+                    // 4. Not staged for removal, but tracked in the current
+                    // commit and deleted from the working directory.
+                    modifiedNotStageFiles.put(filename, "deleted");
+                    deletedNotStageFiles.add(filename);
                 }
             }
-        }
-        statusBuilder.append("\n");
-        /* stage */
-        statusBuilder.append("=== Staged Files ===").append("\n");
-        Stage stage;
-        if (STAGE_FILE.exists()) {
-            stage = Utils.readObject(STAGE_FILE, Stage.class);
-        } else {
-            stage = new Stage();
-        }
-        for (String addedFile : stage.getAddedFiles().keySet()) {
-            statusBuilder.append(addedFile).append("\n");
-        }
-        statusBuilder.append("\n");
-        /* remove */
-        statusBuilder.append("=== Removed Files ===").append("\n");
-        for (String removedFile : stage.getRemovedFiles()) {
-            statusBuilder.append(removedFile).append("\n");
-        }
-        statusBuilder.append("\n");
-        /* not stage */
-        statusBuilder.append("=== Modifications Not Staged For Commit ===").append("\n");
-        List<String> modifiedNotStageFiles = new ArrayList<>();
-        Set<String> deletedNotStageFiles = new HashSet<>();
-        Map<String, String> currentFilesMap = getCurrentFilesMap();
-        Map<String, String> trackedFilesMap = getCurrentLocalBranchHead().getCommitFiles();
-
-        trackedFilesMap.putAll(stage.getAddedFiles());
-        for (String filename : stage.getRemovedFiles()) {
-            trackedFilesMap.remove(filename);
-        }
-
-        for (Map.Entry<String, String> entry : trackedFilesMap.entrySet()) {
-            String filename = entry.getKey();
-            String blobId = entry.getValue();
-            String currentFileBlobId = currentFilesMap.getOrDefault(filename, "");
-            if (!currentFileBlobId.equals("")) {
-                if (!currentFileBlobId.equals(blobId)) {
-                    /* 1. Tracked in the current commit, changed
-                       in the working directory, but not staged; or*/
-                    /* 2. Staged for addition, but with different contents
-                       than in the working directory.*/
-                    modifiedNotStageFiles.add(filename);
-                }
-                currentFilesMap.remove(filename);
-            } else {
-                // 3. Staged for addition, but deleted in the working directory; or
-                // 4. Not staged for removal, but tracked in the current
-                // commit and deleted from the working directory.
-                modifiedNotStageFiles.add(filename);
-                deletedNotStageFiles.add(filename);
-            }
-        }
 
-        modifiedNotStageFiles.sort(String::compareTo);
+            /* untracked files are what is left in currentFilesMap */
+            Status status = new Status(refs.branchNames(), currentBranchName,
+                    stage.getAddedFiles().keySet(), stage.getRemovedFiles(),
+                    modifiedNotStageFiles, currentFilesMap.keySet());
+            if (findRenames) {
+                status.setRenames(findStatusRenames(stage, trackedFilesMap,
+                        deletedNotStageFiles, currentFilesMap));
+            }
+            return status;
+        });
+    }
 
-        for (String filename : modifiedNotStageFiles) {
-            statusBuilder.append(filename);
-            if (deletedNotStageFiles.contains(filename)) {
-                statusBuilder.append(" ").append("(deleted)");
-            } else {
-                statusBuilder.append(" ").append("(modified)");
+    /* a file staged for removal or deleted from the working directory
+       and a similar file which is untracked or newly staged form a rename */
+    private List<RenameDetector.Rename> findStatusRenames(
+            Stage stage, Map<String, String> trackedFilesMap,
+            Set<String> deletedNotStageFiles, Map<String, String> untrackedFilesMap) {
+        Map<String, String> headFiles = getCurrentLocalBranchHead().getCommitFiles();
+        Map<String, String> deletedFiles = new HashMap<>();
+        for (String filename : stage.getRemovedFiles()) {
+            deletedFiles.put(filename, getFileContentFromBlob(headFiles.get(filename)));
+        }
+        for (String filename : deletedNotStageFiles) {
+            deletedFiles.put(filename, getFileContentFromBlob(trackedFilesMap.get(filename)));
+        }
+        Map<String, String> addedFiles = new HashMap<>();
+        for (Map.Entry<String, String> entry : stage.getAddedFiles().entrySet()) {
+            if (!headFiles.containsKey(entry.getKey())) {
+                addedFiles.put(entry.getKey(), getFileContentFromBlob(entry.getValue()));
             }
-            statusBuilder.append("\n");
         }
-        statusBuilder.append("\n");
-
-        /* untracked files */
-        statusBuilder.append("=== Untracked Files ===").append("\n");
-        for (String filename : currentFilesMap.keySet()) {
-            statusBuilder.append(filename).append("\n");
+        for (String filename : untrackedFilesMap.keySet()) {
+            addedFiles.put(filename, readWorkingFile(filename));
         }
-        statusBuilder.append("\n");
-
-        System.out.print(statusBuilder);
+        return new RenameDetector().detect(deletedFiles, addedFiles);
     }
 
-    private static Map<String, String> getCurrentFilesMap() {
+    /* <fileName, blobId> of the files in the working directory,
+       files outside the sparse checkout are not read and have the blobId "",
+       files ignored by .gitletignore are left out unless they are in TRACKEDFILES */
+    private Map<String, String> getCurrentFilesMap(Set<String> trackedFiles) {
         Map<String, String> filesMap = new HashMap<>();
-        List<String> currentFiles = Utils.plainFilenamesIn(CWD);
-        for (String filename : currentFiles) {
-            File file = Utils.join(CWD, filename);
-            String content = Utils.readContentsAsString(file);
-            String blobId = Utils.sha1(filename + content);
-            filesMap.put(filename, blobId);
+        String[] names = cwd.list();
+        if (names == null) {
+            return filesMap;
+        }
+        for (String filename : names) {
+            /* ignored names are dropped before they are even stat'ed */
+            if ((isIgnored(filename) && !trackedFiles.contains(filename))
+                    || !Utils.join(cwd, filename).isFile()) {
+                continue;
+            }
+            if (!isInSparseCheckout(filename)) {
+                filesMap.put(filename, "");
+                continue;
+            }
+            filesMap.put(filename, getWorkingFileBlobId(filename));
         }
         return filesMap;
     }
@@ -500,26 +881,40 @@ public class Repository {
     /* Real git does not clear the staging area and stages the file that is checked out.
        Also, it won’t do a checkout that would overwrite or undo changes
        sucn as additions or removals that you have staged.*/
-    public static void checkoutFileToCurrentCommit(String fileName) {
-        /* but here, we immediately overwrite the file */
-        File file = Utils.join(CWD, fileName);
-        Commit latestCommit = getCurrentLocalBranchHead();
-        if (latestCommit != null) {
-            Map<String, String> commitedFiles = latestCommit.getCommitFiles();
-            for (String filename : commitedFiles.keySet()) {
-                if (filename.equals(fileName)) {
-                    String content = getFileContentFromBlob(commitedFiles.get(filename));
-                    /* if this file exists, we overwrite. Otherwise, there will be new file */
-                    Utils.writeContents(file, content);
-                    return;
+    public void checkoutFileToCurrentCommit(String fileName) {
+        writeCommand("checkoutFileToCurrentCommit", () -> {
+            /* but here, we immediately overwrite the file */
+            File file = Utils.join(cwd, fileName);
+            Commit latestCommit = getCurrentLocalBranchHead();
+            if (latestCommit != null) {
+                Map<String, String> commitedFiles = latestCommit.getCommitFiles();
+                for (String filename : commitedFiles.keySet()) {
+                    if (filename.equals(fileName)) {
+                        /* if this file exists, we overwrite. Otherwise, there will be new file */
+                        writeWorkingFile(file, commitedFiles.get(filename));
+                        return;
+                    }
                 }
+                throw Utils.error(GitletException.Kind.NO_SUCH_FILE,
+                        "File does not exist in that commit.");
             }
-            exitRepository("File does not exist in that commit.");
+        });
+    }
+
+    /* the full id of the commit COMMITID, which may be abbreviated to 8 characters */
+    private String resolveCommitId(String commitId) {
+        if (commitId.length() == 8) {
+            commitId = getLongCommitId(commitId);
         }
+        if (commitId == null || !Utils.join(commitDir, commitId).exists()) {
+            throw Utils.error(GitletException.Kind.NO_SUCH_COMMIT,
+                    "No commit with that id exists.");
+        }
+        return commitId;
     }
 
-    private static String getLongCommitId(String shortCommitId) {
-        List<String> commitIds = Utils.plainFilenamesIn(COMMIT_DIR);
+    private String getLongCommitId(String shortCommitId) {
+        List<String> commitIds = Utils.plainFilenamesIn(commitDir);
         if (commitIds != null) {
             for (String longCommitId : commitIds) {
                 if (longCommitId.substring(0, 8).equals(shortCommitId)) {
@@ -532,31 +927,23 @@ public class Repository {
 
     /* in real git, it won’t do a checkout that would overwrite or undo changes
        sucn as additions or removals that you have staged.*/
-    public static void checkoutFileToGivenCommit(String fileName, String commitId) {
-        File file = Utils.join(CWD, fileName);
-        if (commitId.length() == 8) {
-            commitId = getLongCommitId(commitId);
-        }
-        if (commitId == null) {
-            exitRepository("No commit with that id exists.");
-        }
-        File commitFile = Utils.join(COMMIT_DIR, commitId);
-        if (!commitFile.exists()) {
-            exitRepository("No commit with that id exists.");
-        }
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-        if (commit != null) {
-            Map<String, String> commitedFiles = commit.getCommitFiles();
-            for (String filename : commitedFiles.keySet()) {
-                if (filename.equals(fileName)) {
-                    String content = getFileContentFromBlob(commitedFiles.get(filename));
-                    /* if this file exists, we overwrite. Otherwise, there will be new file */
-                    Utils.writeContents(file, content);
-                    return;
+    public void checkoutFileToGivenCommit(String fileName, String commitId) {
+        writeCommand("checkoutFileToGivenCommit", () -> {
+            File file = Utils.join(cwd, fileName);
+            Commit commit = readCommit(resolveCommitId(commitId));
+            if (commit != null) {
+                Map<String, String> commitedFiles = commit.getCommitFiles();
+                for (String filename : commitedFiles.keySet()) {
+                    if (filename.equals(fileName)) {
+                        /* if this file exists, we overwrite. Otherwise, there will be new file */
+                        writeWorkingFile(file, commitedFiles.get(filename));
+                        return;
+                    }
                 }
+                throw Utils.error(GitletException.Kind.NO_SUCH_FILE,
+                        "File does not exist in that commit.");
             }
-            exitRepository("File does not exist in that commit.");
-        }
+        });
     }
 
     /* Takes all files in the commit at the head of the given branch,
@@ -567,60 +954,63 @@ public class Repository {
        Any files that are tracked in the current branch
        but are not present in the checked-out branch are deleted.
        The staging area is cleared, unless the checked-out branch is the current branch*/
-    public static void checkoutToGivenBranch(String givenBranchName) {
-        if (givenBranchName.equals(currentBranchName)) {
-            exitRepository("No need to checkout the current branch.");
-        }
-        File givenBranchFile = Utils.join(LOCAL_BRANCH_DIR, givenBranchName);
-        if (!givenBranchFile.exists()) {
-            exitRepository("No such branch exists.");
-        }
-        // actually this is cached character
-        String preBranch = currentBranchName;
-        Commit currentCommit = getCurrentLocalBranchHead();
-        // check out to new branch
-        switchToNewBranch(givenBranchName);
-        Commit givenBranchCommit = getCurrentLocalBranchHead();
-        if (currentCommit != null && givenBranchCommit != null) {
-            Map<String, String> currentCommitedFiles = currentCommit.getCommitFiles();
-            Map<String, String> givenCommitedFiles = givenBranchCommit.getCommitFiles();
-            for (String givenCommitFilename : givenCommitedFiles.keySet()) {
-                /* If a working file is untracked in the current branch
-                   and would be overwritten by the checkout,
-                   print the info below, and exit; */
-                if (!currentCommitedFiles.containsKey(givenCommitFilename)) {
-                    // check the content
-                    File file = Utils.join(CWD, givenCommitFilename);
-                    if (file.exists()) {
-                        String currentContent = Utils.readContentsAsString(file);
-                        String oldContent =
-                                getFileContentFromBlob(givenCommitedFiles.get(givenCommitFilename));
-                        if (!currentContent.equals(oldContent)) {
-                            // remember to switch back
-                            switchToNewBranch(preBranch);
-                            exitRepository("There is an untracked file in the way; "
-                                    + "delete it, or add and commit it first.");
+    public void checkoutToGivenBranch(String givenBranchName) {
+        writeCommand("checkoutToGivenBranch", () -> {
+            if (givenBranchName.equals(currentBranchName)) {
+                throw Utils.error("No need to checkout the current branch.");
+            }
+            if (!refs.exists(givenBranchName)) {
+                throw Utils.error(GitletException.Kind.NO_SUCH_BRANCH, "No such branch exists.");
+            }
+            checkNotInOtherWorktree(givenBranchName);
+            // actually this is cached character
+            String preBranch = currentBranchName;
+            Commit currentCommit = getCurrentLocalBranchHead();
+            // check out to new branch
+            switchToNewBranch(givenBranchName);
+            Commit givenBranchCommit = getCurrentLocalBranchHead();
+            if (currentCommit != null && givenBranchCommit != null) {
+                Map<String, String> currentCommitedFiles = currentCommit.getCommitFiles();
+                Map<String, String> givenCommitedFiles = givenBranchCommit.getCommitFiles();
+                for (String givenCommitFilename : givenCommitedFiles.keySet()) {
+                    /* If a working file is untracked in the current branch
+                       and would be overwritten by the checkout,
+                       print the info below, and exit; */
+                    if (!currentCommitedFiles.containsKey(givenCommitFilename)
+                            && isInSparseCheckout(givenCommitFilename)) {
+                        // check the content
+                        File file = Utils.join(cwd, givenCommitFilename);
+                        if (file.exists()) {
+                            if (!getWorkingFileBlobId(givenCommitFilename)
+                                    .equals(givenCommitedFiles.get(givenCommitFilename))) {
+                                // remember to switch back
+                                switchToNewBranch(preBranch);
+                                throw Utils.error(GitletException.Kind.UNTRACKED_FILE,
+                                        "There is an untracked file in the way; "
+                                        + "delete it, or add and commit it first.");
+                            }
                         }
                     }
                 }
+                File file;
+                for (String givenCommitFilename : givenCommitedFiles.keySet()) {
+                    currentCommitedFiles.remove(givenCommitFilename);
+                    if (!isInSparseCheckout(givenCommitFilename)) {
+                        continue;
+                    }
+                    file = Utils.join(cwd, givenCommitFilename);
+                    writeWorkingFile(file, givenCommitedFiles.get(givenCommitFilename));
+                }
+                // delete all un-presented files
+                for (String unPresentFile : currentCommitedFiles.keySet()) {
+                    file = Utils.join(cwd, unPresentFile);
+                    Utils.restrictedDelete(file);
+                }
+                // clear the stage
+                Stage stage = new Stage();
+                StagingIndex.write(stageFile, stage);
             }
-            File file;
-            for (String givenCommitFilename : givenCommitedFiles.keySet()) {
-                file = Utils.join(CWD, givenCommitFilename);
-                String content =
-                        getFileContentFromBlob(givenCommitedFiles.get(givenCommitFilename));
-                Utils.writeContents(file, content);
-                currentCommitedFiles.remove(givenCommitFilename);
-            }
-            // delete all un-presented files
-            for (String unPresentFile : currentCommitedFiles.keySet()) {
-                file = Utils.join(CWD, unPresentFile);
-                Utils.restrictedDelete(file);
-            }
-            // clear the stage
-            Stage stage = new Stage();
-            Utils.writeObject(STAGE_FILE, stage);
-        }
+        });
     }
 
     /* Creates a new branch with the given name,
@@ -629,89 +1019,394 @@ public class Repository {
        This command does NOT immediately switch to the newly created branch
        Before you ever call branch,
        your code should be running with a default branch called master*/
-    public static void createNewBranch(String newBranchName) {
-        File file = Utils.join(LOCAL_BRANCH_DIR, newBranchName);
-        if (file.exists()) {
-            exitRepository("A branch with that name already exists.");
+    public void createNewBranch(String newBranchName) {
+        writeCommand("createNewBranch", () -> {
+            if (refs.exists(newBranchName)) {
+                throw Utils.error("A branch with that name already exists.");
+            }
+            String commitId = getCurrentLocalBranchHeadId();
+            refs.update(newBranchName, commitId);
+            /* a repository with one branch per CI job grows thousands of refs,
+               keep them in packed-refs instead of thousands of tiny files */
+            if (refs.looseRefCount() > RefStore.AUTO_PACK_LIMIT) {
+                refs.pack();
+            }
+        });
+    }
+
+    /* Adds every commit missing from the commit-graph, those made before it existed,
+       like git commit-graph write --changed-paths. Returns how many were added. */
+    public int writeCommitGraph() {
+        return writeCommand("writeCommitGraph", () -> {
+            int added = 0;
+            List<String> commitIds = Utils.plainFilenamesIn(commitDir);
+            if (commitIds != null) {
+                for (String commitId : commitIds) {
+                    if (!commitGraph.contains(commitId)) {
+                        Commit commit = readCommit(commitId);
+                        commitGraph.add(commitId, commit, getParentFiles(commit));
+                        added++;
+                    }
+                }
+            }
+            return added;
+        });
+    }
+
+    /* true if FILENAME matches .gitletignore, an untracked file which status does not show
+       and add refuses */
+    private boolean isIgnored(String fileName) {
+        if (ignoreRules == null) {
+            ignoreRules = GlobRules.read(Utils.join(cwd, IGNORE_FILE));
         }
-        String commitId = getCurrentLocalBranchHeadId();
-        Utils.writeContents(file, commitId);
+        return !ignoreRules.isEmpty() && ignoreRules.matches(fileName);
+    }
+
+    /* true if FILENAME belongs in the working directory, which is always the case
+       unless sparse-checkout patterns are set */
+    private boolean isInSparseCheckout(String fileName) {
+        if (sparseRules == null) {
+            sparseRules = GlobRules.read(sparseCheckoutFile);
+        }
+        return sparseRules.isEmpty() || sparseRules.matches(fileName);
+    }
+
+    /* the sparse-checkout patterns, empty when every file is checked out */
+    public List<String> getSparseCheckoutPatterns() {
+        return readCommand("getSparseCheckoutPatterns", () -> {
+            isInSparseCheckout("");
+            return sparseRules.getPatterns();
+        });
+    }
+
+    /* Like git sparse-checkout set, from now on only the files of the current commit
+       matching one of PATTERNS (see GlobRules) are written into the working directory.
+       Files which leave the sparse checkout are deleted unless they have changes,
+       files which enter it are written. No patterns turns sparse checkout off. */
+    public void setSparseCheckout(List<String> patterns) {
+        writeCommand("setSparseCheckout", () -> {
+            Map<String, String> headFiles = getCurrentLocalBranchHead().getCommitFiles();
+            Set<String> checkedOut = new HashSet<>();
+            for (String fileName : headFiles.keySet()) {
+                if (isInSparseCheckout(fileName)) {
+                    checkedOut.add(fileName);
+                }
+            }
+            if (patterns.isEmpty()) {
+                Utils.notRestrictedDelete(sparseCheckoutFile);
+            } else {
+                Utils.writeContents(sparseCheckoutFile, String.join("\n", patterns) + "\n");
+            }
+            sparseRules = GlobRules.read(sparseCheckoutFile);
+            for (Map.Entry<String, String> entry : headFiles.entrySet()) {
+                String fileName = entry.getKey();
+                File file = Utils.join(cwd, fileName);
+                boolean wanted = isInSparseCheckout(fileName);
+                if (wanted && !checkedOut.contains(fileName) && !file.exists()) {
+                    writeWorkingFile(file, entry.getValue());
+                } else if (!wanted && checkedOut.contains(fileName) && file.exists()
+                        && getWorkingFileBlobId(fileName).equals(entry.getValue())) {
+                    Utils.restrictedDelete(file);
+                }
+            }
+        });
+    }
+
+    /* Like git worktree add, makes DIR a second working directory of this repository
+       with BRANCHNAME checked out. DIR/.gitlet only holds its own HEAD and index,
+       objects and refs stay in this .gitlet, so it costs the working files and no history.
+       A branch can only be checked out in one worktree at a time. */
+    public void addWorktree(File dir, String branchName) {
+        writeCommand("addWorktree", () -> {
+            if (!refs.exists(branchName)) {
+                throw Utils.error(GitletException.Kind.NO_SUCH_BRANCH, "No such branch exists.");
+            }
+            if (branchName.equals(currentBranchName)) {
+                throw Utils.error("That branch is already checked out in another worktree.");
+            }
+            checkNotInOtherWorktree(branchName);
+            File worktreeDir = resolveAgainstWorkingDirectory(dir);
+            String[] existing = worktreeDir.list();
+            if (worktreeDir.isFile() || (existing != null && existing.length > 0)) {
+                throw Utils.error("A non-empty directory with that name already exists.");
+            }
+            String name = worktreeDir.getName();
+            for (int i = 2; Utils.join(worktreesDir, name).exists(); i++) {
+                name = worktreeDir.getName() + i;
+            }
+            File worktreeGitletDir = Utils.join(worktreeDir, ".gitlet");
+            worktreeGitletDir.mkdirs();
+            File registration = Utils.join(worktreesDir, name);
+            registration.mkdirs();
+            Utils.writeContents(Utils.join(registration, "gitdir"), worktreeGitletDir.getPath());
+            Utils.writeContents(Utils.join(worktreeGitletDir, COMMON_DIR_FILE),
+                    commonDir.getPath());
+            Utils.writeContents(Utils.join(worktreeGitletDir, "HEAD"), "ref: "
+                    + branchDir.getName() + "/" + localBranchDir.getName() + "/" + branchName);
+            StagingIndex.write(Utils.join(worktreeGitletDir, "index"), new Stage());
+            Commit commit = readCommit(refs.resolve(branchName));
+            for (Map.Entry<String, String> entry : commit.getCommitFiles().entrySet()) {
+                writeWorkingFile(Utils.join(worktreeDir, entry.getKey()), entry.getValue());
+            }
+        });
+    }
+
+    /* "[working directory] [branch name]" of the main worktree and every linked one */
+    public List<String> listWorktrees() {
+        return readCommand("listWorktrees", () -> {
+            List<String> worktrees = new ArrayList<>();
+            for (File worktreeGitletDir : getAllWorktreeGitletDirs()) {
+                worktrees.add(worktreeGitletDir.getParent() + " "
+                        + readHeadBranch(worktreeGitletDir));
+            }
+            return worktrees;
+        });
+    }
+
+    /* Like git worktree remove, unregisters the worktree in DIR and deletes its .gitlet,
+       the working files are left in place. */
+    public void removeWorktree(File dir) {
+        writeCommand("removeWorktree", () -> {
+            File worktreeGitletDir = Utils.join(resolveAgainstWorkingDirectory(dir), ".gitlet");
+            if (worktreeGitletDir.equals(gitletDir)) {
+                throw Utils.error("Cannot remove the current worktree.");
+            }
+            File registration = findWorktreeRegistration(worktreeGitletDir);
+            if (registration == null) {
+                throw Utils.error("No worktree at that directory.");
+            }
+            deleteDirectory(worktreeGitletDir);
+            deleteDirectory(registration);
+        });
     }
 
-    public static void deleteGivenBranch(String branchName) {
-        if (branchName.equals(currentBranchName)) {
-            exitRepository("Cannot remove the current branch.");
+    /* DIR, relative to the working directory of this repository unless absolute */
+    private File resolveAgainstWorkingDirectory(File dir) {
+        File absolute = dir.isAbsolute() ? dir : new File(cwd, dir.getPath());
+        return absolute.toPath().normalize().toFile();
+    }
+
+    /* the .gitlet of the main worktree, then those of the linked ones */
+    private List<File> getAllWorktreeGitletDirs() {
+        List<File> dirs = new ArrayList<>();
+        dirs.add(commonDir);
+        File[] registrations = worktreesDir.listFiles(File::isDirectory);
+        if (registrations != null) {
+            Arrays.sort(registrations);
+            for (File registration : registrations) {
+                File gitdir = Utils.join(registration, "gitdir");
+                if (gitdir.isFile()) {
+                    dirs.add(new File(Utils.readContentsAsString(gitdir).trim()));
+                }
+            }
         }
-        File file = Utils.join(LOCAL_BRANCH_DIR, branchName);
-        if (!file.exists()) {
-            exitRepository("A branch with that name does not exist.");
+        return dirs;
+    }
+
+    private File findWorktreeRegistration(File worktreeGitletDir) {
+        File[] registrations = worktreesDir.listFiles(File::isDirectory);
+        if (registrations != null) {
+            for (File registration : registrations) {
+                File gitdir = Utils.join(registration, "gitdir");
+                if (gitdir.isFile() && new File(Utils.readContentsAsString(gitdir).trim())
+                        .equals(worktreeGitletDir)) {
+                    return registration;
+                }
+            }
         }
-        Utils.notRestrictedDelete(file);
+        return null;
     }
 
-    /* in real git, this is reset [id] -- hard */
-    public static void resetHard(String commitId) {
-        if (commitId.length() == 8) {
-            commitId = getLongCommitId(commitId);
+    /* the branch in the HEAD file of the .gitlet directory WORKTREEGITLETDIR */
+    private static String readHeadBranch(File worktreeGitletDir) {
+        File head = Utils.join(worktreeGitletDir, "HEAD");
+        if (!head.isFile()) {
+            return "";
         }
-        if (commitId == null) {
-            exitRepository("No commit with that id exists.");
+        String headRef = Utils.readContentsAsString(head).trim();
+        return headRef.substring(headRef.lastIndexOf('/') + 1);
+    }
+
+    /* a branch checked out in another worktree must not move or vanish under it */
+    private void checkNotInOtherWorktree(String branchName) {
+        for (File worktreeGitletDir : getAllWorktreeGitletDirs()) {
+            if (!worktreeGitletDir.equals(gitletDir)
+                    && readHeadBranch(worktreeGitletDir).equals(branchName)) {
+                throw Utils.error("That branch is already checked out in another worktree.");
+            }
         }
-        File file = Utils.join(COMMIT_DIR, commitId);
-        if (!file.exists()) {
-            exitRepository("No commit with that id exists.");
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                Utils.notRestrictedDelete(child);
+            }
         }
-        Commit givenCommit = Utils.readObject(file, Commit.class);
-        Commit currentCommit = getCurrentLocalBranchHead();
-        if (currentCommit != null) {
-            File unpresentFile, presentFile;
-            Map<String, String> currentCommitFiles = currentCommit.getCommitFiles();
-            Map<String, String> givenCommitFiles = givenCommit.getCommitFiles();
-            checkOverwrite(givenCommit, currentCommit);
-            for (String givenFilename : givenCommitFiles.keySet()) {
-                File givenFile = Utils.join(CWD, givenFilename);
-                String content = getFileContentFromBlob(givenCommitFiles.get(givenFilename));
-                Utils.writeContents(givenFile, content);
-            }
-            for (String currentFile : currentCommitFiles.keySet()) {
-                if (!givenCommitFiles.containsKey(currentFile)) {
-                    unpresentFile = Utils.join(CWD, currentFile);
-                    if (unpresentFile.exists()) {
-                        Utils.restrictedDelete(unpresentFile);
+        dir.delete();
+    }
+
+    /* Like git fast-import, reads commits, blobs and branches from IN, see FastImport,
+       and writes them straight into objects; the working directory and index are left alone.
+       Returns the number of commits imported. */
+    public int fastImport(InputStream in) {
+        return writeCommand("fastImport", () -> {
+            try {
+                return new FastImport(this, new BufferedInputStream(in, 1 << 16)).run();
+            } catch (IOException | NumberFormatException e) {
+                throw Utils.error("Cannot read the fast-import stream: %s", e.getMessage());
+            } finally {
+                if (refs.looseRefCount() > RefStore.AUTO_PACK_LIMIT) {
+                    refs.pack();
+                }
+            }
+        });
+    }
+
+    /* Like git fast-export --all, writes the history of every branch to OUT, see FastExport.
+       Returns the number of commits written. */
+    public int fastExport(OutputStream out) {
+        return readCommand("fastExport", () -> {
+            try {
+                return new FastExport(this, largeFiles, out).run();
+            } catch (IOException e) {
+                throw Utils.error("Cannot write the fast-export stream: %s", e.getMessage());
+            }
+        });
+    }
+
+    /* Like git fsck, rehashes every object in parallel and checks that every parent, file
+       and branch head exists, see Fsck. Progress goes to PROGRESS unless it is null. */
+    public FsckReport fsck(PrintStream progress) {
+        return readCommand("fsck", () -> {
+            Map<String, String> branchHeads = new TreeMap<>();
+            for (String branchName : getBranchNames()) {
+                branchHeads.put(branchName, resolveBranch(branchName));
+            }
+            List<Map<String, String>> stagedFiles = new ArrayList<>();
+            for (File worktreeGitletDir : getAllWorktreeGitletDirs()) {
+                File index = Utils.join(worktreeGitletDir, "index");
+                if (index.isFile()) {
+                    stagedFiles.add(StagingIndex.read(index).getAddedFiles());
+                }
+            }
+            return new Fsck(commitDir, blobDir, largeFiles, objectFormat, branchHeads, stagedFiles,
+                    progress).run();
+        });
+    }
+
+    /* the commitId of COMMITISH, a branch name or a full or 8 character commitId */
+    public String resolveCommitish(String commitish) {
+        return readCommand("resolveCommitish", () -> {
+            return refs.exists(commitish) ? refs.resolve(commitish) : resolveCommitId(commitish);
+        });
+    }
+
+    /* Like git archive, writes the files of the commit COMMITID
+       as a FORMAT ("zip" or "tar") archive into OUT. Returns the number of files. */
+    public int archive(String commitId, String format, OutputStream out) {
+        return readCommand("archive", () -> {
+            try {
+                return new Archive(this, largeFiles, out).run(readCommit(commitId), format);
+            } catch (IOException e) {
+                throw Utils.error("Cannot write the archive: %s", e.getMessage());
+            }
+        });
+    }
+
+    SortedSet<String> getBranchNames() {
+        return refs.branchNames();
+    }
+
+    /* the commitId the branch points at, or null if there is no such branch */
+    String resolveBranch(String branchName) {
+        return refs.resolve(branchName);
+    }
+
+    void updateBranch(String branchName, String commitId) {
+        refs.update(branchName, commitId);
+    }
+
+    boolean commitExists(String commitId) {
+        return commitId.length() == objectFormat.hexLength()
+                && Utils.join(commitDir, commitId).isFile();
+    }
+
+    /* like git pack-refs --all, moves every branch into packed-refs */
+    public void packRefs() {
+        writeCommand("packRefs", () -> {
+            refs.pack();
+        });
+    }
+
+    public void deleteGivenBranch(String branchName) {
+        writeCommand("deleteGivenBranch", () -> {
+            if (branchName.equals(currentBranchName)) {
+                throw Utils.error("Cannot remove the current branch.");
+            }
+            if (!refs.exists(branchName)) {
+                throw Utils.error(GitletException.Kind.NO_SUCH_BRANCH,
+                        "A branch with that name does not exist.");
+            }
+            checkNotInOtherWorktree(branchName);
+            refs.delete(branchName);
+        });
+    }
+
+    /* in real git, this is reset [id] -- hard */
+    public void resetHard(String commitId) {
+        writeCommand("resetHard", () -> {
+            String resolvedId = resolveCommitId(commitId);
+            Commit givenCommit = readCommit(resolvedId);
+            Commit currentCommit = getCurrentLocalBranchHead();
+            if (currentCommit != null) {
+                File unpresentFile, presentFile;
+                Map<String, String> currentCommitFiles = currentCommit.getCommitFiles();
+                Map<String, String> givenCommitFiles = givenCommit.getCommitFiles();
+                checkOverwrite(givenCommitFiles, currentCommitFiles);
+                for (String givenFilename : givenCommitFiles.keySet()) {
+                    if (!isInSparseCheckout(givenFilename)) {
+                        continue;
                     }
+                    File givenFile = Utils.join(cwd, givenFilename);
+                    writeWorkingFile(givenFile, givenCommitFiles.get(givenFilename));
                 }
+                for (String currentFile : currentCommitFiles.keySet()) {
+                    if (!givenCommitFiles.containsKey(currentFile)) {
+                        unpresentFile = Utils.join(cwd, currentFile);
+                        if (unpresentFile.exists()) {
+                            Utils.restrictedDelete(unpresentFile);
+                        }
+                    }
 //                else {
-//                    presentFile = Utils.join(CWD, currentFile);
+//                    presentFile = Utils.join(cwd, currentFile);
 //                    String newContent = getFileContentFromBlob(givenCommitFiles.get(currentFile));
 //                    Utils.writeContents(presentFile, newContent);
 //                }
+                }
+                // move the current branch’s head to that commit node
+                writeCurrentCommitIdIntoCurrentLocalBranch(resolvedId);
+                // clear stage
+                Stage stage = readStage();
+                stage.clear();
+                StagingIndex.write(stageFile, stage);
             }
-            // move the current branch’s head to that commit node
-            writeCurrentCommitIdIntoCurrentLocalBranch(commitId);
-            // clear stage
-            Stage stage;
-            if (STAGE_FILE.exists()) {
-                stage = Utils.readObject(STAGE_FILE, Stage.class);
-            } else {
-                stage = new Stage();
-            }
-            stage.clear();
-            Utils.writeObject(STAGE_FILE, stage);
-        }
+        });
     }
 
-    private static void checkOverwrite(Commit givenCommit, Commit currentCommit) {
+    /* throws if checking out GIVENCOMMITFILES would overwrite a file
+       which is not tracked in CURRENTCOMMITFILES */
+    private void checkOverwrite(Map<String, String> givenCommitFiles,
+                                Map<String, String> currentCommitFiles) {
         File untrackedFile;
-        Map<String, String> currentCommitFiles = currentCommit.getCommitFiles();
-        Map<String, String> givenCommitFiles = givenCommit.getCommitFiles();
         for (String givenFile : givenCommitFiles.keySet()) {
-            if (!currentCommitFiles.containsKey(givenFile)) {
-                untrackedFile = Utils.join(CWD, givenFile);
+            if (!currentCommitFiles.containsKey(givenFile) && isInSparseCheckout(givenFile)) {
+                untrackedFile = Utils.join(cwd, givenFile);
                 if (untrackedFile.exists()) {
-                    String newContent = Utils.readContentsAsString(untrackedFile);
-                    String oldContent = getFileContentFromBlob(givenCommitFiles.get(givenFile));
-                    if (!newContent.equals(oldContent)) {
-                        exitRepository("There is an untracked file in the way; "
+                    if (!getWorkingFileBlobId(givenFile).equals(givenCommitFiles.get(givenFile))) {
+                        throw Utils.error(GitletException.Kind.UNTRACKED_FILE,
+                                "There is an untracked file in the way; "
                                 + "delete it, or add and commit it first.");
                     }
                 }
@@ -734,171 +1429,207 @@ public class Repository {
        a file that would be changed by a merge.
        You may do so as well if you want, but we will not test that case.
      * */
-    public static void mergeGivenBranchToCurrent(String givenBranchName) {
-        Stage stage;
-        if (STAGE_FILE.exists()) {
-            stage = Utils.readObject(STAGE_FILE, Stage.class);
-        } else {
-            stage = new Stage();
-        }
-        if (stage.getAddedFiles().size() != 0 || stage.getRemovedFiles().size() != 0) {
-            exitRepository("You have uncommitted changes.");
-        }
-        if (givenBranchName.equals(currentBranchName)) {
-            exitRepository("Cannot merge a branch with itself.");
-        }
-        File branchFile = Utils.join(LOCAL_BRANCH_DIR, givenBranchName);
-        if (!branchFile.exists()) {
-            exitRepository("A branch with that name does not exist.");
-        }
-        /* check overwrite */
-        String currentBranchHeadId = getCurrentLocalBranchHeadId();
-        String givenBranchHeadId = Utils.readContentsAsString(branchFile);
-        Commit currentCommit = getCurrentLocalBranchHead();
-        File givenCommitFile = Utils.join(COMMIT_DIR, givenBranchHeadId);
-        Commit givenCommit = Utils.readObject(givenCommitFile, Commit.class);
-        if (currentCommit != null) {
-            checkOverwrite(givenCommit, currentCommit);
-        }
-        /* find the split point */
-        boolean hasConflict = false;
-        String splitPointId = getSplitPoint(currentBranchHeadId, givenBranchHeadId);
-        /* If the split point is the same commit as the given branch,
-        then we do nothing and operation ends with the message */
-        if (splitPointId.equals(givenBranchHeadId)) {
-            exitRepository("Given branch is an ancestor of the current branch.");
-        }
-        /* If the split point is the current branch
-           then the effect is to check out the given branch
-           and operation ends after printing the message */
-        if (splitPointId.equals(currentBranchHeadId)) {
-            checkoutToGivenBranch(givenBranchName);
-            exitRepository("Current branch fast-forwarded.");
-        }
-        File splitPointFile = Utils.join(COMMIT_DIR, splitPointId);
-        Commit splitPoint = Utils.readObject(splitPointFile, Commit.class);
-        if (currentCommit != null) {
-            Map<String, String> currentCommitFiles = currentCommit.getCommitFiles();
-            Map<String, String> givenCommitFiles = givenCommit.getCommitFiles();
-            Map<String, String> splitPointFiles = splitPoint.getCommitFiles();
-            for (String currentFileName : currentCommitFiles.keySet()) {
-                if (currentCommitFiles.get(currentFileName).equals(
-                        splitPointFiles.getOrDefault(currentFileName, ""))
-                ) {
-                    /* 6.Any files present at the split point,
-                       unmodified in the current branch,
-                       and absent in the given branch
-                       should be removed and untracked. */
-                    if (!givenCommitFiles.containsKey(currentFileName)) {
-                        removeFileFromStageAndCWD(currentFileName);
-                        continue;
-                    }
-                    /* 1.Any files that have been modified in the given branch
-                       since the split point, but not modified in the current branch
-                       since the split point should be changed to their versions
-                       in the given branch,which means
-                       checked out from the commit at the front of the given branch.
-                       These files should then all be automatically staged */
-                    if (!givenCommitFiles.getOrDefault(currentFileName, "").equals(
-                        splitPointFiles.getOrDefault(currentFileName, "")
-                    )) {
-                        checkoutFileToGivenCommit(currentFileName, givenBranchHeadId);
-                        addFileToStage(currentFileName);
-                    }
-                }
-                /* 3.1 Any files that have been modified in both
-                   the current and given branch in the same way,
-                   both files now have the same content or were both removed
-                   are left unchanged by the merge. */
-
-                /* 3.2 If a file was removed from both the current and given branch
-                   but a file of the same name is present in the working directory
-                   it is left alone and continues to be absent,
-                   not tracked nor staged in the merge. */
-
-                /* 4.Any files that were not present at the split point
-                  and are present only in the current branch
-                  should remain as they are. */
-                if (!splitPointFiles.containsKey(currentFileName)
-                        && !givenCommitFiles.containsKey(currentFileName)) {
-                    continue;
-                }
-                /* 8.Any files modified in different ways in the current
-                   and given branches are in conflict. */
-                if (!currentCommitFiles.get(currentFileName).equals(
-                        splitPointFiles.getOrDefault(currentFileName, "")
-                    )
-                    && !givenCommitFiles.getOrDefault(currentFileName, "").equals(
-                        splitPointFiles.getOrDefault(currentFileName, "")
-                    )
-                    && !currentCommitFiles.get(currentFileName).equals(
-                         givenCommitFiles.getOrDefault(currentFileName, "")
-                )) {
-                    hasConflict = true;
-                    handleConflict(currentCommitFiles, givenCommitFiles, currentFileName);
-                }
-
-            }
-            for (String givenCommitFileName : givenCommitFiles.keySet()) {
-                if (splitPointFiles.getOrDefault(givenCommitFileName, "").equals(
-                        givenCommitFiles.get(givenCommitFileName)
-                )) {
-                    /* 7.Any files present at the split point
-                       unmodified in the given branch
-                       and absent in the current branch should remain absent. */
-                    if (!currentCommitFiles.containsKey(givenCommitFileName)) {
-                        continue;
-                    }
-                    /* 2.Any files that have been modified in the current branch
-                       but not in the given branch since the split point
-                       should stay as they are. */
-                    if (!currentCommitFiles.getOrDefault(givenCommitFileName, "").equals(
-                         givenCommitFiles.get(givenCommitFileName)
-                    )) {
-                        continue;
-                    }
+    public MergeResult mergeGivenBranchToCurrent(String givenBranchName) {
+        return writeCommand("mergeGivenBranchToCurrent", () -> {
+            checkNoUncommittedChanges();
+            if (givenBranchName.equals(currentBranchName)) {
+                throw Utils.error("Cannot merge a branch with itself.");
+            }
+            if (!refs.exists(givenBranchName)) {
+                throw Utils.error(GitletException.Kind.NO_SUCH_BRANCH,
+                        "A branch with that name does not exist.");
+            }
+            /* check overwrite */
+            String currentBranchHeadId = getCurrentLocalBranchHeadId();
+            String givenBranchHeadId = refs.resolve(givenBranchName);
+            Commit currentCommit = getCurrentLocalBranchHead();
+            File givenCommitFile = Utils.join(commitDir, givenBranchHeadId);
+            Commit givenCommit = Utils.readObject(givenCommitFile, Commit.class);
+            if (currentCommit != null) {
+                checkOverwrite(givenCommit.getCommitFiles(), currentCommit.getCommitFiles());
+            }
+            /* find the split point */
+            String splitPointId = getSplitPoint(currentBranchHeadId, givenBranchHeadId);
+            /* If the split point is the same commit as the given branch,
+            then we do nothing and operation ends with the message */
+            if (splitPointId.equals(givenBranchHeadId)) {
+                return new MergeResult(MergeResult.Outcome.ALREADY_MERGED, false,
+                        currentBranchHeadId);
+            }
+            /* If the split point is the current branch
+               then the effect is to check out the given branch
+               and operation ends after printing the message */
+            if (splitPointId.equals(currentBranchHeadId)) {
+                checkoutToGivenBranch(givenBranchName);
+                return new MergeResult(MergeResult.Outcome.FAST_FORWARD, false, givenBranchHeadId);
+            }
+            if (currentCommit != null) {
+                Map<String, String> currentCommitFiles = currentCommit.getCommitFiles();
+                Map<String, String> splitPointFiles = readCommit(splitPointId).getCommitFiles();
+                MergeEngine.Result merged = new MergeEngine(this).merge(splitPointFiles,
+                        currentCommitFiles, givenCommit.getCommitFiles());
+                if (merged.getFiles().equals(currentCommitFiles)) {
+                    throw Utils.error("No changes added to the commit.");
                 }
+                // new commit
+                String message = "Merged " + givenBranchName + " into " + currentBranchName + ".";
+                String mergeCommitId = writeNewCommit(message, new Date(), currentBranchHeadId,
+                        givenBranchHeadId, merged.getFiles(), currentCommitFiles);
+                writeCurrentCommitIdIntoCurrentLocalBranch(mergeCommitId);
+                syncWorkingDirectory(currentCommitFiles, merged.getFiles());
+                return new MergeResult(MergeResult.Outcome.MERGED, merged.hasConflict(),
+                        mergeCommitId);
+            }
+            return new MergeResult(MergeResult.Outcome.ALREADY_MERGED, false, currentBranchHeadId);
+        });
+    }
 
-                /* 5.Any files that were not present at the split point
-                   and are present only in the given branch
-                   should be checked out and staged. */
-                if (!currentCommitFiles.containsKey(givenCommitFileName)
-                        && !splitPointFiles.containsKey(givenCommitFileName)) {
-                    checkoutFileToGivenCommit(givenCommitFileName, givenBranchHeadId);
-                    addFileToStage(givenCommitFileName);
+    /* Applies the changes the commit COMMITID made to its parent on top of the current branch,
+       as a new commit with the same message, like git cherry-pick.
+       The three-way merge runs on the file maps of the commits, see MergeEngine,
+       and like merge, conflicts are committed with both versions in the file. */
+    public MergeResult cherryPick(String commitId) {
+        return writeCommand("cherryPick", () -> {
+            checkNoUncommittedChanges();
+            String resolvedId = resolveCommitId(commitId);
+            Commit pickedCommit = readCommit(resolvedId);
+            String currentBranchHeadId = getCurrentLocalBranchHeadId();
+            Map<String, String> currentCommitFiles =
+                    readCommit(currentBranchHeadId).getCommitFiles();
+            MergeEngine.Result picked = new MergeEngine(this).merge(
+                    getParentFiles(pickedCommit), currentCommitFiles,
+                    pickedCommit.getCommitFiles());
+            if (picked.getFiles().equals(currentCommitFiles)) {
+                throw Utils.error("No changes added to the commit.");
+            }
+            checkOverwrite(picked.getFiles(), currentCommitFiles);
+            String newCommitId = writeNewCommit(pickedCommit.getMessage(), new Date(),
+                    currentBranchHeadId, "", picked.getFiles(), currentCommitFiles);
+            writeCurrentCommitIdIntoCurrentLocalBranch(newCommitId);
+            syncWorkingDirectory(currentCommitFiles, picked.getFiles());
+            return new MergeResult(MergeResult.Outcome.MERGED, picked.hasConflict(), newCommitId);
+        });
+    }
+
+    /* Replays the commits of the current branch which are not in the given branch
+       on top of the head of the given branch, and moves the current branch to the last of them.
+       Every commit is merged in memory and written straight into objects,
+       the working directory is only synced once at the end, so replaying N commits
+       costs N commit writes and not N checkouts.
+       Differences from real git:
+       merge commits are dropped, as git rebase does without --rebase-merges,
+       commits whose changes are already in the given branch are skipped,
+       and conflicts do not stop the rebase, they are committed like in merge. */
+    public MergeResult rebase(String givenBranchName) {
+        return writeCommand("rebase", () -> {
+            checkNoUncommittedChanges();
+            if (givenBranchName.equals(currentBranchName)) {
+                throw Utils.error("Cannot rebase a branch onto itself.");
+            }
+            if (!refs.exists(givenBranchName)) {
+                throw Utils.error(GitletException.Kind.NO_SUCH_BRANCH,
+                        "A branch with that name does not exist.");
+            }
+            String currentBranchHeadId = getCurrentLocalBranchHeadId();
+            String givenBranchHeadId = refs.resolve(givenBranchName);
+            String splitPointId = getSplitPoint(currentBranchHeadId, givenBranchHeadId);
+            if (splitPointId.equals(givenBranchHeadId)) {
+                return new MergeResult(MergeResult.Outcome.UP_TO_DATE, false,
+                        currentBranchHeadId);
+            }
+            Map<String, String> currentCommitFiles =
+                    readCommit(currentBranchHeadId).getCommitFiles();
+            Commit givenCommit = readCommit(givenBranchHeadId);
+            if (splitPointId.equals(currentBranchHeadId)) {
+                checkOverwrite(givenCommit.getCommitFiles(), currentCommitFiles);
+                writeCurrentCommitIdIntoCurrentLocalBranch(givenBranchHeadId);
+                syncWorkingDirectory(currentCommitFiles, givenCommit.getCommitFiles());
+                return new MergeResult(MergeResult.Outcome.FAST_FORWARD, false, givenBranchHeadId);
+            }
+
+            /* the commits to replay, oldest first, following first parents
+               until a commit the given branch already contains */
+            Set<String> givenHistory = new HashSet<>();
+            collectHistory(givenBranchHeadId, givenHistory, null);
+            LinkedList<Commit> replayed = new LinkedList<>();
+            Map<String, Commit> loadedCommits = new HashMap<>();
+            String commitId = currentBranchHeadId;
+            while (!commitId.equals("") && !givenHistory.contains(commitId)) {
+                Commit commit = readCommit(commitId);
+                loadedCommits.put(commitId, commit);
+                if (commit.getSecondParentCommitId().equals("")) {
+                    replayed.addFirst(commit);
                 }
+                commitId = commit.getParentCommitId();
+            }
 
-                /* 8.Any files modified in different ways in the current
-                   and given branches are in conflict. */
-                if (!currentCommitFiles.getOrDefault(givenCommitFileName, "").equals(
-                        splitPointFiles.getOrDefault(givenCommitFileName, "")
-                    )
-                        && !givenCommitFiles.get(givenCommitFileName).equals(
-                        splitPointFiles.getOrDefault(givenCommitFileName, "")
-                    )
-                        && !currentCommitFiles.getOrDefault(givenCommitFileName, "").equals(
-                        givenCommitFiles.get(givenCommitFileName)
-                )) {
-                    hasConflict = true;
-                    handleConflict(currentCommitFiles, givenCommitFiles, givenCommitFileName);
+            MergeEngine engine = new MergeEngine(this);
+            String newHeadId = givenBranchHeadId;
+            Map<String, String> newHeadFiles = givenCommit.getCommitFiles();
+            boolean hasConflict = false;
+            for (Commit commit : replayed) {
+                Commit parent = loadedCommits.get(commit.getParentCommitId());
+                Map<String, String> parentFiles = parent != null
+                        ? parent.getCommitFiles() : getParentFiles(commit);
+                MergeEngine.Result replay = engine.merge(parentFiles, newHeadFiles,
+                        commit.getCommitFiles());
+                if (replay.getFiles().equals(newHeadFiles)) {
+                    continue;
                 }
+                hasConflict |= replay.hasConflict();
+                newHeadId = writeNewCommit(commit.getMessage(), new Date(), newHeadId, "",
+                        replay.getFiles(), newHeadFiles);
+                newHeadFiles = replay.getFiles();
             }
+            checkOverwrite(newHeadFiles, currentCommitFiles);
+            writeCurrentCommitIdIntoCurrentLocalBranch(newHeadId);
+            syncWorkingDirectory(currentCommitFiles, newHeadFiles);
+            return new MergeResult(MergeResult.Outcome.MERGED, hasConflict, newHeadId);
+        });
+    }
 
+    private void checkNoUncommittedChanges() {
+        Stage stage = readStage();
+        if (!stage.isEmpty()) {
+            throw Utils.error(GitletException.Kind.UNCOMMITTED_CHANGES,
+                    "You have uncommitted changes.");
+        }
+    }
 
-            if (hasConflict) {
-                System.out.println("Encountered a merge conflict.");
+    /* the files of the first parent of COMMIT, none for the initial commit */
+    private Map<String, String> getParentFiles(Commit commit) {
+        if (commit.getParentCommitId().equals("")) {
+            return new HashMap<>();
+        }
+        return readCommit(commit.getParentCommitId()).getCommitFiles();
+    }
+
+    /* Turns the working directory from the files of FROMFILES into those of TOFILES.
+       Only files whose blob changed are written, and files absent from TOFILES are deleted. */
+    private void syncWorkingDirectory(Map<String, String> fromFiles,
+                                      Map<String, String> toFiles) {
+        for (Map.Entry<String, String> entry : toFiles.entrySet()) {
+            if (!isInSparseCheckout(entry.getKey())) {
+                continue;
+            }
+            File file = Utils.join(cwd, entry.getKey());
+            if (!entry.getValue().equals(fromFiles.get(entry.getKey())) || !file.exists()) {
+                writeWorkingFile(file, entry.getValue());
+            }
+        }
+        for (String fileName : fromFiles.keySet()) {
+            File file = Utils.join(cwd, fileName);
+            if (!toFiles.containsKey(fileName) && file.exists()) {
+                Utils.restrictedDelete(file);
             }
-            // new commit
-            String message = "Merged " + givenBranchName + " into " + currentBranchName + ".";
-            clearStageAndCommit(message, new Date(), givenBranchHeadId);
         }
     }
 
-//    private static String getSplitPoint(String currentBranchHeadId, String givenBranchHeadId) {
+//    private String getSplitPoint(String currentBranchHeadId, String givenBranchHeadId) {
 //        List<String> currenBranchNode = new ArrayList<>();
 //        while (!currentBranchHeadId.equals("")) {
 //            currenBranchNode.add(currentBranchHeadId);
-//            File file = Utils.join(COMMIT_DIR, currentBranchHeadId);
+//            File file = Utils.join(commitDir, currentBranchHeadId);
 //            Commit commit = Utils.readObject(file, Commit.class);
 //            currentBranchHeadId = commit.getParentCommitId();
 //        }
@@ -906,77 +1637,53 @@ public class Repository {
 //            if (currenBranchNode.contains(givenBranchHeadId)) {
 //                return givenBranchHeadId;
 //            }
-//            File file = Utils.join(COMMIT_DIR, givenBranchHeadId);
+//            File file = Utils.join(commitDir, givenBranchHeadId);
 //            Commit commit = Utils.readObject(file, Commit.class);
 //            givenBranchHeadId = commit.getParentCommitId();
 //        }
 //        return "";
 //    }
 
-    private static String getSplitPoint(String currentBranchHeadId, String givenBranchHeadId) {
-        List<Commit> splits = new ArrayList<>();
+    private String getSplitPoint(String currentBranchHeadId, String givenBranchHeadId) {
+        Map<String, Long> splits = new HashMap<>();
         Set<String> commits = new HashSet<>();
-        dfs(currentBranchHeadId, commits, splits);
-        dfs(givenBranchHeadId, commits, splits);
-        Commit splitPoint =  splits.stream()
-                .max(Comparator.comparing(Commit::getTimestamp))
-                .get();
-        return Utils.sha1(splitPoint.getMessage() + splitPoint.getTimestamp().toString());
-    }
-
-    private static void dfs(String commitId, Set<String> commits, List<Commit> splits) {
-        if (commitId.equals("")) {
-            return;
-        }
-        File file = Utils.join(COMMIT_DIR, commitId);
-        Commit commit = Utils.readObject(file, Commit.class);
-        if (commits.contains(commitId)) {
-            if (splits != null) {
-                splits.add(commit);
-            }
-            return;
-        }
-        commits.add(commitId);
-        dfs(commit.getParentCommitId(), commits, splits);
-        dfs(commit.getSecondParentCommitId(), commits, splits);
-    }
-
-    private static void handleConflict(
-            Map<String, String> currentCommitFiles,
-            Map<String, String> givenCommitFiles,
-            String filename
-    ) {
-        String currentContent;
-        String givenContent;
-        File blobFile;
-        Blob blob;
-        if (currentCommitFiles.containsKey(filename)) {
-            blobFile = Utils.join(BLOB_DIR, currentCommitFiles.get(filename));
-            blob = Utils.readObject(blobFile, Blob.class);
-            currentContent = blob.getContent();
-        } else {
-            currentContent = "";
+        collectHistory(currentBranchHeadId, commits, splits);
+        collectHistory(givenBranchHeadId, commits, splits);
+        return splits.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .get().getKey();
+    }
+
+    /* Adds every commit reachable from HEADID to COMMITS. A commit reached when it is
+       already in COMMITS is put into SPLITS, if not null, with its time in milliseconds.
+       The walk keeps its own stack, so long histories cannot overflow the call stack,
+       and takes parents from the commit-graph when it has the commit, reading a commit
+       otherwise, but only the first time it is reached. */
+    private void collectHistory(String headId, Set<String> commits, Map<String, Long> splits) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(headId);
+        while (!pending.isEmpty()) {
+            String commitId = pending.pop();
+            if (commitId.equals("")) {
+                continue;
+            }
+            if (!commits.add(commitId)) {
+                if (splits != null && !splits.containsKey(commitId)) {
+                    CommitGraph.Node node = commitGraph.get(commitId);
+                    splits.put(commitId, node != null ? node.getTimestamp()
+                            : readCommit(commitId).getTimestamp().getTime());
+                }
+                continue;
+            }
+            CommitGraph.Node node = commitGraph.get(commitId);
+            if (node != null) {
+                pending.push(node.getSecondParentId());
+                pending.push(node.getParentId());
+            } else {
+                Commit commit = readCommit(commitId);
+                pending.push(commit.getSecondParentCommitId());
+                pending.push(commit.getParentCommitId());
+            }
         }
-        if (givenCommitFiles.containsKey(filename)) {
-            blobFile = Utils.join(BLOB_DIR, givenCommitFiles.get(filename));
-            blob = Utils.readObject(blobFile, Blob.class);
-            givenContent = blob.getContent();
-        } else {
-            givenContent = "";
-        }
-        StringBuilder sb = new StringBuilder();
-        sb.append("<<<<<<< HEAD\n");
-        sb.append(currentContent);
-        sb.append("=======\n");
-        sb.append(givenContent);
-        sb.append(">>>>>>>\n");
-        File newConflictFile = Utils.join(CWD, filename);
-        Utils.writeContents(newConflictFile, sb.toString());
-        addFileToStage(filename);
-    }
-
-    public static void exitRepository(String message) {
-        System.out.println(message);
-        System.exit(0);
     }
 }
@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/*  Builds synthetic gitlet repositories for benchmarks.
+ *  The objects are written straight into .gitlet in the same layout and format as Repository,
+ *  so a repository with thousands of commits is generated in seconds
+ *  instead of running add and commit for every file of every revision.
+ *
+ *  The generated history is
+ *      initial commit -> a commit adding FILES files -> COMMITS - 1 commits changing
+ *  CHANGESPERCOMMIT files each
+ *  on master, BRANCHES branches "branch-i" forking from random commits of master,
+ *  each with BRANCHCOMMITS commits of its own, and MERGES of them merged back into master.
+ *  Finally MERGETARGETS branches "bench-merge-i" fork from the head of master,
+ *  each changing one of the last files, which no other bench-merge branch touches,
+ *  so that every one of them can be merged into master later.
+ *  The working directory holds the files of master, and the staging area is empty.
+ *  Objects are named by FORMAT, as if the repository was made by init --object-format.
+ *  @author LMS
+ */
+class RepositoryGenerator {
+    /* dates of generated commits start here and advance one second per commit */
+    private static final long BASE_TIME = 1600000000000L;
+
+    int files = 1000;
+    int fileSize = 256;
+    int commits = 10;
+    int changesPerCommit = 10;
+    int branches = 2;
+    int branchCommits = 3;
+    int merges = 1;
+    int mergeTargets = 5;
+    long seed = 61;
+    ObjectFormat format = ObjectFormat.SHA1;
+
+    private Random random;
+    private int commitCounter;
+    private File commitDir;
+    private File blobDir;
+    private File headsDir;
+    private CommitGraph commitGraph;
+
+    /* Generates the repository in DIR, which must not contain a .gitlet directory yet.
+       Returns the commitId of the head of master. */
+    String generate(File dir) {
+        File gitletDir = Utils.join(dir, ".gitlet");
+        if (gitletDir.exists()) {
+            throw Utils.error("%s already contains a repository", dir);
+        }
+        File objectDir = Utils.join(gitletDir, "objects");
+        commitDir = Utils.join(objectDir, "commits");
+        blobDir = Utils.join(objectDir, "blobs");
+        headsDir = Utils.join(gitletDir, "refs", "heads");
+        commitDir.mkdirs();
+        blobDir.mkdirs();
+        headsDir.mkdirs();
+        format.write(gitletDir);
+        commitGraph = new CommitGraph(Utils.join(gitletDir, "commit-graph"));
+        random = new Random(seed);
+        commitCounter = 0;
+
+        /* the same initial commit as Repository.initRepository */
+        Date initDate = new Date(0);
+        String initMessage = "initial commit";
+        Commit initCommit = new Commit(initMessage, initDate, "", "");
+        String initId = initCommit.computeId(format);
+        writeCommit(initId, initCommit);
+        commitGraph.add(initId, initCommit, new HashMap<>());
+
+        List<String> fileNames = new ArrayList<>();
+        Map<String, String> masterFiles = new HashMap<>();
+        for (int i = 0; i < files; i++) {
+            String fileName = String.format("f%07d.txt", i);
+            fileNames.add(fileName);
+            masterFiles.put(fileName, writeBlob(fileName, randomContent()));
+        }
+        List<String> masterLine = new ArrayList<>();
+        List<Map<String, String>> masterSnapshots = new ArrayList<>();
+        String head = newCommit("generated files", initId, "", masterFiles, new HashMap<>());
+        masterLine.add(head);
+        masterSnapshots.add(masterFiles);
+        for (int i = 1; i < commits; i++) {
+            Map<String, String> parentFiles = masterFiles;
+            masterFiles = change(masterFiles, fileNames, changesPerCommit);
+            head = newCommit("generated commit " + i, head, "", masterFiles, parentFiles);
+            masterLine.add(head);
+            masterSnapshots.add(masterFiles);
+        }
+
+        List<String> branchHeads = new ArrayList<>();
+        List<Map<String, String>> branchSnapshots = new ArrayList<>();
+        for (int b = 0; b < branches; b++) {
+            int forkPoint = random.nextInt(masterLine.size());
+            String branchHead = masterLine.get(forkPoint);
+            Map<String, String> branchFiles = masterSnapshots.get(forkPoint);
+            for (int i = 0; i < branchCommits; i++) {
+                Map<String, String> parentFiles = branchFiles;
+                branchFiles = change(branchFiles, fileNames, changesPerCommit);
+                branchHead = newCommit("branch " + b + " commit " + i, branchHead, "",
+                        branchFiles, parentFiles);
+            }
+            writeRef("branch-" + b, branchHead);
+            branchHeads.add(branchHead);
+            branchSnapshots.add(branchFiles);
+        }
+        for (int m = 0; m < Math.min(merges, branches); m++) {
+            /* the branch wins every file, good enough for a synthetic history */
+            Map<String, String> parentFiles = masterFiles;
+            masterFiles = new HashMap<>(masterFiles);
+            masterFiles.putAll(branchSnapshots.get(m));
+            head = newCommit("Merged branch-" + m + " into master.",
+                    head, branchHeads.get(m), masterFiles, parentFiles);
+        }
+
+        for (int t = 0; t < mergeTargets && files > 0; t++) {
+            String fileName = fileNames.get(files - 1 - t % files);
+            Map<String, String> targetFiles = new HashMap<>(masterFiles);
+            targetFiles.put(fileName, writeBlob(fileName, randomContent()));
+            writeRef("bench-merge-" + t,
+                    newCommit("bench merge " + t, head, "", targetFiles, masterFiles));
+        }
+
+        writeRef("master", head);
+        Utils.writeContents(Utils.join(gitletDir, "HEAD"), "ref: refs/heads/master");
+        StagingIndex.write(Utils.join(gitletDir, "index"), new Stage());
+        for (Map.Entry<String, String> entry : masterFiles.entrySet()) {
+            Blob blob = Utils.readObject(Utils.join(blobDir, entry.getValue()), Blob.class);
+            Utils.writeContents(Utils.join(dir, entry.getKey()), blob.getContent());
+        }
+        return head;
+    }
+
+    /* a copy of FILESMAP with COUNT random files given new contents */
+    private Map<String, String> change(Map<String, String> filesMap,
+                                       List<String> fileNames, int count) {
+        Map<String, String> changed = new HashMap<>(filesMap);
+        for (int i = 0; i < count && !fileNames.isEmpty(); i++) {
+            String fileName = fileNames.get(random.nextInt(fileNames.size()));
+            changed.put(fileName, writeBlob(fileName, randomContent()));
+        }
+        return changed;
+    }
+
+    private String newCommit(String message, String parentId, String secondParentId,
+                             Map<String, String> filesMap, Map<String, String> parentFiles) {
+        Date date = new Date(BASE_TIME + 1000L * commitCounter++);
+        Commit commit = new Commit(message, date, parentId, secondParentId);
+        commit.setCommitFiles(new HashMap<>(filesMap));
+        String commitId = commit.computeId(format);
+        writeCommit(commitId, commit);
+        commitGraph.add(commitId, commit, parentFiles);
+        return commitId;
+    }
+
+    private void writeCommit(String commitId, Commit commit) {
+        Utils.writeObject(Utils.join(commitDir, commitId), commit);
+    }
+
+    private String writeBlob(String fileName, String content) {
+        String blobId = format.hash(fileName + content);
+        Utils.writeObject(Utils.join(blobDir, blobId), new Blob(content));
+        return blobId;
+    }
+
+    private void writeRef(String branchName, String commitId) {
+        Utils.writeContents(Utils.join(headsDir, branchName), commitId);
+    }
+
+    /* FILESIZE printable characters in lines of at most 64 */
+    private String randomContent() {
+        StringBuilder sb = new StringBuilder(fileSize);
+        for (int i = 0; i < fileSize; i++) {
+            if (i % 64 == 63 || i == fileSize - 1) {
+                sb.append('\n');
+            } else {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,202 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*  A reader/writer lock on the whole .gitlet directory, shared by every gitlet process.
+ *  Read-only commands (log, status, find ...) take a shared lock,
+ *  so any number of them can run at the same time,
+ *  while commands that write the index, refs or objects take an exclusive lock
+ *  and wait until every reader and writer has finished.
+ *  Every public command of Repository takes it, so Main and any other user of the
+ *  Repository API are protected alike; a command called by another command of the
+ *  same Repository (merge checking out a branch) runs under the lock already held.
+ *
+ *  The lock is held on file "repo.lock" through FileChannel.lock,
+ *  so it is released by the operating system when the JVM exits,
+ *  even when a command ends through System.exit in the middle of its work.
+ *  A JVM can only hold one FileChannel lock on a file, so the Repositories of one JVM
+ *  first take a ReentrantReadWriteLock of that file; the first one in takes the file lock
+ *  for all of them and the last one out releases it.
+ *  A lock not granted within the timeout, if one is set, fails with Kind.LOCK_HELD.
+ *  @author LMS
+ */
+class RepositoryLock implements AutoCloseable {
+    /* lock file under the .gitlet directory */
+    static final String LOCK_FILE_NAME = "repo.lock";
+
+    /* how often a lock held by another process is tried again while there is a timeout */
+    private static final long POLL_MILLIS = 10;
+
+    /* the lock files this JVM uses, by canonical path */
+    private static final Map<String, SharedFile> FILES = new ConcurrentHashMap<>();
+
+    /* the lock file and the locks on it of every Repository of this JVM */
+    private static class SharedFile {
+        private final ReentrantReadWriteLock threads = new ReentrantReadWriteLock();
+
+        /* Repositories holding the lock, the file lock is held while this is not 0 */
+        private int holders = 0;
+
+        private RandomAccessFile file;
+
+        private FileLock fileLock;
+    }
+
+    private final File lockFile;
+
+    /* what this Repository holds, null when it holds nothing */
+    private SharedFile held;
+
+    private Lock heldThreadLock;
+
+    private boolean heldShared;
+
+    /* commands of this Repository running under the lock, nested ones included */
+    private int depth = 0;
+
+    /* how long acquire waits, forever when negative */
+    private long timeoutMillis = -1;
+
+    /* the lock of the .gitlet directory GITLETDIR, which need not exist yet */
+    RepositoryLock(File gitletDir) {
+        lockFile = Utils.join(gitletDir, LOCK_FILE_NAME);
+    }
+
+    /* Sets how long acquire waits for the lock, TIMEOUTMILLIS < 0 to wait forever */
+    void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /* Blocks until the lock is granted, and returns this lock to close when done.
+       a SHARED lock may be held by many commands at once, an exclusive lock by only one */
+    RepositoryLock acquire(boolean shared) {
+        if (depth > 0) {
+            if (heldShared && !shared) {
+                throw new IllegalStateException("a read-only command cannot run one which writes");
+            }
+            depth++;
+            return this;
+        }
+        SharedFile sharedFile = FILES.computeIfAbsent(canonicalPath(), path -> new SharedFile());
+        Lock threadLock = shared ? sharedFile.threads.readLock() : sharedFile.threads.writeLock();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lockThread(threadLock);
+        try {
+            synchronized (sharedFile) {
+                if (sharedFile.holders == 0) {
+                    lockFile(sharedFile, shared, deadline);
+                }
+                sharedFile.holders++;
+            }
+        } catch (RuntimeException excp) {
+            threadLock.unlock();
+            throw excp;
+        }
+        held = sharedFile;
+        heldThreadLock = threadLock;
+        heldShared = shared;
+        depth = 1;
+        return this;
+    }
+
+    /* true while the lock is held by a single command, not by a command it called */
+    boolean isOutermost() {
+        return depth == 1;
+    }
+
+    private void lockThread(Lock threadLock) {
+        if (timeoutMillis < 0) {
+            threadLock.lock();
+            return;
+        }
+        try {
+            if (!threadLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw lockHeld();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw lockHeld();
+        }
+    }
+
+    /* takes the file lock, polling it until DEADLINE when there is a timeout */
+    private void lockFile(SharedFile sharedFile, boolean shared, long deadline) {
+        try {
+            RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+            try {
+                FileChannel channel = file.getChannel();
+                FileLock fileLock;
+                if (timeoutMillis < 0) {
+                    fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+                } else {
+                    fileLock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                    while (fileLock == null) {
+                        if (System.nanoTime() - deadline >= 0) {
+                            throw lockHeld();
+                        }
+                        Thread.sleep(POLL_MILLIS);
+                        fileLock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                    }
+                }
+                sharedFile.fileLock = fileLock;
+                sharedFile.file = file;
+            } catch (IOException | RuntimeException excp) {
+                file.close();
+                throw excp;
+            } catch (InterruptedException excp) {
+                file.close();
+                Thread.currentThread().interrupt();
+                throw lockHeld();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Unable to lock the repository: %s", excp.getMessage());
+        }
+    }
+
+    private GitletException lockHeld() {
+        return Utils.error(GitletException.Kind.LOCK_HELD,
+                "Another gitlet command is using the repository.");
+    }
+
+    /* leaves the command which acquired this lock last, releasing it after the outermost one */
+    @Override
+    public void close() {
+        if (--depth > 0) {
+            return;
+        }
+        SharedFile sharedFile = held;
+        held = null;
+        try {
+            synchronized (sharedFile) {
+                if (--sharedFile.holders == 0) {
+                    sharedFile.fileLock.release();
+                    sharedFile.file.close();
+                    sharedFile.fileLock = null;
+                    sharedFile.file = null;
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Unable to unlock the repository: %s", excp.getMessage());
+        } finally {
+            heldThreadLock.unlock();
+            heldThreadLock = null;
+        }
+    }
+
+    private String canonicalPath() {
+        try {
+            return lockFile.getCanonicalPath();
+        } catch (IOException excp) {
+            return lockFile.getAbsolutePath();
+        }
+    }
+}
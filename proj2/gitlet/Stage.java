@@ -1,53 +1,165 @@
 package gitlet;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /*
 * staging area
-* all stage data in file "index"
+* all stage data in file "index", read and written by StagingIndex
+* Paths are looked up in the sorted entries of the index file, which are only decoded
+* when the whole staging area is asked for, and every change on top of them is kept
+* in CHANGES, so StagingIndex can append just the changes made since it was read.
 * @author: LMS
 * */
-public class Stage implements Serializable {
-    /* <K, V> --> <fileName, blobId> */
-    private Map<String, String> addedFiles;
+public class Stage {
+    /* the state of a path staged for removal, any other state is a blobId or UNSTAGED */
+    static final String REMOVED = "-";
 
-    private List<String> removedFiles;
+    /* the state of a path which is neither staged for addition nor for removal */
+    static final String UNSTAGED = "";
+
+    /* the entries of the index file when it was read, null if there were none */
+    private StagingIndex.Entries base;
+
+    /* <fileName, state> of every entry of BASE, decoded the first time the whole stage is read */
+    private Map<String, String> decodedBase;
+
+    /* <fileName, state> overriding BASE, sorted */
+    private final SortedMap<String, String> changes = new TreeMap<>();
+
+    /* <fileName, state> of the changes made since the index was read, in order */
+    private final Map<String, String> pending = new LinkedHashMap<>();
+
+    private boolean cleared = false;
 
     public Stage() {
-        addedFiles = new HashMap<>();
-        removedFiles = new ArrayList<>();
     }
 
+    Stage(StagingIndex.Entries base) {
+        this.base = base;
+    }
+
+    /* <K, V> --> <fileName, blobId>, a copy */
     public Map<String, String> getAddedFiles() {
-        return this.addedFiles;
+        Map<String, String> addedFiles = new HashMap<>();
+        for (Map.Entry<String, String> entry : decodeBase().entrySet()) {
+            if (!entry.getValue().equals(REMOVED)) {
+                addedFiles.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            addedFiles.remove(change.getKey());
+            if (!change.getValue().equals(REMOVED) && !change.getValue().equals(UNSTAGED)) {
+                addedFiles.put(change.getKey(), change.getValue());
+            }
+        }
+        return addedFiles;
     }
 
+    /* the files staged for removal, sorted, a copy */
     public List<String> getRemovedFiles() {
-        return this.removedFiles;
+        SortedSet<String> removedFiles = new TreeSet<>();
+        for (Map.Entry<String, String> entry : decodeBase().entrySet()) {
+            if (entry.getValue().equals(REMOVED)) {
+                removedFiles.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue().equals(REMOVED)) {
+                removedFiles.add(change.getKey());
+            } else {
+                removedFiles.remove(change.getKey());
+            }
+        }
+        return new ArrayList<>(removedFiles);
+    }
+
+    /* the blobId FILENAME is staged with, null if it is not staged for addition */
+    public String getStagedBlobId(String fileName) {
+        String state = getState(fileName);
+        return state.equals(REMOVED) || state.equals(UNSTAGED) ? null : state;
+    }
+
+    public boolean isStagedForRemoval(String fileName) {
+        return getState(fileName).equals(REMOVED);
+    }
+
+    /* true if nothing is staged, without decoding the whole index */
+    public boolean isEmpty() {
+        if (base != null && base.size() > changes.size()) {
+            return false;
+        }
+        return getAddedFiles().isEmpty() && getRemovedFiles().isEmpty();
     }
 
     public void clear() {
-        this.addedFiles = new HashMap<>();
-        this.removedFiles = new ArrayList<>();
+        base = null;
+        decodedBase = null;
+        changes.clear();
+        pending.clear();
+        cleared = true;
     }
 
     public void addFileToStage(String fileName, String blobId) {
-        addedFiles.put(fileName, blobId);
+        setState(fileName, blobId);
     }
 
     public void removeFileOutOfStage(String fileName) {
-        addedFiles.remove(fileName);
+        if (getStagedBlobId(fileName) != null) {
+            setState(fileName, UNSTAGED);
+        }
     }
 
     public void removeFileForRemoval(String filename) {
-        removedFiles.add(filename);
+        setState(filename, REMOVED);
     }
 
     public void removeFileOutOfRemoval(String fileName) {
-        removedFiles.remove(fileName);
+        if (isStagedForRemoval(fileName)) {
+            setState(fileName, UNSTAGED);
+        }
+    }
+
+    /* the blobId, REMOVED or UNSTAGED */
+    String getState(String fileName) {
+        String state = changes.get(fileName);
+        if (state != null) {
+            return state;
+        }
+        state = base == null ? null : base.get(fileName);
+        return state == null ? UNSTAGED : state;
+    }
+
+    private Map<String, String> decodeBase() {
+        if (decodedBase == null) {
+            decodedBase = base == null ? new HashMap<>() : base.decodeAll();
+        }
+        return decodedBase;
+    }
+
+    /* a change read back from the overlay of the index file, not pending */
+    void applyOverlay(String fileName, String state) {
+        changes.put(fileName, state);
+    }
+
+    private void setState(String fileName, String state) {
+        changes.put(fileName, state);
+        pending.put(fileName, state);
+    }
+
+    StagingIndex.Entries getBase() {
+        return base;
+    }
+
+    SortedMap<String, String> getChanges() {
+        return changes;
+    }
+
+    Map<String, String> getPending() {
+        return pending;
+    }
+
+    /* true if clear was called, the index file has to be rewritten */
+    boolean wasCleared() {
+        return cleared;
     }
 }
@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*  Reads and writes the staging area of a worktree, .gitlet/index, in two files.
+ *
+ *  index holds every staged path, sorted by its UTF-8 bytes, in fixed size entries
+ *      header: "GLIX"  version (int)  entry count (int)
+ *      entry:  path offset (int)  path length (short)  state (byte)
+ *              id length (byte)  id (32 bytes)
+ *      the paths, one after another, UTF-8
+ *  where the state is ADDED with the raw bytes of the blobId, or REMOVED.
+ *  It is memory-mapped when read, and a path is found by binary search over the entries,
+ *  so a command staging one file never decodes the others.
+ *
+ *  index.split holds the changes made since index was written, one per line,
+ *      A [blobId] [path]       R [path]       U [path]   (neither staged nor removed)
+ *  Writing a staging area appends its new changes there, and index is only rewritten
+ *  when the staging area was cleared or index.split holds more than a fraction of index,
+ *  so staging one file in a staging area of 200k paths writes one line.
+ *  An index written by Java serialization, as gitlet did before, is still read.
+ *  @author LMS
+ */
+class StagingIndex {
+    private static final byte[] MAGIC = "GLIX".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int ID_BYTES = 32;
+
+    private static final int ENTRY_SIZE = 4 + 2 + 1 + 1 + ID_BYTES;
+
+    private static final byte ADDED = 1;
+
+    private static final byte REMOVED = 2;
+
+    /* index.split may hold this many changes, or one per OVERLAY_RATIO entries of index */
+    private static final int MIN_OVERLAY = 256;
+
+    private static final int OVERLAY_RATIO = 8;
+
+    /* the staging area in INDEXFILE, empty if there is none */
+    static Stage read(File indexFile) {
+        if (!indexFile.isFile()) {
+            return new Stage();
+        }
+        Stage stage;
+        Entries base = Entries.map(indexFile);
+        if (base != null) {
+            stage = new Stage(base);
+        } else {
+            stage = readLegacy(indexFile);
+        }
+        File overlay = overlayFile(indexFile);
+        if (overlay.isFile()) {
+            for (String line : Utils.readContentsAsString(overlay).split("\n")) {
+                applyOverlayLine(stage, line);
+            }
+        }
+        return stage;
+    }
+
+    /* writes the changes made to STAGE since it was read into INDEXFILE */
+    static void write(File indexFile, Stage stage) {
+        Entries base = stage.getBase();
+        int overlayLimit = Math.max(MIN_OVERLAY,
+                base == null ? 0 : base.size() / OVERLAY_RATIO);
+        if (stage.wasCleared() || base == null || stage.getChanges().size() > overlayLimit) {
+            rewrite(indexFile, stage);
+            return;
+        }
+        if (stage.getPending().isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, String> change : stage.getPending().entrySet()) {
+            String state = change.getValue();
+            if (state.equals(Stage.REMOVED)) {
+                lines.append("R ");
+            } else if (state.equals(Stage.UNSTAGED)) {
+                lines.append("U ");
+            } else {
+                lines.append("A ").append(state).append(' ');
+            }
+            lines.append(change.getKey()).append('\n');
+        }
+        Utils.appendContents(overlayFile(indexFile), lines.toString());
+        stage.getPending().clear();
+    }
+
+    /* writes every staged path of STAGE into a new index, and drops index.split */
+    private static void rewrite(File indexFile, Stage stage) {
+        SortedMap<byte[], String> entries = new TreeMap<>(StagingIndex::compareBytes);
+        for (Map.Entry<String, String> added : stage.getAddedFiles().entrySet()) {
+            entries.put(added.getKey().getBytes(StandardCharsets.UTF_8), added.getValue());
+        }
+        for (String removed : stage.getRemovedFiles()) {
+            entries.put(removed.getBytes(StandardCharsets.UTF_8), Stage.REMOVED);
+        }
+        int pathBytes = 0;
+        for (byte[] path : entries.keySet()) {
+            pathBytes += path.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.size() * ENTRY_SIZE
+                + pathBytes);
+        buffer.put(MAGIC).putInt(VERSION).putInt(entries.size());
+        int pathOffset = HEADER_SIZE + entries.size() * ENTRY_SIZE;
+        for (Map.Entry<byte[], String> entry : entries.entrySet()) {
+            byte[] path = entry.getKey();
+            buffer.putInt(pathOffset).putShort((short) path.length);
+            pathOffset += path.length;
+            if (entry.getValue().equals(Stage.REMOVED)) {
+                buffer.put(REMOVED).put((byte) 0).put(new byte[ID_BYTES]);
+            } else {
+                byte[] id = fromHex(entry.getValue());
+                buffer.put(ADDED).put((byte) id.length).put(id)
+                        .put(new byte[ID_BYTES - id.length]);
+            }
+        }
+        for (byte[] path : entries.keySet()) {
+            buffer.put(path);
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        Utils.writeContents(temp, buffer.array());
+        try {
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write the index: %s", e.getMessage());
+        }
+        Utils.notRestrictedDelete(overlayFile(indexFile));
+    }
+
+    private static void applyOverlayLine(Stage stage, String line) {
+        if (line.startsWith("A ")) {
+            int space = line.indexOf(' ', 2);
+            stage.applyOverlay(line.substring(space + 1), line.substring(2, space));
+        } else if (line.startsWith("R ")) {
+            stage.applyOverlay(line.substring(2), Stage.REMOVED);
+        } else if (line.startsWith("U ")) {
+            stage.applyOverlay(line.substring(2), Stage.UNSTAGED);
+        }
+    }
+
+    private static File overlayFile(File indexFile) {
+        return new File(indexFile.getPath() + ".split");
+    }
+
+    /* the sorted entries of an index file, decoded from the mapped file as they are asked for */
+    static class Entries {
+        private final MappedByteBuffer buffer;
+
+        private final int size;
+
+        private Entries(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.size = buffer.getInt(8);
+        }
+
+        /* the entries of INDEXFILE, null if it is not in this format */
+        static Entries map(File indexFile) {
+            try (FileChannel channel = FileChannel.open(indexFile.toPath(),
+                    StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE) {
+                    return null;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (buffer.get(i) != MAGIC[i]) {
+                        return null;
+                    }
+                }
+                if (buffer.getInt(4) != VERSION) {
+                    throw Utils.error("Unknown index version %d.", buffer.getInt(4));
+                }
+                Trace.objectRead(channel.size());
+                return new Entries(buffer);
+            } catch (IOException e) {
+                throw Utils.error("Cannot read the index: %s", e.getMessage());
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        String path(int i) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            byte[] path = new byte[buffer.getShort(entry + 4) & 0xffff];
+            buffer.get(buffer.getInt(entry), path);
+            return new String(path, StandardCharsets.UTF_8);
+        }
+
+        /* the blobId of entry I, or Stage.REMOVED */
+        String state(int i) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (buffer.get(entry + 6) == REMOVED) {
+                return Stage.REMOVED;
+            }
+            byte[] id = new byte[buffer.get(entry + 7)];
+            buffer.get(entry + 8, id);
+            return ObjectFormat.toHex(id);
+        }
+
+        /* <path, state> of every entry, the paths copied out of the mapping at once */
+        Map<String, String> decodeAll() {
+            Map<String, String> entries = new HashMap<>(size * 4 / 3 + 1);
+            int pathStart = HEADER_SIZE + size * ENTRY_SIZE;
+            byte[] paths = new byte[buffer.capacity() - pathStart];
+            buffer.get(pathStart, paths);
+            for (int i = 0; i < size; i++) {
+                int entry = HEADER_SIZE + i * ENTRY_SIZE;
+                String path = new String(paths, buffer.getInt(entry) - pathStart,
+                        buffer.getShort(entry + 4) & 0xffff, StandardCharsets.UTF_8);
+                entries.put(path, state(i));
+            }
+            return entries;
+        }
+
+        /* the state of PATH, null if it has no entry */
+        String get(String path) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int cmp = compareTo(middle, key);
+                if (cmp < 0) {
+                    low = middle + 1;
+                } else if (cmp > 0) {
+                    high = middle - 1;
+                } else {
+                    return state(middle);
+                }
+            }
+            return null;
+        }
+
+        /* the path of entry I compared with KEY, byte by byte */
+        private int compareTo(int i, byte[] key) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            int offset = buffer.getInt(entry);
+            int length = buffer.getShort(entry + 4) & 0xffff;
+            int n = Math.min(length, key.length);
+            for (int j = 0; j < n; j++) {
+                int cmp = Integer.compare(buffer.get(offset + j) & 0xff, key[j] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    /* The Stage of earlier versions, a serialized HashMap and ArrayList */
+    private static class LegacyStage implements Serializable {
+        private static final long serialVersionUID = -8922612940468388353L;
+
+        private Map<String, String> addedFiles;
+
+        private List<String> removedFiles;
+    }
+
+    private static Stage readLegacy(File indexFile) {
+        try (ObjectInputStream in = new LegacyInputStream(
+                new ByteArrayInputStream(Utils.readContents(indexFile)))) {
+            LegacyStage legacy = (LegacyStage) in.readObject();
+            /* cleared, so it is written in the new format next time */
+            Stage stage = new Stage();
+            stage.clear();
+            for (Map.Entry<String, String> added : legacy.addedFiles.entrySet()) {
+                stage.addFileToStage(added.getKey(), added.getValue());
+            }
+            for (String removed : legacy.removedFiles) {
+                stage.removeFileForRemoval(removed);
+            }
+            return stage;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw Utils.error("Cannot read the index: %s", e.getMessage());
+        }
+    }
+
+    /* reads a serialized gitlet.Stage as a LegacyStage */
+    private static class LegacyInputStream extends ObjectInputStream {
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            if (descriptor.getName().equals("gitlet.Stage")) {
+                return ObjectStreamClass.lookup(LegacyStage.class);
+            }
+            return descriptor;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.util.*;
+
+/*  The state of a working directory, as returned by Repository.getStatus.
+ *  Every list is in lexicographic order,
+ *  and toString gives the report exactly as the status command prints it.
+ *  @author LMS
+ */
+public class Status {
+    private final List<String> branches = new ArrayList<>();
+
+    private String currentBranch;
+
+    private final List<String> stagedFiles = new ArrayList<>();
+
+    private final List<String> removedFiles = new ArrayList<>();
+
+    /* <fileName, "modified" or "deleted"> */
+    private final SortedMap<String, String> modifiedFiles = new TreeMap<>();
+
+    private final List<String> untrackedFiles = new ArrayList<>();
+
+    /* null unless renames were asked for */
+    private List<RenameDetector.Rename> renames;
+
+    Status(Collection<String> branches, String currentBranch,
+           Collection<String> stagedFiles, Collection<String> removedFiles,
+           Map<String, String> modifiedFiles, Collection<String> untrackedFiles) {
+        this.branches.addAll(branches);
+        this.currentBranch = currentBranch;
+        this.stagedFiles.addAll(stagedFiles);
+        this.removedFiles.addAll(removedFiles);
+        this.modifiedFiles.putAll(modifiedFiles);
+        this.untrackedFiles.addAll(untrackedFiles);
+        Collections.sort(this.branches);
+        Collections.sort(this.stagedFiles);
+        Collections.sort(this.removedFiles);
+        Collections.sort(this.untrackedFiles);
+    }
+
+    void setRenames(List<RenameDetector.Rename> renames) {
+        this.renames = renames;
+    }
+
+    public List<String> getBranches() {
+        return Collections.unmodifiableList(branches);
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    public List<String> getStagedFiles() {
+        return Collections.unmodifiableList(stagedFiles);
+    }
+
+    public List<String> getRemovedFiles() {
+        return Collections.unmodifiableList(removedFiles);
+    }
+
+    public SortedMap<String, String> getModifiedFiles() {
+        return Collections.unmodifiableSortedMap(modifiedFiles);
+    }
+
+    public List<String> getUntrackedFiles() {
+        return Collections.unmodifiableList(untrackedFiles);
+    }
+
+    /* true if nothing is staged, modified or untracked */
+    public boolean isClean() {
+        return stagedFiles.isEmpty() && removedFiles.isEmpty()
+                && modifiedFiles.isEmpty() && untrackedFiles.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder statusBuilder = new StringBuilder();
+        /* branch */
+        statusBuilder.append("=== Branches ===").append("\n");
+        for (String branchName : branches) {
+            if (branchName.equals(currentBranch)) {
+                statusBuilder.append("*");
+            }
+            statusBuilder.append(branchName).append("\n");
+        }
+        statusBuilder.append("\n");
+        /* stage */
+        statusBuilder.append("=== Staged Files ===").append("\n");
+        for (String addedFile : stagedFiles) {
+            statusBuilder.append(addedFile).append("\n");
+        }
+        statusBuilder.append("\n");
+        /* remove */
+        statusBuilder.append("=== Removed Files ===").append("\n");
+        for (String removedFile : removedFiles) {
+            statusBuilder.append(removedFile).append("\n");
+        }
+        statusBuilder.append("\n");
+        /* not stage */
+        statusBuilder.append("=== Modifications Not Staged For Commit ===").append("\n");
+        for (Map.Entry<String, String> entry : modifiedFiles.entrySet()) {
+            statusBuilder.append(entry.getKey()).append(" (").append(entry.getValue()).append(")")
+                    .append("\n");
+        }
+        statusBuilder.append("\n");
+        /* untracked files */
+        statusBuilder.append("=== Untracked Files ===").append("\n");
+        for (String filename : untrackedFiles) {
+            statusBuilder.append(filename).append("\n");
+        }
+        statusBuilder.append("\n");
+        if (renames != null) {
+            statusBuilder.append("=== Renamed Files ===").append("\n");
+            for (RenameDetector.Rename rename : renames) {
+                statusBuilder.append(rename.oldName).append(" -> ").append(rename.newName)
+                        .append(" (").append(rename.percent()).append("%)").append("\n");
+            }
+            statusBuilder.append("\n");
+        }
+        return statusBuilder.toString();
+    }
+}
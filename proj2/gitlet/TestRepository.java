@@ -0,0 +1,145 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+
+/*  Tests of the Repository API used in one JVM, where the integration tests of testing/
+ *  run every command in a JVM of its own.
+ *  @author LMS
+ */
+public class TestRepository {
+    private File dir;
+
+    @Before
+    public void makeDirectory() throws IOException {
+        dir = Files.createTempDirectory("gitlet").toFile();
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        Files.walk(dir.toPath()).sorted(Comparator.reverseOrder())
+                .map(java.nio.file.Path::toFile).forEach(File::delete);
+    }
+
+    private void write(String fileName, String content) {
+        Utils.writeContents(Utils.join(dir, fileName), content);
+    }
+
+    private static List<String> messages(List<LogEntry> log) {
+        List<String> messages = new ArrayList<>();
+        for (LogEntry entry : log) {
+            messages.add(entry.getMessage());
+        }
+        return messages;
+    }
+
+    /* two Repositories of one directory each see what the other one wrote */
+    @Test
+    public void twoInstancesTest() {
+        Repository r1 = new Repository(dir);
+        r1.initRepository();
+        Repository r2 = new Repository(dir);
+
+        write("a.txt", "1");
+        r1.addFileToStage("a.txt");
+        r1.commit("c1");
+        write("a.txt", "2");
+        r2.addFileToStage("a.txt");
+        r2.commit("c2");
+        write("a.txt", "3");
+        r1.addFileToStage("a.txt");
+        String c3 = r1.commit("c3");
+        assertEquals(Arrays.asList("c3", "c2", "c1", "initial commit"),
+                messages(new Repository(dir).getLog()));
+
+        r2.createNewBranch("other");
+        assertEquals(Arrays.asList("master", "other"), r1.getStatus().getBranches());
+        r2.checkoutToGivenBranch("other");
+        write("a.txt", "4");
+        r1.addFileToStage("a.txt");
+        r1.commit("c4");
+        assertEquals("other", r1.getCurrentBranchName());
+        assertEquals(Arrays.asList("c4", "c3", "c2", "c1", "initial commit"),
+                messages(r2.getLog()));
+        assertEquals(c3, r1.resolveCommitish("master"));
+    }
+
+    /* a malformed committer line fails the import with the line, and imports nothing */
+    @Test
+    public void fastImportMalformedCommitterTest() {
+        Repository repository = new Repository(dir);
+        repository.initRepository();
+        for (String committer : Arrays.asList("committer ", "committer x",
+                "committer gitlet <gitlet> soon +0000")) {
+            String stream = "commit refs/heads/master\n" + committer + "\ndata 3\nbad\n\n";
+            try {
+                repository.fastImport(new ByteArrayInputStream(
+                        stream.getBytes(StandardCharsets.UTF_8)));
+                fail("imported " + committer);
+            } catch (GitletException e) {
+                assertTrue(e.getMessage(), e.getMessage().endsWith(committer));
+            }
+            assertEquals(Arrays.asList("initial commit"), messages(repository.getLog()));
+        }
+    }
+
+    /* a zip archive of a commit has the same bytes in every time zone */
+    @Test
+    public void archiveZipTimeZoneTest() {
+        Repository repository = new Repository(dir);
+        repository.initRepository();
+        write("a.txt", "a");
+        repository.addFileToStage("a.txt");
+        String commitId = repository.commit("a");
+        TimeZone zone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            ByteArrayOutputStream utc = new ByteArrayOutputStream();
+            repository.archive(commitId, Archive.ZIP, utc);
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            ByteArrayOutputStream newYork = new ByteArrayOutputStream();
+            repository.archive(commitId, Archive.ZIP, newYork);
+            assertArrayEquals(utc.toByteArray(), newYork.toByteArray());
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+    }
+
+    /* a large file missing from the store fails a tar archive before anything is written */
+    @Test
+    public void archiveMissingLargeFileTest() throws IOException {
+        Repository repository = new Repository(dir);
+        repository.initRepository();
+        repository.trackLargeFiles("*.bin", 0);
+        write("a.txt", "a");
+        write("b.bin", "b");
+        repository.addFileToStage("a.txt");
+        repository.addFileToStage("b.bin");
+        String commitId = repository.commit("a and b");
+        Files.walk(Utils.join(dir, ".gitlet", "lfs", "objects").toPath())
+                .filter(Files::isRegularFile).map(java.nio.file.Path::toFile)
+                .forEach(File::delete);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            repository.archive(commitId, Archive.TAR, out);
+            fail("archived a missing large file");
+        } catch (GitletException e) {
+            assertEquals("Large file b.bin is missing from .gitlet/lfs.", e.getMessage());
+        }
+        assertEquals(0, out.size());
+    }
+}
@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*  Counters and timers for one gitlet command, enabled by
+ *      java gitlet.Main --trace COMMAND ...
+ *  or by the environment variable GITLET_TRACE.
+ *  GITLET_TRACE=1 (or true) prints to stderr like --trace,
+ *  any other value is the name of a file the summary is written to.
+ *
+ *  A Trace belongs to one Repository, which enters it for the duration of each of its
+ *  public commands: the static hooks count into the Trace entered on the calling thread,
+ *  so two Repositories of one JVM never mix their counts, and work done outside any
+ *  command (or by a Repository without a Trace) is not counted at all.
+ *  Utils counts every object read, hash and write, RefStore counts its cache hits,
+ *  every public command of Repository is timed as an entry point, those run by another
+ *  command included, and at JVM exit, also when a command ends through System.exit,
+ *  a single line JSON summary is emitted, e.g.
+ *  {"command":"merge","wallTimeMs":12.3,"objectReads":40,...,"phases":{"read":1.2,...},
+ *   "entryPoints":{"mergeGivenBranchToCurrent":{"calls":1,"ms":11.9},...}}
+ *  Until a Trace is made every hook is a single boolean check.
+ *  @author LMS
+ */
+class Trace {
+    /* the parts of a command whose time is measured */
+    enum Phase {
+        READ("read"), DESERIALIZE("deserialize"), HASH("hash"), WRITE("write");
+
+        private final String jsonName;
+
+        Phase(String jsonName) {
+            this.jsonName = jsonName;
+        }
+    }
+
+    /* Entered by Trace.enter, and left by close, which also times the entry point */
+    static final class Scope implements AutoCloseable {
+        private final Trace trace;
+
+        private final Trace previous;
+
+        private final String entryPoint;
+
+        private final long start;
+
+        private Scope(Trace trace, Trace previous, String entryPoint) {
+            this.trace = trace;
+            this.previous = previous;
+            this.entryPoint = entryPoint;
+            this.start = trace == null ? 0 : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (this == NO_SCOPE) {
+                return;
+            }
+            if (trace != null && entryPoint != null) {
+                trace.entryPointDone(entryPoint, System.nanoTime() - start);
+            }
+            ACTIVE.set(previous);
+        }
+    }
+
+    static final String TRACE_FLAG = "--trace";
+
+    static final String TRACE_ENV = "GITLET_TRACE";
+
+    /* the Trace counted into on each thread */
+    private static final ThreadLocal<Trace> ACTIVE = new ThreadLocal<>();
+
+    /* false until a Trace is made, the hooks then skip even the ThreadLocal */
+    private static volatile boolean anyTrace = false;
+
+    /* entered while no Trace exists, it changes nothing */
+    private static final Scope NO_SCOPE = new Scope(null, null, null);
+
+    private volatile String command = "";
+
+    private final long commandStart = System.nanoTime();
+
+    private final AtomicLong objectReads = new AtomicLong();
+    private final AtomicLong objectBytesRead = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong hashCalls = new AtomicLong();
+    private final AtomicLong bytesHashed = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong[] phaseNanos = new AtomicLong[Phase.values().length];
+
+    /* <entry point, {calls, nanos}> in the order they were first called */
+    private final Map<String, long[]> entryPoints = new LinkedHashMap<>();
+
+    Trace() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new AtomicLong();
+        }
+        anyTrace = true;
+    }
+
+    /* Returns the Trace asked for by a leading --trace in ARGS or by GITLET_TRACE,
+       which emits its summary at JVM exit, or null if tracing is off. */
+    static Trace fromArgs(String[] args) {
+        String target = System.getenv(TRACE_ENV);
+        if (args.length > 0 && args[0].equals(TRACE_FLAG)) {
+            target = "1";
+        }
+        if (target == null || target.isEmpty() || target.equals("0")) {
+            return null;
+        }
+        Trace trace = new Trace();
+        String summaryTarget = target;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> trace.emit(summaryTarget)));
+        return trace;
+    }
+
+    /* ARGS without a leading --trace */
+    static String[] stripFlag(String[] args) {
+        if (args.length > 0 && args[0].equals(TRACE_FLAG)) {
+            return Arrays.copyOfRange(args, 1, args.length);
+        }
+        return args;
+    }
+
+    /* the command being traced, reported in the summary */
+    void setCommand(String name) {
+        command = name;
+    }
+
+    /* Counts what this thread does into TRACE, which may be null for nothing,
+       until the returned Scope is closed. ENTRYPOINT, when not null, is timed. */
+    static Scope enter(Trace trace, String entryPoint) {
+        if (!anyTrace) {
+            return NO_SCOPE;
+        }
+        Scope scope = new Scope(trace, ACTIVE.get(), entryPoint);
+        ACTIVE.set(trace);
+        return scope;
+    }
+
+    /* the Trace entered on this thread, or null */
+    static Trace current() {
+        return anyTrace ? ACTIVE.get() : null;
+    }
+
+    private void entryPointDone(String entryPoint, long nanos) {
+        synchronized (entryPoints) {
+            long[] timing = entryPoints.computeIfAbsent(entryPoint, name -> new long[2]);
+            timing[0]++;
+            timing[1] += nanos;
+        }
+    }
+
+    /* Returns a timestamp to pass to stop, 0 when this thread counts into no Trace */
+    static long start() {
+        return current() != null ? System.nanoTime() : 0;
+    }
+
+    static void stop(Phase phase, long start) {
+        Trace trace = current();
+        if (trace != null && start != 0) {
+            trace.phaseNanos[phase.ordinal()].addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    static void objectRead(long bytes) {
+        Trace trace = current();
+        if (trace != null) {
+            trace.objectReads.incrementAndGet();
+            trace.objectBytesRead.addAndGet(bytes);
+        }
+    }
+
+    static void cacheHit() {
+        Trace trace = current();
+        if (trace != null) {
+            trace.cacheHits.incrementAndGet();
+        }
+    }
+
+    static void hashed(long bytes) {
+        Trace trace = current();
+        if (trace != null) {
+            trace.hashCalls.incrementAndGet();
+            trace.bytesHashed.addAndGet(bytes);
+        }
+    }
+
+    static void written(long bytes) {
+        Trace trace = current();
+        if (trace != null) {
+            trace.writes.incrementAndGet();
+            trace.bytesWritten.addAndGet(bytes);
+        }
+    }
+
+    String summary() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"command\":\"").append(command.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\",");
+        sb.append("\"wallTimeMs\":").append(millis(System.nanoTime() - commandStart)).append(",");
+        sb.append("\"objectReads\":").append(objectReads.get()).append(",");
+        sb.append("\"objectBytesRead\":").append(objectBytesRead.get()).append(",");
+        sb.append("\"cacheHits\":").append(cacheHits.get()).append(",");
+        sb.append("\"hashCalls\":").append(hashCalls.get()).append(",");
+        sb.append("\"bytesHashed\":").append(bytesHashed.get()).append(",");
+        sb.append("\"writes\":").append(writes.get()).append(",");
+        sb.append("\"bytesWritten\":").append(bytesWritten.get()).append(",");
+        sb.append("\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                sb.append(",");
+            }
+            sb.append("\"").append(phase.jsonName).append("\":")
+                    .append(millis(phaseNanos[phase.ordinal()].get()));
+        }
+        sb.append("},\"entryPoints\":{");
+        synchronized (entryPoints) {
+            boolean first = true;
+            for (Map.Entry<String, long[]> entry : entryPoints.entrySet()) {
+                if (!first) {
+                    sb.append(",");
+                }
+                first = false;
+                sb.append("\"").append(entry.getKey()).append("\":{\"calls\":")
+                        .append(entry.getValue()[0]).append(",\"ms\":")
+                        .append(millis(entry.getValue()[1])).append("}");
+            }
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private void emit(String target) {
+        String summary = summary();
+        if (target.equals("1") || target.equalsIgnoreCase("true")) {
+            PrintStream err = System.err;
+            err.println(summary);
+            err.flush();
+        } else {
+            try {
+                Files.write(new File(target).toPath(),
+                        (summary + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException excp) {
+                System.err.println(summary);
+            }
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -11,11 +11,9 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 /* Assorted utilities.
@@ -35,25 +33,7 @@ class Utils {
     /*  Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
-        }
+        return ObjectFormat.SHA1.hash(vals);
     }
 
     /*  Returns the SHA-1 hash of the concatenation of the strings in
@@ -123,6 +103,7 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
         try {
             if (file.isDirectory()) {
                 throw
@@ -130,32 +111,70 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long bytes = 0;
             for (Object obj : contents) {
+                byte[] objBytes;
                 if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
+                    objBytes = (byte[]) obj;
                 } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    objBytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
                 }
+                str.write(objBytes);
+                bytes += objBytes.length;
             }
             str.close();
+            Trace.written(bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.stop(Trace.Phase.WRITE, start);
+        }
+    }
+
+    /*  Appends CONTENTS to the end of FILE, creating it if needed.
+     *  Throws IllegalArgumentException in case of problems. */
+    static void appendContents(File file, String contents) {
+        long start = Trace.start();
+        try {
+            byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+            Files.write(file.toPath(), bytes,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Trace.written(bytes.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.stop(Trace.Phase.WRITE, start);
         }
     }
 
     /*  Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     *  The file is read in one go and then deserialized,
+     *  so that --trace can tell disk time from deserialization time.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.stop(Trace.Phase.READ, start);
+        }
+        Trace.objectRead(bytes.length);
+        start = Trace.start();
         try {
             ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
             T result = expectedClass.cast(in.readObject());
             in.close();
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.stop(Trace.Phase.DESERIALIZE, start);
         }
     }
 
@@ -234,6 +253,11 @@ class Utils {
         return new GitletException(String.format(msg, args));
     }
 
+    /*  The same, of the given KIND. */
+    static GitletException error(GitletException.Kind kind, String msg, Object... args) {
+        return new GitletException(kind, String.format(msg, args));
+    }
+
     /*  Print a message composed from MSG and ARGS as for the String.format
      *  method, followed by a newline. */
     static void message(String msg, Object... args) {